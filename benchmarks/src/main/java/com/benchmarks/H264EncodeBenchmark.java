@@ -0,0 +1,148 @@
+package com.benchmarks;
+
+import com.cameras.streaming.EncoderSettings;
+import com.cameras.streaming.LiveMp4Broadcaster;
+import com.cameras.streaming.Mp4FragmentParser;
+
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the H.264 encoding of synthetic frames with the settings of the live stream (ultrafast, zerolatency):
+ * a chunk of one second of video in a new recorder, as recorded by /camVideo, and one frame of the running live
+ * fragmented MP4 encoder: java -jar target/benchmarks.jar H264EncodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class H264EncodeBenchmark
+{
+
+  private static final int FRAME_RATE = 30;
+
+  @Param({ "640x480", "1280x720", "1920x1080" })
+  public String resolution;
+
+  private EncoderSettings settings;
+  private Frame[] frames;
+
+  private final CountingOutputStream liveOutput = new CountingOutputStream();
+  private FFmpegFrameRecorder liveRecorder;
+  private int liveFrame;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    String[] size = resolution.split("x");
+    int width = Integer.parseInt(size[0]);
+    int height = Integer.parseInt(size[1]);
+    settings = new EncoderSettings(width, height, FRAME_RATE, FRAME_RATE, 1500000, "ultrafast", "zerolatency");
+    frames = SyntheticFrames.grab(width, height, FRAME_RATE);
+    liveRecorder = createRecorder(new Mp4FragmentParser(new Mp4FragmentParser.Listener()
+    {
+      @Override
+      public void onInitSegment(byte[] initSegment)
+      {
+        liveOutput.write(initSegment, 0, initSegment.length);
+      }
+
+      @Override
+      public void onFragment(byte[] fragment, boolean keyframe)
+      {
+        liveOutput.write(fragment, 0, fragment.length);
+      }
+    }), "mp4");
+    liveRecorder.setOption("movflags", LiveMp4Broadcaster.MOVFLAGS);
+    liveRecorder.start();
+  }
+
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    liveRecorder.stop();
+    liveRecorder.release();
+  }
+
+  /**
+   * One second of video encoded in a new recorder, started and stopped
+   */
+  @Benchmark
+  public long chunk() throws Exception
+  {
+    CountingOutputStream output = new CountingOutputStream();
+    FFmpegFrameRecorder recorder = createRecorder(output, "matroska");
+    try
+    {
+      recorder.start();
+      for (Frame frame : frames)
+      {
+        recorder.record(frame);
+      }
+      recorder.stop();
+    }
+    finally
+    {
+      recorder.release();
+    }
+    return output.count;
+  }
+
+  /**
+   * One frame of the live encoder, muxed into its fragment
+   */
+  @Benchmark
+  public long liveFrame() throws Exception
+  {
+    liveRecorder.setTimestamp(liveFrame * 1_000_000L / FRAME_RATE);
+    liveRecorder.record(frames[liveFrame % frames.length]);
+    liveFrame++;
+    return liveOutput.count;
+  }
+
+  private FFmpegFrameRecorder createRecorder(OutputStream output, String format)
+  {
+    FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(output, settings.getWidth(), settings.getHeight());
+    recorder.setFormat(format);
+    settings.configure(recorder);
+    return recorder;
+  }
+
+  /**
+   * Discards the encoded bytes, counting them
+   */
+  private static final class CountingOutputStream extends OutputStream
+  {
+
+    private long count;
+
+    @Override
+    public void write(int b)
+    {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len)
+    {
+      count += len;
+    }
+  }
+}
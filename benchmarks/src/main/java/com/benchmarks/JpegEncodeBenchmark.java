@@ -0,0 +1,70 @@
+package com.benchmarks;
+
+import com.cameras.streaming.FFmpegJpegEncoder;
+import com.cameras.streaming.FrameEncoder;
+import com.cameras.streaming.JpegEncoder;
+
+import org.bytedeco.javacv.Frame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of the JPEG encoders of the snapshots and of the MJPEG stream, on synthetic frames at VGA, 720p and
+ * 1080p: java -jar target/benchmarks.jar JpegEncodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JpegEncodeBenchmark
+{
+
+  @Param({ "640x480", "1280x720", "1920x1080" })
+  public String resolution;
+
+  /**
+   * imageio: JPEG writer of ImageIO, ffmpeg: native MJPEG encoder of FFmpeg
+   */
+  @Param({ "imageio", "ffmpeg" })
+  public String encoder;
+
+  @Param({ "0.8" })
+  public float quality;
+
+  private Frame frame;
+  private FrameEncoder frameEncoder;
+
+  @Setup
+  public void setUp() throws Exception
+  {
+    String[] size = resolution.split("x");
+    frame = SyntheticFrames.grab(Integer.parseInt(size[0]), Integer.parseInt(size[1]), 1)[0];
+    frameEncoder = "ffmpeg".equals(encoder) ? new FFmpegJpegEncoder(quality) : new JpegEncoder(quality);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception
+  {
+    frameEncoder.close();
+  }
+
+  @Benchmark
+  public byte[] encode() throws Exception
+  {
+    return frameEncoder.encode(frame);
+  }
+}
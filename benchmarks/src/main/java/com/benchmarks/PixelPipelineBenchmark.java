@@ -0,0 +1,66 @@
+package com.benchmarks;
+
+import com.cameras.basler.RgbFrameConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of the Basler pixel pipeline (packing, levels, gamma and negative) in each processing mode, at 1, 5
+ * and 12 MP: java -jar target/benchmarks.jar PixelPipelineBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixelPipelineBenchmark
+{
+
+  /**
+   * 1 MP (1280x800), 5 MP (2592x1944) and 12 MP (4000x3000)
+   */
+  @Param({ "1280x800", "2592x1944", "4000x3000" })
+  public String resolution;
+
+  @Param({ "SCALAR", "STRIPED" })
+  public RgbFrameConverter.Mode mode;
+
+  private int width;
+  private int height;
+  private byte[] frame;
+  private RgbFrameConverter converter;
+
+  @Setup
+  public void setUp()
+  {
+    String[] size = resolution.split("x");
+    width = Integer.parseInt(size[0]);
+    height = Integer.parseInt(size[1]);
+    frame = new byte[width * height * 3];
+    new Random(42).nextBytes(frame);
+    converter = new RgbFrameConverter();
+    converter.setMode(mode);
+    converter.setCorrection(250, 240, 230, 2.2, true);
+  }
+
+  @Benchmark
+  public BufferedImage convert()
+  {
+    return converter.convert(frame, width, height);
+  }
+}
@@ -0,0 +1,135 @@
+package com.benchmarks;
+
+import com.services.FileRangeReader;
+import com.services.SegmentCache;
+import com.services.VideoFile;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serving a byte range of a video file through the {@link FileRangeReader}, read from the file channel into
+ * pooled Netty buffers as without cache, and copied from a warm segment cache, for ranges at the start, the middle and the end of files of 16 MB and 256 MB:
+ * java -jar target/benchmarks.jar RangeReadBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeReadBenchmark
+{
+
+  private static final int SEGMENT_SIZE = 1024 * 1024;
+
+  /**
+   * File size in MB
+   */
+  @Param({ "16", "256" })
+  public int fileSizeMb;
+
+  /**
+   * Position of the range in the file, as a fraction of the file
+   */
+  @Param({ "0", "0.5", "0.99" })
+  public double offset;
+
+  /**
+   * Bytes of the range: a player probe, a chunk and a large seek-ahead read
+   */
+  @Param({ "65536", "1048576", "8388608" })
+  public int rangeLength;
+
+  private Path file;
+  private VideoFile videoFile;
+  private long position;
+  private long length;
+  private FileRangeReader reader;
+  private FileRangeReader cachedReader;
+  private final DataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+  @Setup
+  public void setUp() throws IOException
+  {
+    long fileSize = fileSizeMb * 1024L * 1024L;
+    file = Files.createTempFile("range-read", ".mp4");
+    byte[] chunk = new byte[SEGMENT_SIZE];
+    new Random(42).nextBytes(chunk);
+    try (FileChannel output = FileChannel.open(file, StandardOpenOption.WRITE))
+    {
+      for (long written = 0; written < fileSize; written += chunk.length)
+      {
+        output.write(ByteBuffer.wrap(chunk));
+      }
+    }
+    videoFile = new VideoFile(file.getFileName().toString(), file, fileSize, Files.getLastModifiedTime(file).toMillis(),
+        "video/mp4", FileChannel.open(file, StandardOpenOption.READ));
+    position = (long) ((fileSize - 1) * offset);
+    length = Math.min(rangeLength, fileSize - position);
+    reader = new FileRangeReader(new SegmentCache(false, SEGMENT_SIZE, 0, 0));
+    cachedReader = new FileRangeReader(new SegmentCache(true, SEGMENT_SIZE, fileSize, fileSize));
+    cachedRead();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    videoFile.release();
+    Files.delete(file);
+  }
+
+  /**
+   * Range read from the file, as served without the segment cache
+   */
+  @Benchmark
+  public long channelRead()
+  {
+    return read(reader);
+  }
+
+  /**
+   * Range read from the warm segment cache
+   */
+  @Benchmark
+  public long cachedRead()
+  {
+    return read(cachedReader);
+  }
+
+  private long read(FileRangeReader rangeReader)
+  {
+    return rangeReader.read(videoFile, position, length, bufferFactory)
+        .map(buffer ->
+        {
+          long count = buffer.readableByteCount();
+          DataBufferUtils.release(buffer);
+          return count;
+        })
+        .reduce(0L, Long::sum)
+        .block();
+  }
+}
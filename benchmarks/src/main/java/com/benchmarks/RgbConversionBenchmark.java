@@ -0,0 +1,87 @@
+package com.benchmarks;
+
+import com.cameras.basler.RgbFrameConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of the conversion of a grabbed Basler frame into an image, with the per pixel Color conversion
+ * previously done by BaslerModel.captureFrame as the reference. Run with <code>-prof gc</code> to see the allocation
+ * rate: java -jar target/benchmarks.jar RgbConversionBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RgbConversionBenchmark
+{
+
+  /**
+   * Common sensor resolutions: VGA, 720p, 1080p, 5 MP (2592x1944) and 12 MP (4000x3000)
+   */
+  @Param({ "640x480", "1280x720", "1920x1080", "2592x1944", "4000x3000" })
+  public String resolution;
+
+  private int width;
+  private int height;
+  private byte[] frame;
+  private RgbFrameConverter converter;
+
+  private final int redLevel = 250;
+  private final int greenLevel = 240;
+  private final int blueLevel = 230;
+
+  @Setup
+  public void setUp()
+  {
+    String[] size = resolution.split("x");
+    width = Integer.parseInt(size[0]);
+    height = Integer.parseInt(size[1]);
+    frame = new byte[width * height * 3];
+    new Random(42).nextBytes(frame);
+    converter = new RgbFrameConverter();
+  }
+
+  @Benchmark
+  public BufferedImage lookupTables()
+  {
+    converter.setLevels(redLevel, greenLevel, blueLevel);
+    return converter.convert(frame, width, height);
+  }
+
+  @Benchmark
+  public BufferedImage colorPerPixel()
+  {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int n = 0;
+    for (int i = 0; i < height; i++)
+    {
+      for (int j = 0; j < width; j++)
+      {
+        int r = (int) ((frame[n] & 0xFF) * (redLevel / 255D));
+        int g = (int) ((frame[n + 1] & 0xFF) * (greenLevel / 255D));
+        int b = (int) ((frame[n + 2] & 0xFF) * (blueLevel / 255D));
+        image.setRGB(j, i, new Color(r, g, b).getRGB());
+        n += 3;
+      }
+    }
+    return image;
+  }
+}
@@ -0,0 +1,40 @@
+package com.benchmarks;
+
+import com.cameras.source.SyntheticFrameSource;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Frames of the synthetic camera, the same for every run
+ */
+final class SyntheticFrames
+{
+
+  private SyntheticFrames()
+  {
+  }
+
+  /**
+   * @return The first frames of the synthetic camera, each one a copy
+   */
+  static Frame[] grab(int width, int height, int count) throws FrameGrabber.Exception
+  {
+    // Frames as fast as they can be generated
+    SyntheticFrameSource source = new SyntheticFrameSource(width, height, 1_000_000);
+    source.start();
+    try
+    {
+      Frame[] frames = new Frame[count];
+      for (int i = 0; i < count; i++)
+      {
+        frames[i] = source.grab().clone();
+      }
+      return frames;
+    }
+    finally
+    {
+      source.stop();
+    }
+  }
+}
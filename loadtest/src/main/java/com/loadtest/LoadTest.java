@@ -0,0 +1,309 @@
+package com.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Load generator and soak test of the video stream endpoints: range readers and seekers of a video file, clients of
+ * /camPhoto and /camVideo, and viewers of the MJPEG and MP4 live streams, each one on its own connection. Reports the
+ * throughput, the latency percentiles, the stalls of the clients and the heap and GC of the application while running,
+ * writes the totals as JSON and exits with 1 when the error or stall limits are exceeded.
+ * <p>
+ * The application can be started by the load test, with the synthetic camera, or started beforehand with
+ * <code>--video-stream.camera.source=synthetic</code>. Run from the loadtest folder, e.g.:
+ *
+ * <pre>
+ * java -jar target/loadtest.jar --start-app=../target/rest-service-0.0.1-SNAPSHOT.jar --file=mp4/sample \
+ *     --range-readers=2000 --seekers=200 --photo-clients=50 --mjpeg-viewers=500 --duration=600
+ * </pre>
+ */
+public final class LoadTest
+{
+
+  private static final String BASE_PATH = "/video-stream";
+
+  private LoadTest()
+  {
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    LoadTestOptions options;
+    try
+    {
+      options = new LoadTestOptions(args);
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.err.println(e.getMessage());
+      System.err.println(LoadTestOptions.USAGE);
+      System.exit(2);
+      return;
+    }
+    if (options.has("help"))
+    {
+      System.out.println(LoadTestOptions.USAGE);
+      return;
+    }
+    Process app = null;
+    boolean passed;
+    try
+    {
+      if (options.has("start-app"))
+      {
+        app = startApp(options);
+      }
+      passed = run(options);
+    }
+    finally
+    {
+      if (app != null)
+      {
+        app.destroy();
+        app.waitFor(30, TimeUnit.SECONDS);
+      }
+    }
+    System.exit(passed ? 0 : 1);
+  }
+
+  /**
+   * @return <code>true</code> if the run is within the error and stall limits
+   */
+  private static boolean run(LoadTestOptions options) throws IOException, InterruptedException
+  {
+    int rangeReaders = options.getInt("range-readers", 0);
+    int seekers = options.getInt("seekers", 0);
+    int photoClients = options.getInt("photo-clients", 0);
+    int videoClients = options.getInt("video-clients", 0);
+    int mjpegViewers = options.getInt("mjpeg-viewers", 0);
+    int liveViewers = options.getInt("live-viewers", 0);
+    int clients = rangeReaders + seekers + photoClients + videoClients + mjpegViewers + liveViewers;
+    if (clients == 0)
+    {
+      System.err.println("No client, set at least one of the client counts");
+      System.err.println(LoadTestOptions.USAGE);
+      return false;
+    }
+
+    // One connection per client, plus the metrics
+    ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+        .maxConnections(clients + 1)
+        .pendingAcquireMaxCount(-1)
+        .pendingAcquireTimeout(Duration.ofMinutes(1))
+        .build();
+    HttpClient httpClient = HttpClient.create(connections)
+        .baseUrl(options.get("url", "http://localhost:8080"));
+    ServerStats serverStats = new ServerStats(httpClient);
+
+    String filePath = BASE_PATH + "/file/" + options.get("file", "");
+    long fileSize = 0;
+    if (rangeReaders + seekers > 0)
+    {
+      if (!options.has("file"))
+      {
+        System.err.println("--file is needed by the range readers and the seekers");
+        return false;
+      }
+      fileSize = contentLength(httpClient, filePath);
+    }
+
+    long stallMillis = options.getLong("stall-ms", 1000);
+    long rampUpNanos = TimeUnit.SECONDS.toNanos(options.getLong("ramp-up", 10));
+    long durationNanos = TimeUnit.SECONDS.toNanos(options.getLong("duration", 60));
+    long startNanos = System.nanoTime();
+    long deadlineNanos = startNanos + rampUpNanos + durationNanos;
+    StreamingClients streamingClients = new StreamingClients(httpClient, filePath, fileSize, deadlineNanos,
+        Duration.ofMillis(options.getLong("think-time-ms", 0)));
+
+    List<ScenarioStats> scenarios = new ArrayList<>();
+    List<Mono<Void>> virtualClients = new ArrayList<>(clients);
+    long rangeBytes = options.getLong("range-bytes", 1024 * 1024);
+    addClients(scenarios, virtualClients, "range-read", rangeReaders, stallMillis,
+        stats -> streamingClients.rangeReader(stats, rangeBytes));
+    double seekMaxSeconds = options.getDouble("seek-max-seconds", 60);
+    long seekReadBytes = options.getLong("seek-read-bytes", 256 * 1024);
+    addClients(scenarios, virtualClients, "seek", seekers, stallMillis,
+        stats -> streamingClients.seeker(stats, seekMaxSeconds, seekReadBytes));
+    addClients(scenarios, virtualClients, "photo", photoClients, stallMillis,
+        stats -> streamingClients.requester(stats, BASE_PATH + "/camPhoto"));
+    addClients(scenarios, virtualClients, "video", videoClients, stallMillis,
+        stats -> streamingClients.requester(stats, BASE_PATH + "/camVideo"));
+    addClients(scenarios, virtualClients, "mjpeg", mjpegViewers, stallMillis,
+        stats -> streamingClients.viewer(stats, BASE_PATH + "/camMjpeg"));
+    addClients(scenarios, virtualClients, "live", liveViewers, stallMillis,
+        stats -> streamingClients.viewer(stats, BASE_PATH + "/camLive"));
+
+    System.out.printf("%d clients, ramp up %d s, run %d s%n", clients, TimeUnit.NANOSECONDS.toSeconds(rampUpNanos),
+        TimeUnit.NANOSECONDS.toSeconds(durationNanos));
+    serverStats.sample();
+    long reportIntervalSeconds = options.getLong("report-interval", 10);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable ->
+    {
+      Thread thread = new Thread(runnable, "Load test report");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(() ->
+    {
+      serverStats.sample();
+      for (ScenarioStats scenario : scenarios)
+      {
+        System.out.println(scenario.interval(reportIntervalSeconds));
+      }
+      System.out.println(serverStats.report());
+    }, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
+
+    // The clients start evenly spread over the ramp up
+    long clientDelayNanos = rampUpNanos / clients;
+    Flux.range(0, virtualClients.size())
+        .flatMap(i -> virtualClients.get(i).delaySubscription(Duration.ofNanos(i * clientDelayNanos)),
+            virtualClients.size())
+        .then()
+        .block();
+    reporter.shutdownNow();
+    reporter.awaitTermination(10, TimeUnit.SECONDS);
+    serverStats.sample();
+    connections.disposeLater().block(Duration.ofSeconds(10));
+
+    return report(options, scenarios, serverStats, (System.nanoTime() - startNanos) / 1e9);
+  }
+
+  private static void addClients(List<ScenarioStats> scenarios, List<Mono<Void>> virtualClients, String name,
+      int count, long stallMillis, Function<ScenarioStats, Mono<Void>> client)
+  {
+    if (count <= 0)
+    {
+      return;
+    }
+    ScenarioStats stats = new ScenarioStats(name, stallMillis);
+    scenarios.add(stats);
+    for (int i = 0; i < count; i++)
+    {
+      virtualClients.add(client.apply(stats));
+    }
+  }
+
+  /**
+   * Print and write the totals of the run, and check them against the limits
+   */
+  private static boolean report(LoadTestOptions options, List<ScenarioStats> scenarios, ServerStats serverStats,
+      double seconds) throws IOException
+  {
+    double maxErrorRate = options.getDouble("max-error-rate", 0.01);
+    double maxStalledClients = options.getDouble("max-stalled-clients", 0.05);
+    boolean passed = true;
+    List<Map<String, Object>> totals = new ArrayList<>();
+    for (ScenarioStats scenario : scenarios)
+    {
+      totals.add(scenario.total(seconds));
+      if (scenario.getErrorRate() > maxErrorRate)
+      {
+        System.out.printf("FAILED %s: error rate %.4f over %.4f%n", scenario.getName(), scenario.getErrorRate(),
+            maxErrorRate);
+        passed = false;
+      }
+      double stalledClients = scenario.getClients() == 0 ? 0
+          : (double) scenario.getStalledClients() / scenario.getClients();
+      if (stalledClients > maxStalledClients)
+      {
+        System.out.printf("FAILED %s: %.4f of the clients stalled, over %.4f%n", scenario.getName(), stalledClients,
+            maxStalledClients);
+        passed = false;
+      }
+    }
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("date", Instant.now().toString());
+    report.put("url", options.get("url", "http://localhost:8080"));
+    report.put("seconds", seconds);
+    report.put("passed", passed);
+    report.put("scenarios", totals);
+    report.put("server", serverStats.report());
+
+    ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    String json = mapper.writeValueAsString(report);
+    System.out.println(json);
+    Path reportFile = Paths.get(options.get("report", "target/loadtest-report.json"));
+    if (reportFile.getParent() != null)
+    {
+      Files.createDirectories(reportFile.getParent());
+    }
+    Files.write(reportFile, json.getBytes(StandardCharsets.UTF_8));
+    System.out.println((passed ? "PASSED" : "FAILED") + ", report written to " + reportFile.toAbsolutePath());
+    return passed;
+  }
+
+  private static long contentLength(HttpClient httpClient, String path)
+  {
+    return httpClient.head()
+        .uri(path)
+        .response()
+        .map(response ->
+        {
+          if (response.status().code() != 200)
+          {
+            throw new IllegalStateException("HTTP " + response.status().code() + " for " + path);
+          }
+          return Long.parseLong(response.responseHeaders().get(HttpHeaderNames.CONTENT_LENGTH));
+        })
+        .block(Duration.ofSeconds(30));
+  }
+
+  /**
+   * Start the application jar with the synthetic camera, on the port of the url, and wait until it is up
+   */
+  private static Process startApp(LoadTestOptions options) throws IOException, InterruptedException
+  {
+    URI url = URI.create(options.get("url", "http://localhost:8080"));
+    int port = url.getPort() < 0 ? 80 : url.getPort();
+    File javaBin = Paths.get(System.getProperty("java.home"), "bin", "java").toFile();
+    Process app = new ProcessBuilder(javaBin.getPath(), "-jar", options.get("start-app", ""),
+        "--server.port=" + port, "--video-stream.camera.source=synthetic")
+            .inheritIO()
+            .start();
+    HttpClient health = HttpClient.create().baseUrl(url.toString());
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(2);
+    while (System.nanoTime() < deadline)
+    {
+      if (!app.isAlive())
+      {
+        throw new IllegalStateException("The application exited with " + app.exitValue());
+      }
+      Integer status = health.get()
+          .uri("/actuator/health")
+          .response()
+          .map(response -> response.status().code())
+          .onErrorResume(e -> Mono.empty())
+          .block(Duration.ofSeconds(5));
+      if (status != null && status == 200)
+      {
+        return app;
+      }
+      Thread.sleep(500);
+    }
+    app.destroy();
+    throw new IllegalStateException("The application did not start in time");
+  }
+}
@@ -0,0 +1,81 @@
+package com.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of the load test, given as <code>--name=value</code> arguments
+ */
+final class LoadTestOptions
+{
+
+  static final String USAGE = String.join(System.lineSeparator(),
+      "java -jar target/loadtest.jar [--name=value]...",
+      "  --url=http://localhost:8080     application under test",
+      "  --start-app=<jar>               start the application jar with the synthetic camera, on the port of the url",
+      "  --duration=60                   seconds of load, after the ramp up",
+      "  --ramp-up=10                    seconds over which the clients are started",
+      "  --file=mp4/<name>               video file of the range readers and of the seekers",
+      "  --range-readers=0               clients reading random byte ranges of the file",
+      "  --range-bytes=1048576           bytes of each range",
+      "  --seekers=0                     clients seeking to a random time of the file and reading from the keyframe",
+      "  --seek-max-seconds=60           latest time of the seeks",
+      "  --seek-read-bytes=262144        bytes read after each seek",
+      "  --photo-clients=0               clients requesting /camPhoto in a loop",
+      "  --video-clients=0               clients requesting /camVideo in a loop",
+      "  --mjpeg-viewers=0               viewers of /camMjpeg",
+      "  --live-viewers=0                viewers of /camLive",
+      "  --think-time-ms=0               pause of the looping clients between two requests",
+      "  --stall-ms=1000                 wait for the next bytes of a response counted as a stall",
+      "  --report-interval=10            seconds between two progress reports",
+      "  --report=target/loadtest-report.json",
+      "  --max-error-rate=0.01           fraction of failed requests above which the run fails",
+      "  --max-stalled-clients=0.05      fraction of stalled clients above which the run fails");
+
+  private final Map<String, String> values = new HashMap<>();
+
+  LoadTestOptions(String[] args)
+  {
+    for (String arg : args)
+    {
+      if (!arg.startsWith("--"))
+      {
+        throw new IllegalArgumentException("Unexpected argument " + arg);
+      }
+      int separator = arg.indexOf('=');
+      if (separator < 0)
+      {
+        values.put(arg.substring(2), "true");
+      }
+      else
+      {
+        values.put(arg.substring(2, separator), arg.substring(separator + 1));
+      }
+    }
+  }
+
+  boolean has(String name)
+  {
+    return values.containsKey(name);
+  }
+
+  String get(String name, String defaultValue)
+  {
+    return values.getOrDefault(name, defaultValue);
+  }
+
+  int getInt(String name, int defaultValue)
+  {
+    return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+  }
+
+  long getLong(String name, long defaultValue)
+  {
+    return values.containsKey(name) ? Long.parseLong(values.get(name)) : defaultValue;
+  }
+
+  double getDouble(String name, double defaultValue)
+  {
+    return values.containsKey(name) ? Double.parseDouble(values.get(name)) : defaultValue;
+  }
+}
@@ -0,0 +1,221 @@
+package com.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures of the clients of one scenario: requests, errors, bytes received, latency of the whole response and of the
+ * first bytes in microseconds, and stalls. A stall is a wait of more than the stall threshold for the next bytes of a
+ * response, or for its first bytes. Thread-safe, the recorders are wait-free for the client threads.
+ */
+final class ScenarioStats
+{
+
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final String name;
+  private final long stallNanos;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder bytes = new LongAdder();
+  private final LongAdder stalls = new LongAdder();
+  private final Recorder latency = new Recorder(SIGNIFICANT_DIGITS);
+  private final Recorder firstByte = new Recorder(SIGNIFICANT_DIGITS);
+
+  /**
+   * Totals of the run, and stalls per client. Access must be synchronized on the stats
+   */
+  private final Histogram totalLatency = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram totalFirstByte = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram clientStalls = new Histogram(SIGNIFICANT_DIGITS);
+  private Histogram intervalLatency;
+  private Histogram intervalFirstByte;
+  private long intervalRequests;
+  private long intervalBytes;
+
+  ScenarioStats(String name, long stallMillis)
+  {
+    this.name = name;
+    this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMillis);
+  }
+
+  String getName()
+  {
+    return name;
+  }
+
+  /**
+   * Client of the scenario, counting its own stalls
+   */
+  Client newClient()
+  {
+    return new Client();
+  }
+
+  /**
+   * Latencies of the requests completed since the previous interval, added to the totals
+   *
+   * @param seconds
+   *          Length of the interval
+   */
+  synchronized Map<String, Object> interval(double seconds)
+  {
+    intervalLatency = latency.getIntervalHistogram(intervalLatency);
+    intervalFirstByte = firstByte.getIntervalHistogram(intervalFirstByte);
+    totalLatency.add(intervalLatency);
+    totalFirstByte.add(intervalFirstByte);
+    long currentRequests = requests.sum();
+    long currentBytes = bytes.sum();
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("scenario", name);
+    report.put("requestsPerSecond", (currentRequests - intervalRequests) / seconds);
+    report.put("megabytesPerSecond", (currentBytes - intervalBytes) / seconds / (1024 * 1024));
+    report.put("latencyP50Ms", millis(intervalLatency.getValueAtPercentile(50)));
+    report.put("latencyP99Ms", millis(intervalLatency.getValueAtPercentile(99)));
+    report.put("firstByteP99Ms", millis(intervalFirstByte.getValueAtPercentile(99)));
+    report.put("errors", errors.sum());
+    report.put("stalls", stalls.sum());
+    intervalRequests = currentRequests;
+    intervalBytes = currentBytes;
+    return report;
+  }
+
+  /**
+   * Totals of the run, once all the clients are done
+   *
+   * @param seconds
+   *          Length of the run
+   */
+  synchronized Map<String, Object> total(double seconds)
+  {
+    interval(seconds);
+    long totalRequests = requests.sum();
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("scenario", name);
+    report.put("clients", clientStalls.getTotalCount());
+    report.put("requests", totalRequests);
+    report.put("errors", errors.sum());
+    report.put("errorRate", getErrorRate());
+    report.put("bytes", bytes.sum());
+    report.put("requestsPerSecond", totalRequests / seconds);
+    report.put("megabytesPerSecond", bytes.sum() / seconds / (1024 * 1024));
+    report.put("latencyMs", percentiles(totalLatency));
+    report.put("firstByteMs", percentiles(totalFirstByte));
+    report.put("stalls", stalls.sum());
+    report.put("stalledClients", getStalledClients());
+    report.put("maxStallsPerClient", clientStalls.getMaxValue());
+    return report;
+  }
+
+  double getErrorRate()
+  {
+    long attempts = requests.sum() + errors.sum();
+    return attempts == 0 ? 0 : (double) errors.sum() / attempts;
+  }
+
+  synchronized long getStalledClients()
+  {
+    return clientStalls.getTotalCount() - clientStalls.getCountAtValue(0);
+  }
+
+  synchronized long getClients()
+  {
+    return clientStalls.getTotalCount();
+  }
+
+  private static Map<String, Object> percentiles(Histogram histogram)
+  {
+    Map<String, Object> percentiles = new LinkedHashMap<>();
+    percentiles.put("p50", millis(histogram.getValueAtPercentile(50)));
+    percentiles.put("p90", millis(histogram.getValueAtPercentile(90)));
+    percentiles.put("p99", millis(histogram.getValueAtPercentile(99)));
+    percentiles.put("p999", millis(histogram.getValueAtPercentile(99.9)));
+    percentiles.put("max", millis(histogram.getMaxValue()));
+    return percentiles;
+  }
+
+  private static double millis(long micros)
+  {
+    return micros / 1000D;
+  }
+
+  private synchronized void recordClient(long clientStallCount)
+  {
+    clientStalls.recordValue(clientStallCount);
+  }
+
+  /**
+   * One virtual client, used by one request at a time
+   */
+  final class Client
+  {
+
+    private long stallCount;
+
+    /**
+     * Measure a response while it is received.
+     *
+     * @param chunks
+     *          Sizes of the chunks of the response, subscribed when the request is sent
+     * @param complete
+     *          <code>true</code> to record the latency of the whole response, <code>false</code> for the live streams
+     *          that are cut at the end of the run
+     * @return Mono completed with the bytes of the response, empty when the request failed
+     */
+    Mono<Long> measure(Flux<Integer> chunks, boolean complete)
+    {
+      return Mono.defer(() ->
+      {
+        long start = System.nanoTime();
+        long[] received = { start, 0, 0 };
+        return chunks
+            .doOnNext(size ->
+            {
+              long now = System.nanoTime();
+              if (now - received[0] > stallNanos)
+              {
+                stallCount++;
+                stalls.increment();
+              }
+              if (received[2]++ == 0)
+              {
+                firstByte.recordValue(TimeUnit.NANOSECONDS.toMicros(now - start));
+              }
+              received[0] = now;
+              received[1] += size;
+              bytes.add(size);
+            })
+            .then(Mono.fromCallable(() ->
+            {
+              if (complete)
+              {
+                latency.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+              }
+              requests.increment();
+              return received[1];
+            }))
+            .onErrorResume(e ->
+            {
+              errors.increment();
+              return Mono.empty();
+            });
+      });
+    }
+
+    /**
+     * The client is done, count its stalls
+     */
+    void finish()
+    {
+      recordClient(stallCount);
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Heap and GC of the application under test, read from its actuator metrics endpoint. The peak heap is the highest
+ * heap use seen by the samples; the GC pauses are counted from the first sample.
+ */
+final class ServerStats
+{
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+  private final HttpClient httpClient;
+
+  private boolean available = true;
+  private double heapUsed;
+  private double heapPeak;
+  private double heapMax;
+  private double gcPausesStart = Double.NaN;
+  private double gcPauseSecondsStart;
+  private double gcPauses;
+  private double gcPauseSeconds;
+  private double gcPauseMaxSeconds;
+
+  ServerStats(HttpClient httpClient)
+  {
+    this.httpClient = httpClient;
+  }
+
+  /**
+   * Read the current heap and GC metrics. Stops trying once the actuator cannot be read
+   */
+  synchronized void sample()
+  {
+    if (!available)
+    {
+      return;
+    }
+    try
+    {
+      heapUsed = statistic("jvm.memory.used?tag=area:heap", "VALUE");
+      heapPeak = Math.max(heapPeak, heapUsed);
+      heapMax = statistic("jvm.memory.max?tag=area:heap", "VALUE");
+      double pauses = statistic("jvm.gc.pause", "COUNT");
+      double pauseSeconds = statistic("jvm.gc.pause", "TOTAL_TIME");
+      if (Double.isNaN(gcPausesStart))
+      {
+        gcPausesStart = pauses;
+        gcPauseSecondsStart = pauseSeconds;
+      }
+      gcPauses = pauses - gcPausesStart;
+      gcPauseSeconds = pauseSeconds - gcPauseSecondsStart;
+      gcPauseMaxSeconds = Math.max(gcPauseMaxSeconds, statistic("jvm.gc.pause", "MAX"));
+    }
+    catch (RuntimeException e)
+    {
+      available = false;
+      System.err.println("Server heap and GC not available from /actuator/metrics: " + e.getMessage());
+    }
+  }
+
+  synchronized Map<String, Object> report()
+  {
+    Map<String, Object> report = new LinkedHashMap<>();
+    if (!available)
+    {
+      return report;
+    }
+    report.put("heapUsedMb", heapUsed / (1024 * 1024));
+    report.put("heapPeakMb", heapPeak / (1024 * 1024));
+    report.put("heapMaxMb", heapMax / (1024 * 1024));
+    report.put("gcPauses", (long) gcPauses);
+    report.put("gcPauseTotalMs", gcPauseSeconds * 1000);
+    report.put("gcPauseMaxMs", gcPauseMaxSeconds * 1000);
+    return report;
+  }
+
+  /**
+   * A statistic of an actuator metric, 0 when the metric has no such statistic
+   */
+  private double statistic(String metric, String statistic)
+  {
+    String json = httpClient.get()
+        .uri("/actuator/metrics/" + metric)
+        .responseSingle((response, content) -> response.status().code() == 200 ? content.asString()
+            : Mono.error(new IllegalStateException("HTTP " + response.status().code() + " for " + metric)))
+        .block(TIMEOUT);
+    JsonNode measurements;
+    try
+    {
+      measurements = MAPPER.readTree(json).path("measurements");
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Invalid metric " + metric, e);
+    }
+    for (JsonNode measurement : measurements)
+    {
+      if (statistic.equals(measurement.path("statistic").asText()))
+      {
+        return measurement.path("value").asDouble();
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,144 @@
+package com.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+/**
+ * The virtual clients of the scenarios. Each client sends one request at a time until the end of the run; a failed
+ * request is counted and the client goes on with the next one.
+ */
+final class StreamingClients
+{
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final HttpClient httpClient;
+  private final String filePath;
+  private final long fileSize;
+  private final long deadlineNanos;
+  private final Duration thinkTime;
+
+  /**
+   * @param filePath
+   *          Path of the video file, e.g. /video-stream/file/mp4/name
+   * @param fileSize
+   *          Size of the video file, 0 when no file is read
+   * @param deadlineNanos
+   *          {@link System#nanoTime()} at which the clients stop
+   */
+  StreamingClients(HttpClient httpClient, String filePath, long fileSize, long deadlineNanos, Duration thinkTime)
+  {
+    this.httpClient = httpClient;
+    this.filePath = filePath;
+    this.fileSize = fileSize;
+    this.deadlineNanos = deadlineNanos;
+    this.thinkTime = thinkTime;
+  }
+
+  /**
+   * Reads random ranges of the file
+   */
+  Mono<Void> rangeReader(ScenarioStats stats, long rangeBytes)
+  {
+    return loop(stats, client -> Mono.defer(() ->
+    {
+      long length = Math.min(rangeBytes, fileSize);
+      long start = ThreadLocalRandom.current().nextLong(fileSize - length + 1);
+      return client.measure(body(httpClient.headers(headers -> headers.set(HttpHeaderNames.RANGE,
+          "bytes=" + start + "-" + (start + length - 1))), filePath), true);
+    }));
+  }
+
+  /**
+   * Seeks to a random time of the file, then reads from the keyframe as a player would. The first byte latency is the
+   * time from the seek to the first bytes of video
+   */
+  Mono<Void> seeker(ScenarioStats stats, double maxSeconds, long readBytes)
+  {
+    return loop(stats, client -> Mono.defer(() ->
+    {
+      double seconds = ThreadLocalRandom.current().nextDouble(maxSeconds);
+      Flux<Integer> video = httpClient.get()
+          .uri(filePath + "/seek?t=" + String.format(Locale.ROOT, "%.3f", seconds))
+          .responseSingle((response, content) -> checkStatus(response).then(content.asString()))
+          .flatMapMany(json ->
+          {
+            long offset = readTree(json).path("offset").asLong();
+            return body(httpClient.headers(headers -> headers.set(HttpHeaderNames.RANGE,
+                "bytes=" + offset + "-" + (offset + readBytes - 1))), filePath);
+          });
+      return client.measure(video, true);
+    }));
+  }
+
+  /**
+   * Requests a complete response in a loop, e.g. /camPhoto
+   */
+  Mono<Void> requester(ScenarioStats stats, String path)
+  {
+    return loop(stats, client -> client.measure(body(httpClient, path), true));
+  }
+
+  /**
+   * Watches a live stream until the end of the run, reconnecting if the stream ends
+   */
+  Mono<Void> viewer(ScenarioStats stats, String path)
+  {
+    return loop(stats, client -> client.measure(body(httpClient, path)
+        .take(Duration.ofNanos(Math.max(1, deadlineNanos - System.nanoTime()))), false));
+  }
+
+  private Mono<Void> loop(ScenarioStats stats, Function<ScenarioStats.Client, Mono<Long>> request)
+  {
+    return Mono.defer(() ->
+    {
+      ScenarioStats.Client client = stats.newClient();
+      Mono<Long> one = Mono.defer(() -> request.apply(client));
+      Mono<Long> paced = thinkTime.isZero() ? one : one.delaySubscription(thinkTime);
+      return paced.repeat(() -> System.nanoTime() < deadlineNanos)
+          .then()
+          .doFinally(signal -> client.finish());
+    });
+  }
+
+  /**
+   * Sizes of the chunks of the body of a GET, an error for a 4xx or 5xx status. The buffers are released by the
+   * client once counted
+   */
+  private static Flux<Integer> body(HttpClient client, String path)
+  {
+    return client.get()
+        .uri(path)
+        .response((response, content) -> checkStatus(response).thenMany(content.map(ByteBuf::readableBytes)));
+  }
+
+  private static Mono<Void> checkStatus(HttpClientResponse response)
+  {
+    int status = response.status().code();
+    return status >= 400 ? Mono.error(new IllegalStateException("HTTP " + status)) : Mono.empty();
+  }
+
+  private static JsonNode readTree(String json)
+  {
+    try
+    {
+      return MAPPER.readTree(json);
+    }
+    catch (IOException e)
+    {
+      throw new IllegalStateException("Invalid seek response " + json, e);
+    }
+  }
+}
@@ -1,17 +1,33 @@
 package com.cameras.basler;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event driven acquisition: the grabber pushes the frames into a bounded queue and this thread processes them. When
+ * the thread falls behind the camera, the oldest queued frames are dropped so the grabbing thread never blocks. The
+ * camera property writes made meanwhile are applied between two frames.
+ */
 public class BaslerAcquisitionThread extends Thread
 {
 
-  private BaslerModel aBaslerModel;
+  private static final long POLL_MILLIS = 100;
+
+  private final BaslerModel aBaslerModel;
+  private final BaslerGrabber grabber;
+  private final BlockingQueue<byte[]> frames;
 
-  private boolean finished;
+  private volatile boolean finished;
   private boolean acquireFrames;
+  private volatile long droppedFrames;
 
-  public BaslerAcquisitionThread(BaslerModel aBaslerModel)
+  public BaslerAcquisitionThread(BaslerModel aBaslerModel, BaslerGrabber grabber, int queueSize)
   {
     super("Basler acquisition thread");
     this.aBaslerModel = aBaslerModel;
+    this.grabber = grabber;
+    this.frames = new ArrayBlockingQueue<>(queueSize);
   }
 
   boolean doAcquireFrames()
@@ -34,28 +50,80 @@ public class BaslerAcquisitionThread extends Thread
     this.finished = finished;
   }
 
+  /**
+   * @return Number of frames dropped because the queue was full
+   */
+  public long getDroppedFrames()
+  {
+    return droppedFrames;
+  }
+
+  /**
+   * Stop the acquisition and wait for the thread to end.
+   *
+   * @param timeoutMillis
+   *          Maximum time to wait
+   */
+  void finish(long timeoutMillis)
+  {
+    setFinished(true);
+    if (Thread.currentThread() == this)
+    {
+      return;
+    }
+    interrupt();
+    try
+    {
+      join(timeoutMillis);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   @Override
   public void run()
   {
-    System.out.println("Running BaslerAcquisitionThread");
-    while (!isFinished())
+    aBaslerModel.getCpuAffinity().apply();
+    aBaslerModel.setPropertyBatching(true);
+    grabber.startGrabbing(this::offerFrame);
+    try
     {
-      try
-      {
-        this.acquireNewFrame();
-      }
-      catch (Exception e)
+      while (!isFinished())
       {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+        byte[] frame = frames.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (frame != null)
+        {
+          aBaslerModel.processFrame(frame);
+        }
+        aBaslerModel.applyPendingProperties();
       }
-
+    }
+    catch (InterruptedException e)
+    {
+      // finish() called
+    }
+    finally
+    {
+      grabber.stopGrabbing();
+      frames.clear();
+      aBaslerModel.setPropertyBatching(false);
     }
   }
 
-  private void acquireNewFrame()
+  /**
+   * Called by the grabber for every frame
+   */
+  private void offerFrame(byte[] frame)
   {
-    aBaslerModel.acquireNewFrame();
+    while (!frames.offer(frame))
+    {
+      if (frames.poll() != null)
+      {
+        droppedFrames++;
+      }
+    }
   }
 
 }
@@ -0,0 +1,40 @@
+package com.cameras.basler;
+
+/**
+ * Push based frame acquisition: once started, the grabber calls its listener for every frame captured by the camera,
+ * on a thread of its own.
+ */
+public interface BaslerGrabber
+{
+
+  /**
+   * Receives the frames. Called on the grabbing thread, it must return quickly.
+   */
+  interface FrameListener
+  {
+
+    /**
+     * @param frame
+     *          RGB components of the image, 3 bytes per pixel
+     */
+    void onFrame(byte[] frame);
+  }
+
+  /**
+   * Start grabbing frames continuously.
+   *
+   * @param listener
+   *          Listener called for every frame
+   */
+  void startGrabbing(FrameListener listener);
+
+  /**
+   * Stop grabbing and wait for the grabbing thread to end: the listener is not called any more once this returns.
+   */
+  void stopGrabbing();
+
+  /**
+   * @return <code>true</code> iff the grabber is running
+   */
+  boolean isGrabbing();
+}
@@ -1,24 +1,61 @@
 package com.cameras.basler;
 
+import com.cameras.capture.CpuAffinity;
+import com.cameras.capture.FrameBus;
 import com.constants.ModulabGlobals;
 
-import java.awt.Color;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.Serializable;
 import java.util.Observable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class BaslerModel extends Observable implements Serializable
 {
 
   public static final String CHANGE_REASON_CONNECTION = "CHANGE_REASON_CONNECTION";
   public static final String CHANGE_REASON_ACQUISITION = "CHANGE_REASON_ACQUISITION";
+  /**
+   * @deprecated New frames are not notified to the observers any more, consume them from {@link #getFrameBus()}
+   */
+  @Deprecated
   public static final String CHANGE_REASON_NEW_FRAME = "CHANGE_REASON_NEW_FRAME";
   public static final String CHANGE_REASON_PROPERTIES = "CHANGE_REASON_PROPERTIES";
 
   private static final String PREFS_PREFIX = "Basler";
 
+  private static final Logger logger = LoggerFactory.getLogger(BaslerModel.class);
+
+  /**
+   * Callback of the native grabbing process, see {@link #onNewFrame(byte[])}
+   */
+  private static final String FRAME_LISTENER_CLASS = "com/cameras/basler/BaslerModel";
+  private static final String FRAME_LISTENER_METHOD = "onNewFrame";
+
+  /**
+   * Camera properties, see {@link BaslerPropertyControl}
+   */
+  private static final String PROPERTY_EXPOSURE_TIME = "ExposureTime";
+  private static final String PROPERTY_EXPOSURE_AUTO = "ExposureAuto";
+  private static final String PROPERTY_GAIN = "Gain";
+  private static final String PROPERTY_GAIN_AUTO = "GainAuto";
+  private static final String PROPERTY_SHARPNESS = "SharpnessEnhancement";
+  private static final String PROPERTY_GAMMA = "Gamma";
+  private static final String PROPERTY_LIGHT_SOURCE = "LightSourcePreset";
+  private static final String PROPERTY_WHITE_BALANCE = "BalanceWhiteAuto";
+  private static final String PROPERTY_WIDTH = "Width";
+  private static final String PROPERTY_HEIGHT = "Height";
+  private static final String PROPERTY_FACTORY_DEFAULTS = "FactoryDefaults";
+
   /**
    * Camera model connected. Set from native code
    */
@@ -35,9 +72,50 @@ public class BaslerModel extends Observable implements Serializable
   private boolean acquiring = false;
 
   /**
-   * Last frame acquired by the camera. Access must be synchronized
+   * Last frames acquired by the camera, each consumer reads them at its own pace
+   */
+  private final transient FrameBus<BufferedImage> frameBus = new FrameBus<>(ModulabGlobals.FRAME_RING_SIZE);
+
+  /**
+   * Converts the grabbed frames into images. Only used from the acquisition thread. One more image than the frame bus
+   * holds, so the image being written is never readable from the bus
+   */
+  private final transient RgbFrameConverter frameConverter = new RgbFrameConverter(ModulabGlobals.FRAME_RING_SIZE + 1);
+
+  /**
+   * Pushes the frames to the acquisition thread
    */
-  private BufferedImage lastFrame = null;
+  private final transient BaslerGrabber grabber;
+
+  /**
+   * Listener of the native grabbing process, null when not grabbing
+   */
+  private transient volatile BaslerGrabber.FrameListener nativeFrameListener;
+
+  /**
+   * Cached reads and batched writes of the camera properties
+   */
+  private final transient BaslerPropertyControl propertyControl = new BaslerPropertyControl(
+      ModulabGlobals.BASLER_PROPERTY_CACHE_MILLIS);
+
+  /**
+   * Time converting a frame into an image, and time grabbing a frame when polling the camera. Null until the metrics
+   * are bound, see {@link #bindMetrics(MeterRegistry, String)}
+   */
+  private transient Timer convertTimer;
+  private transient Timer grabTimer;
+
+  /**
+   * CPUs of the acquisition thread and of the pixel conversion, and the pool of the striped conversion on them, see
+   * {@link #setCpuAffinity(CpuAffinity)}. The pool lives while the camera is connected
+   */
+  private transient CpuAffinity cpuAffinity = CpuAffinity.NONE;
+  private transient ForkJoinPool stripePool;
+
+  /**
+   * Frames dropped by the previous acquisition threads
+   */
+  private long previousDroppedFrames;
 
   private int exposureTime;
   private String autoExposureMode;
@@ -71,6 +149,52 @@ public class BaslerModel extends Observable implements Serializable
   public BaslerModel()
   {
     super();
+    this.grabber = new NativeBaslerGrabber(this);
+  }
+
+  /**
+   * Model acquiring from a Java stand-in of the camera: only the connection and the acquisition are available, the
+   * camera properties need the native library.
+   *
+   * @param grabber
+   *          Stand-in of the camera
+   */
+  public BaslerModel(SimulatedBaslerGrabber grabber)
+  {
+    super();
+    this.grabber = grabber;
+    this.width = grabber.getWidth();
+    this.height = grabber.getHeight();
+  }
+
+  /**
+   * Publish the metrics of the camera, tagged with its name, once per camera. The models created only to talk to the
+   * camera are not bound: camera.frame.convert with stage=rgb, basler.frame.grab
+   * when polling the camera, and camera.frames.dropped with consumer=basler-queue
+   *
+   * @param meterRegistry
+   *          Registry of the metrics
+   * @param camera
+   *          Name of the camera
+   */
+  public void bindMetrics(MeterRegistry meterRegistry, String camera)
+  {
+    convertTimer = Timer.builder("camera.frame.convert")
+        .description("Time converting a frame")
+        .tag("camera", camera)
+        .tag("stage", "rgb")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    grabTimer = Timer.builder("basler.frame.grab")
+        .description("Time grabbing a frame from the Basler camera, when polling it")
+        .tag("camera", camera)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    FunctionCounter.builder("camera.frames.dropped", this, BaslerModel::getDroppedFrames)
+        .description("Frames grabbed but not processed by a consumer")
+        .tag("camera", camera)
+        .tag("consumer", "basler-queue")
+        .register(meterRegistry);
   }
 
   static
@@ -86,9 +210,9 @@ public class BaslerModel extends Observable implements Serializable
       System.load(libraryPath);
       // System.loadLibrary("Basler");
     }
-    catch (Exception e)
+    catch (Exception | UnsatisfiedLinkError e)
     {
-      System.out.println("Cannot find Basler.dll in path " + libraryPath);
+      logger.warn("Cannot find Basler.dll in path {}", libraryPath);
     }
   }
 
@@ -111,17 +235,17 @@ public class BaslerModel extends Observable implements Serializable
       // bm.startConnection();
       bm.openDevice();
       String test = bm.getCamModel();
-      System.out.println(bm.getGamma());
+      logger.debug("Gamma {}", bm.getGamma());
       bm.setGamma(1D);
-      System.out.println(bm.getGamma());
+      logger.debug("Gamma {}", bm.getGamma());
       bm.closeDevice();
-      System.out.println(test);
+      logger.info("Basler camera {} connected", test);
 
       return "Basler camera connected successfully";
     }
     catch (Exception e)
     {
-      System.out.println(e);
+      logger.error("Error connecting to a Basler camera", e);
       return "ERROR connecting to a Basler camera";
     }
   }
@@ -136,6 +260,12 @@ public class BaslerModel extends Observable implements Serializable
 
     this.setConnected(false);
 
+    if (!isNativeDevice())
+    {
+      this.setConnected(true);
+      return;
+    }
+
     try
     {
       this.openDevice();
@@ -155,8 +285,7 @@ public class BaslerModel extends Observable implements Serializable
     }
     catch (Exception e)
     {
-      System.out.println("Cannot connect to the Basler camera");
-      System.out.println(e);
+      logger.error("Cannot connect to the Basler camera", e);
       try
       {
         this.closeDevice();
@@ -187,11 +316,17 @@ public class BaslerModel extends Observable implements Serializable
 
   public void endConnection()
   {
-    System.out.println("Running BaslerAcquisitionThread");
+    logger.info("Closing the Basler camera");
     // Stop acquisition first
     this.stopAcquisition();
     this.closeDevice();
     setConnected(false);
+    if (stripePool != null)
+    {
+      frameConverter.setPool(ForkJoinPool.commonPool());
+      stripePool.shutdown();
+      stripePool = null;
+    }
   }
 
   public boolean isConnected()
@@ -226,7 +361,16 @@ public class BaslerModel extends Observable implements Serializable
       // this.restorePreferences();
       if (aBaslerAcquisitionThread == null || aBaslerAcquisitionThread.isFinished())
       {
-        aBaslerAcquisitionThread = new BaslerAcquisitionThread(this);
+        if (aBaslerAcquisitionThread != null)
+        {
+          previousDroppedFrames += aBaslerAcquisitionThread.getDroppedFrames();
+        }
+        if (!cpuAffinity.isNone() && stripePool == null)
+        {
+          stripePool = cpuAffinity.newForkJoinPool("Basler stripes");
+          frameConverter.setPool(stripePool);
+        }
+        aBaslerAcquisitionThread = new BaslerAcquisitionThread(this, grabber, ModulabGlobals.BASLER_FRAME_QUEUE_SIZE);
         aBaslerAcquisitionThread.start();
       }
       // As the basler camera seems that can't inform about properties changes, this code is commented
@@ -244,7 +388,7 @@ public class BaslerModel extends Observable implements Serializable
     {
       if (aBaslerAcquisitionThread != null)
       {
-        aBaslerAcquisitionThread.setFinished(true);
+        aBaslerAcquisitionThread.finish(ModulabGlobals.BASLER_STOP_TIMEOUT_MILLIS);
       }
 
       if (aBaslerPropertiesObserverThread != null)
@@ -257,9 +401,30 @@ public class BaslerModel extends Observable implements Serializable
     }
   }
 
-  public synchronized Image getLastFrame()
+  /**
+   * @return Last frame acquired, <code>null</code> if none. The image is reused once it has left the frame bus, copy it
+   *         to keep it longer
+   */
+  public Image getLastFrame()
+  {
+    return frameBus.latest();
+  }
+
+  /**
+   * @return Bus of the frames acquired, to be consumed with {@link FrameBus#subscribe(FrameBus.DropPolicy)}
+   */
+  public FrameBus<BufferedImage> getFrameBus()
+  {
+    return frameBus;
+  }
+
+  /**
+   * @return Frames dropped by the acquisition threads because they fell behind the camera
+   */
+  public long getDroppedFrames()
   {
-    return lastFrame;
+    BaslerAcquisitionThread thread = aBaslerAcquisitionThread;
+    return previousDroppedFrames + (thread == null ? 0 : thread.getDroppedFrames());
   }
 
   public void captureFrame()
@@ -270,71 +435,66 @@ public class BaslerModel extends Observable implements Serializable
       getMomentaryCameraControl();
 
       openDevice();
+      long start = System.nanoTime();
       byte[] frame = this.grabFrame();
-
-      final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-      int n = 0;
-      for (int i = 0; i < height; i++)
+      if (grabTimer != null)
       {
-        for (int j = 0; j < width; j++)
-        {
-          // Convert from byte to unsigned int
-          int r = frame[n + 0] & 0xFF;
-          int g = frame[n + 1] & 0xFF;
-          int b = frame[n + 2] & 0xFF;
-
-          // apply customer RGB levels
-          double redFactor = r * (redLevel / 255D);
-          double greenFactor = g * (greenLevel / 255D);
-          double blueFactor = b * (blueLevel / 255D);
-          r = (int) redFactor;
-          g = (int) greenFactor;
-          b = (int) blueFactor;
-
-          Color rgb = new Color(r, g, b);
-
-          image.setRGB(j, i, rgb.getRGB());
-
-          n = n + 3;
-        }
+        grabTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       }
 
-      lastFrame = image;
+      convertAndPublish(frame);
       acquiring = true;
-      setChanged();
-      this.notifyObservers(CHANGE_REASON_NEW_FRAME);
     }
     catch (Exception e)
     {
       acquiring = true;
-      System.out.println(e);
+      logger.error("Cannot capture a Basler frame", e);
     }
 
   }
 
+  /**
+   * Convert a frame pushed by the camera and publish it on the frame bus. Called from the acquisition thread
+   *
+   * @param frame
+   *          RGB components of the image
+   */
+  void processFrame(byte[] frame)
+  {
+    convertAndPublish(frame);
+  }
+
+  private void convertAndPublish(byte[] frame)
+  {
+    long start = System.nanoTime();
+    // apply customer RGB levels and negative, the gamma is applied by the camera
+    frameConverter.setCorrection(redLevel, greenLevel, blueLevel, 1, negative);
+    BufferedImage image = frameConverter.convert(frame, width, height);
+    if (convertTimer != null)
+    {
+      convertTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+    frameBus.publish(image);
+  }
+
+  /**
+   * Acquire one frame by polling the camera, when no acquisition thread is running
+   */
   public void acquireNewFrame()
   {
 
     if (this.isConnected() && this.isAcquiring())
     {
       // setExposureTimeCaller(500000);
-      // System.out.println("Exposure time = " + getExposureTimeNativeCaller() + " us");
-      // long start = System.currentTimeMillis();
+      // The grab and the conversion are timed, see bindMetrics
       this.captureFrame();
-      // long end = System.currentTimeMillis();
-      // System.out.println("Frame acquired in " + (end - start) + " ms");
     }
   }
 
   // Getter for exposure time
   public int getExposureTimeNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    int exposureTimeTemp = this.getExposureTime() / 1000;
-    acquiring = temp;
-    return exposureTimeTemp;
+    return readProperty(PROPERTY_EXPOSURE_TIME, () -> this.getExposureTime() / 1000);
   }
 
   // Setter for exposure time
@@ -342,22 +502,22 @@ public class BaslerModel extends Observable implements Serializable
   {
     // Set the operation mode of the exposure auto function.
     // Possible values: "ExposureAuto_Off", "ExposureAuto_Once" and "ExposureAuto_Continuous"
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     autoExposureMode = exposureMode;
 
-    switch (exposureMode)
+    writeProperty(PROPERTY_EXPOSURE_AUTO, exposureMode, () ->
     {
-      case ModulabGlobals.BASLER_CAMERA_EXPOSURE_ONCE:
-        this.setExposureAutoOnce();
-        break;
-      case ModulabGlobals.BASLER_CAMERA_EXPOSURE_CONTINUOUS:
-        this.setExposureAutoContinuous();
-        break;
-      default:
-        this.setExposureAutoOff();
-    }
-    acquiring = temp;
+      switch (exposureMode)
+      {
+        case ModulabGlobals.BASLER_CAMERA_EXPOSURE_ONCE:
+          this.setExposureAutoOnce();
+          break;
+        case ModulabGlobals.BASLER_CAMERA_EXPOSURE_CONTINUOUS:
+          this.setExposureAutoContinuous();
+          break;
+        default:
+          this.setExposureAutoOff();
+      }
+    });
   }
 
   public String getModelAutoExposureMode()
@@ -367,38 +527,25 @@ public class BaslerModel extends Observable implements Serializable
 
   public String getExposureAutoModeNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    String autoExposureModeTemp = this.getExposureAutoMode();
-    acquiring = temp;
-    return autoExposureModeTemp;
+    return readProperty(PROPERTY_EXPOSURE_AUTO, this::getExposureAutoMode);
   }
 
   public void setExposureTimeCaller(Integer exposure)
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     exposureTime = exposure;
-    this.setExposureTime(exposure * 1000);
-    acquiring = temp;
+    writeProperty(PROPERTY_EXPOSURE_TIME, exposure, () -> this.setExposureTime(exposure * 1000));
   }
 
   public void setContinuousAET()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    this.setExposureAutoContinuous();
-    acquiring = temp;
+    writeProperty(PROPERTY_EXPOSURE_AUTO, ModulabGlobals.BASLER_CAMERA_EXPOSURE_CONTINUOUS,
+        this::setExposureAutoContinuous);
   }
 
   public String getGainAutoModeNativeCaller()
   {
     // The operation mode of the gain auto function. Possible values: "GainAuto_Off", "GainAuto_Once" and "GainAuto_Continuous"
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    String automaticGainControlModeTemp = this.getGainAutoMode();
-    acquiring = temp;
-    return automaticGainControlModeTemp;
+    return readProperty(PROPERTY_GAIN_AUTO, this::getGainAutoMode);
   }
 
   public String getModelAutomaticGainControl()
@@ -410,59 +557,42 @@ public class BaslerModel extends Observable implements Serializable
   public void setAutomaticGainControl(String agcMode)
   {
     // The operation mode of the gain auto function. Possible values: "GainAuto_Off", "GainAuto_Once" and "GainAuto_Continuous"
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     this.automaticGainControlMode = agcMode;
 
     switch (agcMode)
     {
       case ModulabGlobals.BASLER_CAMERA_GAINAUTO_CONTINUOUS:
-        this.setGainAutoContinuous();
+        writeProperty(PROPERTY_GAIN_AUTO, agcMode, this::setGainAutoContinuous);
         break;
       case ModulabGlobals.BASLER_CAMERA_GAINAUTO_ONCE:
-        this.setGainAutoOnce();
+        writeProperty(PROPERTY_GAIN_AUTO, agcMode, this::setGainAutoOnce);
         break;
       default:
-        this.setGainAutoOff();
+        writeProperty(PROPERTY_GAIN_AUTO, agcMode, this::setGainAutoOff);
         this.setGainNativeCaller(gain);
     }
-    acquiring = temp;
   }
 
   public double getGainNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    double gainTemp = this.getGain();
-    acquiring = temp;
-    return gainTemp;
+    return readProperty(PROPERTY_GAIN, this::getGain);
   }
 
   public void setGainNativeCaller(double gain)
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     this.gain = gain;
-    this.setGain(gain);
-    acquiring = temp;
+    writeProperty(PROPERTY_GAIN, gain, () -> this.setGain(gain));
   }
 
   public double getSharpnessEnhancementNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    double sharpnessEnhancementLevelTemp = this.getSharpnessEnhancementLevel();
-    acquiring = temp;
-    return sharpnessEnhancementLevelTemp;
+    return readProperty(PROPERTY_SHARPNESS, this::getSharpnessEnhancementLevel);
   }
 
   public void setSharpnessEnhacementCaller(Double sharpness)
   {
-    boolean temp = acquiring;
     this.sharpness = sharpness;
-    getMomentaryCameraControl();
-    this.setSharpnessEnhancementLevel(sharpness);
-    acquiring = temp;
+    writeProperty(PROPERTY_SHARPNESS, sharpness, () -> this.setSharpnessEnhancementLevel(sharpness));
   }
 
   public double getModelSharpness()
@@ -472,11 +602,7 @@ public class BaslerModel extends Observable implements Serializable
 
   public double getGammaNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    double tempGamma = this.getGamma();
-    acquiring = temp;
-    return tempGamma;
+    return readProperty(PROPERTY_GAMMA, this::getGamma);
   }
 
   public double getModelGamma()
@@ -486,12 +612,8 @@ public class BaslerModel extends Observable implements Serializable
 
   public void setGammaNativeCaller(double gamma)
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     this.gamma = gamma;
-    setGamma(gamma);
-    acquiring = temp;
-
+    writeProperty(PROPERTY_GAMMA, gamma, () -> setGamma(gamma));
   }
 
   public boolean isNegative()
@@ -502,6 +624,37 @@ public class BaslerModel extends Observable implements Serializable
   public void setNegative(boolean negative)
   {
     // this.nativeSetNegative(negative);
+    // Applied to the next frames by the frame converter
+    this.negative = negative;
+  }
+
+  CpuAffinity getCpuAffinity()
+  {
+    return cpuAffinity;
+  }
+
+  /**
+   * @param cpuAffinity
+   *          CPUs of the acquisition thread and of the pixel conversion from the next acquisition on. With CPUs, the
+   *          striped conversion runs on its own pool pinned to them instead of the common pool
+   */
+  public void setCpuAffinity(CpuAffinity cpuAffinity)
+  {
+    this.cpuAffinity = cpuAffinity;
+  }
+
+  public RgbFrameConverter.Mode getPixelPipeline()
+  {
+    return frameConverter.getMode();
+  }
+
+  /**
+   * @param mode
+   *          How the pixels of the next frames are processed
+   */
+  public void setPixelPipeline(RgbFrameConverter.Mode mode)
+  {
+    frameConverter.setMode(mode);
   }
 
   public String getModelLightSource()
@@ -512,11 +665,7 @@ public class BaslerModel extends Observable implements Serializable
   public String getLightSourceNativeCaller()
   {
     // Possible values: "LightSourcePreset_Off", "LightSourcePreset_Daylight5000K", "LightSourcePreset_Daylight6500K" and "LightSourcePreset_Tungsten2800K
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    String lightSourceTemp = getLightSourcePreset();
-    acquiring = temp;
-    return lightSourceTemp;
+    return readProperty(PROPERTY_LIGHT_SOURCE, this::getLightSourcePreset);
   }
 
   public void setLightSourceNativeCaller(String lightSource)
@@ -524,26 +673,24 @@ public class BaslerModel extends Observable implements Serializable
 
     // Set the operation mode of the exposure auto function.
     // Possible values: "ExposureAuto_Off", "ExposureAuto_Once" and "ExposureAuto_Continuous"
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     this.lightSource = lightSource;
-    switch (lightSource)
+    writeProperty(PROPERTY_LIGHT_SOURCE, lightSource, () ->
     {
-      case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETDAYLIGHT5000K:
-        this.setLightSourcePresetDaylight5000K();
-        break;
-      case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETDAYLIGHT6500K:
-        this.setLightSourcePresetDaylight6500K();
-        break;
-      case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETTUNGSTEN2800K:
-        this.setLightSourcePresetTungsten2800K();
-        break;
-      default:
-        this.setLightSourcePresetOff();
-
-    }
-    acquiring = temp;
-
+      switch (lightSource)
+      {
+        case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETDAYLIGHT5000K:
+          this.setLightSourcePresetDaylight5000K();
+          break;
+        case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETDAYLIGHT6500K:
+          this.setLightSourcePresetDaylight6500K();
+          break;
+        case ModulabGlobals.BASLER_CAMERA_SOURCEPRESETTUNGSTEN2800K:
+          this.setLightSourcePresetTungsten2800K();
+          break;
+        default:
+          this.setLightSourcePresetOff();
+      }
+    });
   }
 
   public int getRedLevel()
@@ -614,28 +761,26 @@ public class BaslerModel extends Observable implements Serializable
 
   public int getFrameWidthCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    int frameWidthTemp = this.getFrameWidth();
-    acquiring = temp;
-    return frameWidthTemp;
+    return readProperty(PROPERTY_WIDTH, this::getFrameWidth);
   }
 
   public int getFrameHeightCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    int frameHeightTemp = this.getFrameHeight();
-    acquiring = temp;
-    return frameHeightTemp;
+    return readProperty(PROPERTY_HEIGHT, this::getFrameHeight);
   }
 
   public void resetFactoryDefaultsCaller()
+  {
+    writeProperty(PROPERTY_FACTORY_DEFAULTS, null, this::applyFactoryDefaults);
+  }
+
+  private void applyFactoryDefaults()
   {
     boolean temp = acquiring;
     getMomentaryCameraControl();
 
     resetFactoryDefaults();
+    propertyControl.invalidateAll();
 
     this.redLevel = 255;
     this.greenLevel = 255;
@@ -659,37 +804,28 @@ public class BaslerModel extends Observable implements Serializable
 
   public String getWhiteBalanceModeNativeCaller()
   {
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
-    String tempWhiteBalanceMode = this.getWhiteBalanceMode();
-    // System.out.println("Native :" + tempWhiteBalanceMode);
-    // System.out.println("Config :" + whiteBalanceMode);
-    acquiring = temp;
-    return tempWhiteBalanceMode;
+    return readProperty(PROPERTY_WHITE_BALANCE, this::getWhiteBalanceMode);
   }
 
   public void setWhiteBalanceMode(String mode)
   {
     // Set the operation mode of the Whote mode function.
     // Possible values: "BalanceWhiteAuto_Off", "BalanceWhiteAuto_Once" and "BalanceWhiteAuto_Continuous"
-    boolean temp = acquiring;
-    getMomentaryCameraControl();
     whiteBalanceMode = mode;
-    // System.out.println("Change white Mode: " + mode);
-    switch (mode)
+    writeProperty(PROPERTY_WHITE_BALANCE, mode, () ->
     {
-      case "BalanceWhiteAuto_Once":
-        this.setWhiteBalanceOnce();
-        break;
-      case "BalanceWhiteAuto_Continuous":
-        this.setWhiteBalanceContinuous();
-        break;
-      default:
-        this.setWhiteBalanceOff();
-    }
-    // System.out.println("Native after setMode: " + this.getWhiteBalanceMode());
-    acquiring = temp;
-
+      switch (mode)
+      {
+        case "BalanceWhiteAuto_Once":
+          this.setWhiteBalanceOnce();
+          break;
+        case "BalanceWhiteAuto_Continuous":
+          this.setWhiteBalanceContinuous();
+          break;
+        default:
+          this.setWhiteBalanceOff();
+      }
+    });
   }
 
   void refreshProperties()
@@ -705,6 +841,11 @@ public class BaslerModel extends Observable implements Serializable
   private void getMomentaryCameraControl()
   {
     acquiring = false;
+    if (isGrabbingContinuously())
+    {
+      // The device stays open and grabbing, the properties are set between two frames by the camera
+      return;
+    }
     openDevice();
     try
     {
@@ -718,12 +859,117 @@ public class BaslerModel extends Observable implements Serializable
     {
       acquiring = true;
       openDevice();
-      // System.out.println("Error in procedure getMomentaryCameraControl");
-      System.out.println(e);
+      logger.warn("Interrupted while waiting for the Basler camera", e);
     }
 
   }
 
+  /**
+   * Read a property through the cache. The camera is only queried when the cached value has expired
+   */
+  private <T> T readProperty(String property, Supplier<T> nativeRead)
+  {
+    return propertyControl.read(property, () ->
+    {
+      boolean temp = acquiring;
+      getMomentaryCameraControl();
+      T value = nativeRead.get();
+      acquiring = temp;
+      return value;
+    });
+  }
+
+  /**
+   * Write a property, between two frames while the acquisition is running
+   */
+  private void writeProperty(String property, Object value, Runnable nativeWrite)
+  {
+    propertyControl.write(property, value, () ->
+    {
+      boolean temp = acquiring;
+      getMomentaryCameraControl();
+      nativeWrite.run();
+      acquiring = temp;
+    });
+  }
+
+  /**
+   * Queue the property writes while the acquisition thread is running, so they are applied between two frames
+   *
+   * @param batching
+   *          <code>true</code> when the acquisition thread starts, <code>false</code> when it ends
+   */
+  void setPropertyBatching(boolean batching)
+  {
+    propertyControl.setBatching(batching);
+  }
+
+  /**
+   * Apply the pending property writes. Called by the acquisition thread between two frames
+   */
+  void applyPendingProperties()
+  {
+    propertyControl.applyPending();
+  }
+
+  private boolean isNativeDevice()
+  {
+    return grabber instanceof NativeBaslerGrabber;
+  }
+
+  private boolean isGrabbingContinuously()
+  {
+    return isNativeDevice() && nativeFrameListener != null;
+  }
+
+  void startNativeGrabbing(BaslerGrabber.FrameListener listener)
+  {
+    openDevice();
+    nativeFrameListener = listener;
+    startGrabbing(FRAME_LISTENER_CLASS, FRAME_LISTENER_METHOD);
+  }
+
+  void stopNativeGrabbing()
+  {
+    // Closing the device ends the native grabbing process
+    closeDevice();
+    long deadline = System.currentTimeMillis() + ModulabGlobals.BASLER_STOP_TIMEOUT_MILLIS;
+    try
+    {
+      while (isGrabbing() && System.currentTimeMillis() < deadline)
+      {
+        Thread.sleep(10);
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    nativeFrameListener = null;
+    openDevice();
+  }
+
+  boolean isNativeGrabbing()
+  {
+    return nativeFrameListener != null && isGrabbing();
+  }
+
+  /**
+   * Called from native code for every frame captured by the grabbing process started with
+   * {@link #startGrabbing(String, String)}. JNI signature: ([B)V
+   *
+   * @param frame
+   *          RGB components of the image
+   */
+  private void onNewFrame(byte[] frame)
+  {
+    BaslerGrabber.FrameListener listener = nativeFrameListener;
+    if (listener != null)
+    {
+      listener.onFrame(frame);
+    }
+  }
+
   private void writeValuesToConsole(String testShortDescription, boolean activated)
   {
 
@@ -733,25 +979,25 @@ public class BaslerModel extends Observable implements Serializable
     boolean temp = acquiring;
 
     getMomentaryCameraControl();
-    System.out.println("testShortDescription: " + testShortDescription);
+    logger.debug("testShortDescription: {}", testShortDescription);
     getMomentaryCameraControl();
-    System.out.println("Exposure time: " + (this.getExposureTime() / 1000));
+    logger.debug("Exposure time: {}", (this.getExposureTime() / 1000));
     getMomentaryCameraControl();
-    System.out.println("Autoexposure: " + this.getExposureAutoMode());
+    logger.debug("Autoexposure: {}", this.getExposureAutoMode());
     getMomentaryCameraControl();
-    System.out.println("Gain: " + this.getGain());
+    logger.debug("Gain: {}", this.getGain());
     getMomentaryCameraControl();
-    System.out.println("AutoGain: " + this.getGainAutoMode());
+    logger.debug("AutoGain: {}", this.getGainAutoMode());
     getMomentaryCameraControl();
-    System.out.println("Sharpness: " + this.getSharpnessEnhancementLevel());
+    logger.debug("Sharpness: {}", this.getSharpnessEnhancementLevel());
     getMomentaryCameraControl();
-    System.out.println("Gamma: " + this.getGamma());
+    logger.debug("Gamma: {}", this.getGamma());
     getMomentaryCameraControl();
-    System.out.println("AutoWhite: " + this.getWhiteBalanceMode());
+    logger.debug("AutoWhite: {}", this.getWhiteBalanceMode());
     getMomentaryCameraControl();
-    System.out.println("Lightsource: " + this.getLightSourcePreset());
+    logger.debug("Lightsource: {}", this.getLightSourcePreset());
     getMomentaryCameraControl();
-    System.out.println("************************");
+    logger.debug("************************");
 
     acquiring = temp;
 
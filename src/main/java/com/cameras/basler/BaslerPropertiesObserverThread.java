@@ -1,8 +1,13 @@
 package com.cameras.basler;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class BaslerPropertiesObserverThread extends Thread
 {
 
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
   private BaslerModel aBaslerModel;
 
   private boolean finished;
@@ -36,7 +41,7 @@ public class BaslerPropertiesObserverThread extends Thread
       }
       catch (InterruptedException ie)
       {
-        System.out.println(ie);
+        logger.debug("Interrupted while observing the Basler properties", ie);
       }
     }
   }
@@ -0,0 +1,183 @@
+package com.cameras.basler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Access to the camera properties without stalling the acquisition. Values read from the camera are cached for a
+ * while. While the camera is grabbing, writes are queued instead of being sent to the camera: a new write of a
+ * property replaces its pending write, and the acquisition thread applies all the pending writes in one batch between
+ * two frames. A property with a pending write reads as the written value.
+ */
+public class BaslerPropertyControl
+{
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final long cacheMillis;
+
+  private final Map<String, CachedValue> cache = new ConcurrentHashMap<>();
+
+  /**
+   * Pending writes by property, in the order of their first write. Access must be synchronized on it
+   */
+  private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+  private boolean batching;
+
+  /**
+   * @param cacheMillis
+   *          Time a value read from the camera is reused
+   */
+  public BaslerPropertyControl(long cacheMillis)
+  {
+    this.cacheMillis = cacheMillis;
+  }
+
+  /**
+   * @param property
+   *          Name of the property
+   * @param cameraRead
+   *          Reads the property from the camera
+   * @return The pending value, the cached value, or the value read from the camera
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T read(String property, Supplier<T> cameraRead)
+  {
+    synchronized (pending)
+    {
+      PendingWrite write = pending.get(property);
+      if (write != null)
+      {
+        return (T) write.value;
+      }
+    }
+    CachedValue cached = cache.get(property);
+    long now = System.currentTimeMillis();
+    if (cached != null && now - cached.readMillis < cacheMillis)
+    {
+      return (T) cached.value;
+    }
+    T value = cameraRead.get();
+    cache.put(property, new CachedValue(value, now));
+    return value;
+  }
+
+  /**
+   * Write a property, right away or in the next batch while batching.
+   *
+   * @param property
+   *          Name of the property
+   * @param value
+   *          Value written, returned by {@link #read(String, Supplier)} until the write is applied
+   * @param cameraWrite
+   *          Writes the property to the camera
+   */
+  public void write(String property, Object value, Runnable cameraWrite)
+  {
+    synchronized (pending)
+    {
+      if (batching)
+      {
+        pending.put(property, new PendingWrite(value, cameraWrite));
+        return;
+      }
+    }
+    apply(property, cameraWrite);
+  }
+
+  /**
+   * Apply the pending writes. Called between two frames by the acquisition thread
+   */
+  public void applyPending()
+  {
+    List<Map.Entry<String, PendingWrite>> batch;
+    synchronized (pending)
+    {
+      if (pending.isEmpty())
+      {
+        return;
+      }
+      batch = new ArrayList<>(pending.entrySet());
+      pending.clear();
+    }
+    for (Map.Entry<String, PendingWrite> write : batch)
+    {
+      apply(write.getKey(), write.getValue().cameraWrite);
+    }
+  }
+
+  /**
+   * @param batching
+   *          <code>true</code> to queue the writes until {@link #applyPending()}, <code>false</code> to apply the pending
+   *          writes and write right away from now on
+   */
+  public void setBatching(boolean batching)
+  {
+    synchronized (pending)
+    {
+      this.batching = batching;
+    }
+    if (!batching)
+    {
+      applyPending();
+    }
+  }
+
+  /**
+   * Forget all the cached values, when the camera changed them on its own
+   */
+  public void invalidateAll()
+  {
+    cache.clear();
+  }
+
+  private void apply(String property, Runnable cameraWrite)
+  {
+    cache.remove(property);
+    try
+    {
+      cameraWrite.run();
+    }
+    catch (RuntimeException e)
+    {
+      logger.error("Cannot set the camera property {}", property, e);
+    }
+    finally
+    {
+      cache.remove(property);
+    }
+  }
+
+  private static final class CachedValue
+  {
+
+    private final Object value;
+    private final long readMillis;
+
+    private CachedValue(Object value, long readMillis)
+    {
+      this.value = value;
+      this.readMillis = readMillis;
+    }
+  }
+
+  private static final class PendingWrite
+  {
+
+    private final Object value;
+    private final Runnable cameraWrite;
+
+    private PendingWrite(Object value, Runnable cameraWrite)
+    {
+      this.value = value;
+      this.cameraWrite = cameraWrite;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.cameras.basler;
+
+/**
+ * Grabber of a camera driven through the native Basler library: the native grabbing process calls
+ * {@link BaslerModel} back for every frame.
+ */
+class NativeBaslerGrabber implements BaslerGrabber
+{
+
+  private final BaslerModel aBaslerModel;
+
+  NativeBaslerGrabber(BaslerModel aBaslerModel)
+  {
+    this.aBaslerModel = aBaslerModel;
+  }
+
+  @Override
+  public void startGrabbing(FrameListener listener)
+  {
+    aBaslerModel.startNativeGrabbing(listener);
+  }
+
+  @Override
+  public void stopGrabbing()
+  {
+    aBaslerModel.stopNativeGrabbing();
+  }
+
+  @Override
+  public boolean isGrabbing()
+  {
+    return aBaslerModel.isNativeGrabbing();
+  }
+}
@@ -0,0 +1,267 @@
+package com.cameras.basler;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts the packed RGB bytes grabbed from the camera into images, applying the red, green and blue levels, the
+ * gamma and the negative. The pixels are written as packed ints straight into the raster of preallocated images used
+ * in turn, and the corrections are folded into one lookup table per component, so a conversion allocates nothing.
+ * <p>
+ * In {@link Mode#STRIPED} mode large frames are split into stripes of rows converted in parallel on a ForkJoin pool.
+ * <p>
+ * An image returned by {@link #convert(byte[], int, int)} is overwritten once all the other images have been used:
+ * consumers that keep a frame longer than that must copy it. Not thread-safe, intended for the acquisition thread.
+ */
+public class RgbFrameConverter
+{
+
+  /**
+   * How the pixels of a frame are processed
+   */
+  public enum Mode
+  {
+    /**
+     * Sequentially, on the calling thread
+     */
+    SCALAR,
+    /**
+     * In stripes of rows, in parallel on the ForkJoin pool
+     */
+    STRIPED
+  }
+
+  private static final int LEVELS = 256;
+
+  /**
+   * Smallest stripe worth a task of its own
+   */
+  private static final int MIN_STRIPE_PIXELS = 1 << 16;
+
+  private final int[] redTable = new int[LEVELS];
+  private final int[] greenTable = new int[LEVELS];
+  private final int[] blueTable = new int[LEVELS];
+  private int redLevel = -1;
+  private int greenLevel = -1;
+  private int blueLevel = -1;
+  private double gamma = 1;
+  private boolean negative;
+
+  private final BufferedImage[] images;
+  private final int[][] pixels;
+  private int back;
+
+  private volatile ForkJoinPool pool;
+  private volatile Mode mode = Mode.SCALAR;
+
+  /**
+   * Converter with two images, double buffering
+   */
+  public RgbFrameConverter()
+  {
+    this(2);
+  }
+
+  /**
+   * @param buffers
+   *          Number of images used in turn
+   */
+  public RgbFrameConverter(int buffers)
+  {
+    this(buffers, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * @param buffers
+   *          Number of images used in turn
+   * @param pool
+   *          Pool of the {@link Mode#STRIPED} mode
+   */
+  public RgbFrameConverter(int buffers, ForkJoinPool pool)
+  {
+    this.images = new BufferedImage[buffers];
+    this.pixels = new int[buffers][];
+    this.pool = pool;
+  }
+
+  /**
+   * @param pool
+   *          Pool of the {@link Mode#STRIPED} mode for the next conversions
+   */
+  public void setPool(ForkJoinPool pool)
+  {
+    this.pool = pool;
+  }
+
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * @param mode
+   *          Processing of the next conversions, can be changed at any time
+   */
+  public void setMode(Mode mode)
+  {
+    this.mode = mode;
+  }
+
+  /**
+   * Set the levels applied to each component, from 0 (component removed) to 255 (unchanged). The lookup tables are
+   * only rebuilt when a level changes.
+   */
+  public void setLevels(int red, int green, int blue)
+  {
+    setCorrection(red, green, blue, gamma, negative);
+  }
+
+  /**
+   * Set all the corrections. The lookup tables are only rebuilt when a correction changes.
+   *
+   * @param red
+   *          Level of the red component, from 0 (component removed) to 255 (unchanged)
+   * @param green
+   *          Level of the green component
+   * @param blue
+   *          Level of the blue component
+   * @param gamma
+   *          Gamma applied after the levels, 1 for none
+   * @param negative
+   *          <code>true</code> to invert the components, after the gamma
+   */
+  public void setCorrection(int red, int green, int blue, double gamma, boolean negative)
+  {
+    boolean curveChanged = gamma != this.gamma || negative != this.negative;
+    this.gamma = gamma;
+    this.negative = negative;
+    if (curveChanged || red != redLevel)
+    {
+      fillTable(redTable, red, 16);
+      redLevel = red;
+    }
+    if (curveChanged || green != greenLevel)
+    {
+      fillTable(greenTable, green, 8);
+      greenLevel = green;
+    }
+    if (curveChanged || blue != blueLevel)
+    {
+      fillTable(blueTable, blue, 0);
+      blueLevel = blue;
+    }
+  }
+
+  /**
+   * @param frame
+   *          RGB components of the image, 3 bytes per pixel
+   * @param width
+   *          frame width
+   * @param height
+   *          frame height
+   * @return The image of the frame, with the corrections applied
+   */
+  public BufferedImage convert(byte[] frame, int width, int height)
+  {
+    int[] target = backBuffer(width, height);
+    int rows = Math.min(height, frame.length / 3 / width);
+    if (mode == Mode.STRIPED && rows * width >= 2 * MIN_STRIPE_PIXELS)
+    {
+      pool.invoke(new Stripe(frame, target, width, 0, rows));
+    }
+    else
+    {
+      convertPixels(frame, target, 0, rows * width);
+    }
+    BufferedImage image = images[back];
+    back = (back + 1) % images.length;
+    return image;
+  }
+
+  /**
+   * Kernel of the conversion, for the pixels [from, to)
+   */
+  private void convertPixels(byte[] frame, int[] target, int from, int to)
+  {
+    int[] red = redTable;
+    int[] green = greenTable;
+    int[] blue = blueTable;
+    for (int i = from, n = from * 3; i < to; i++, n += 3)
+    {
+      target[i] = red[frame[n] & 0xFF] | green[frame[n + 1] & 0xFF] | blue[frame[n + 2] & 0xFF];
+    }
+  }
+
+  private int[] backBuffer(int width, int height)
+  {
+    BufferedImage image = images[back];
+    if (image == null || image.getWidth() != width || image.getHeight() != height)
+    {
+      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      images[back] = image;
+      pixels[back] = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+    return pixels[back];
+  }
+
+  /**
+   * Level, then gamma, then negative. The level keeps the rounding of the previous per pixel computation: the
+   * component scaled by level / 255, truncated
+   */
+  private void fillTable(int[] table, int level, int shift)
+  {
+    int clampedLevel = Math.max(0, Math.min(LEVELS - 1, level));
+    for (int value = 0; value < LEVELS; value++)
+    {
+      int corrected = (int) (value * (clampedLevel / 255D));
+      if (gamma != 1 && gamma > 0)
+      {
+        corrected = (int) Math.round(255 * Math.pow(corrected / 255D, 1 / gamma));
+      }
+      if (negative)
+      {
+        corrected = 255 - corrected;
+      }
+      table[value] = corrected << shift;
+    }
+  }
+
+  /**
+   * Rows [fromRow, toRow) of a frame, split in halves until small enough
+   */
+  private final class Stripe extends RecursiveAction
+  {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] frame;
+    private final int[] target;
+    private final int width;
+    private final int fromRow;
+    private final int toRow;
+
+    private Stripe(byte[] frame, int[] target, int width, int fromRow, int toRow)
+    {
+      this.frame = frame;
+      this.target = target;
+      this.width = width;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+    }
+
+    @Override
+    protected void compute()
+    {
+      int rows = toRow - fromRow;
+      if (rows < 2 || rows * width < 2 * MIN_STRIPE_PIXELS)
+      {
+        convertPixels(frame, target, fromRow * width, toRow * width);
+        return;
+      }
+      int middle = fromRow + rows / 2;
+      invokeAll(new Stripe(frame, target, width, fromRow, middle), new Stripe(frame, target, width, middle, toRow));
+    }
+  }
+}
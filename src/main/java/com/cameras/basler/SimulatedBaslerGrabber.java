@@ -0,0 +1,119 @@
+package com.cameras.basler;
+
+/**
+ * Java stand-in for the native grabbing process, to run the acquisition without a camera: a moving test pattern is
+ * delivered at a fixed frame rate from a thread of its own, in the same RGB format as the camera.
+ */
+public class SimulatedBaslerGrabber implements BaslerGrabber
+{
+
+  private final int width;
+  private final int height;
+  private final long frameIntervalNanos;
+
+  private Thread grabbingThread;
+  private volatile boolean grabbing;
+
+  /**
+   * @param width
+   *          frame width
+   * @param height
+   *          frame height
+   * @param frameRate
+   *          frames per second
+   */
+  public SimulatedBaslerGrabber(int width, int height, double frameRate)
+  {
+    this.width = width;
+    this.height = height;
+    this.frameIntervalNanos = (long) (1000000000L / frameRate);
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  @Override
+  public synchronized void startGrabbing(FrameListener listener)
+  {
+    if (grabbing)
+    {
+      throw new IllegalStateException("A grabbing process is already running");
+    }
+    grabbing = true;
+    grabbingThread = new Thread(() -> grab(listener), "Simulated Basler grabbing");
+    grabbingThread.setDaemon(true);
+    grabbingThread.start();
+  }
+
+  @Override
+  public synchronized void stopGrabbing()
+  {
+    if (!grabbing)
+    {
+      return;
+    }
+    grabbing = false;
+    grabbingThread.interrupt();
+    try
+    {
+      grabbingThread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public boolean isGrabbing()
+  {
+    return grabbing;
+  }
+
+  private void grab(FrameListener listener)
+  {
+    long next = System.nanoTime();
+    int frameNumber = 0;
+    while (grabbing)
+    {
+      long wait = next - System.nanoTime();
+      if (wait > 0)
+      {
+        try
+        {
+          Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+        catch (InterruptedException e)
+        {
+          return;
+        }
+      }
+      next += frameIntervalNanos;
+      listener.onFrame(createFrame(frameNumber++));
+    }
+  }
+
+  private byte[] createFrame(int frameNumber)
+  {
+    byte[] frame = new byte[width * height * 3];
+    int n = 0;
+    for (int i = 0; i < height; i++)
+    {
+      for (int j = 0; j < width; j++)
+      {
+        frame[n] = (byte) (j + frameNumber);
+        frame[n + 1] = (byte) (i + frameNumber);
+        frame[n + 2] = (byte) (frameNumber * 4);
+        n += 3;
+      }
+    }
+    return frame;
+  }
+}
@@ -0,0 +1,355 @@
+package com.cameras.capture;
+
+import com.constants.ModulabGlobals;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Long-lived capture of one camera. The frame source is opened once, on first use, and grabs continuously on its own
+ * thread. Every frame is published on a {@link FrameBus} and broadcast to any number of reactive consumers; consumers
+ * that are not ready to receive a frame skip it, so they can never slow down the capture.
+ * <p>
+ * The grabbed pixels are copied into frames of a {@link FramePool}, consumers must retain a {@link CapturedFrame}
+ * while they read its pixels.
+ * <p>
+ * Metrics, tagged with the camera: camera.frame.grab (time waiting for the source), camera.frame.convert with
+ * stage=copy (copy into the pool), camera.frames (frames captured) and camera.frame.rate (frames per second). The
+ * latency of the frames through the pipeline is traced by the {@link FrameLatencyTracer} of the capture, from the end
+ * of the grab, in the stage capture up to their publication.
+ * <p>
+ * The capture thread runs on the CPUs of the {@link CpuAffinity} of the capture, the consumers create their threads
+ * with it so that all the work of a camera stays on its CPUs.
+ */
+public class CameraCapture
+{
+
+  private static final long RETRY_DELAY_MILLIS = 500;
+
+  /**
+   * Weight of the last interval in the frame rate average
+   */
+  private static final double RATE_SMOOTHING = 0.1;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final String name;
+  private final Supplier<FrameSource> sourceFactory;
+  private final FrameBus<CapturedFrame> frameBus;
+  private final FramePool framePool;
+  private final Sinks.Many<CapturedFrame> sink = Sinks.many().multicast().directBestEffort();
+
+  private final Timer grabTimer;
+  private final Timer copyTimer;
+  private final Counter frameCounter;
+  private final FrameLatencyTracer latencyTracer;
+  private final FrameLatencyTracer.Stage captureStage;
+  private final CpuAffinity cpuAffinity;
+  private volatile long lastFrameNanos;
+  private volatile double averageIntervalNanos;
+
+  /**
+   * Source grabbed by the current capture thread, null when the capture is stopped. Each capture thread grabs its own
+   * source and ends as soon as it is no longer the current one, so a thread still blocked in a grab when the capture
+   * is stopped never grabs alongside the thread of the next start
+   */
+  private final AtomicReference<FrameSource> source = new AtomicReference<>();
+  private Thread captureThread;
+
+  /**
+   * @param name
+   *          Name of the camera
+   * @param sourceFactory
+   *          Creates the frame source each time the capture starts
+   * @param ringCapacity
+   *          Number of recent frames kept on the frame bus
+   * @param poolCapacity
+   *          Number of pooled frames, for the frame bus and the frames being processed by the consumers
+   * @param meterRegistry
+   *          Registry of the capture metrics
+   * @param latencyTracer
+   *          Latency of the frames through the pipeline, shared by the consumers of the capture
+   * @param cpuAffinity
+   *          CPUs of the capture thread, and of the threads of the consumers of the capture
+   */
+  public CameraCapture(String name, Supplier<FrameSource> sourceFactory, int ringCapacity, int poolCapacity,
+      MeterRegistry meterRegistry, FrameLatencyTracer latencyTracer, CpuAffinity cpuAffinity)
+  {
+    this.name = name;
+    this.cpuAffinity = cpuAffinity;
+    this.latencyTracer = latencyTracer;
+    this.captureStage = latencyTracer.stage("capture");
+    this.sourceFactory = sourceFactory;
+    this.frameBus = new FrameBus<>(ringCapacity, CapturedFrame::release);
+    this.framePool = new FramePool(name, poolCapacity);
+    this.grabTimer = Timer.builder("camera.frame.grab")
+        .description("Time waiting for a frame from the source")
+        .tag("camera", name)
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.copyTimer = Timer.builder("camera.frame.convert")
+        .description("Time converting a frame")
+        .tag("camera", name)
+        .tag("stage", "copy")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.frameCounter = Counter.builder("camera.frames")
+        .description("Frames captured")
+        .tag("camera", name)
+        .register(meterRegistry);
+    Gauge.builder("camera.frame.rate", this, CameraCapture::getFrameRate)
+        .description("Frames captured per second, averaged over the last frames")
+        .tag("camera", name)
+        .register(meterRegistry);
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public FrameBus<CapturedFrame> getFrameBus()
+  {
+    return frameBus;
+  }
+
+  public FramePool getFramePool()
+  {
+    return framePool;
+  }
+
+  public FrameLatencyTracer getLatencyTracer()
+  {
+    return latencyTracer;
+  }
+
+  public CpuAffinity getCpuAffinity()
+  {
+    return cpuAffinity;
+  }
+
+  public boolean isRunning()
+  {
+    return source.get() != null;
+  }
+
+  /**
+   * @return Frames captured per second, 0 when no frame has been captured for a second
+   */
+  public double getFrameRate()
+  {
+    double interval = averageIntervalNanos;
+    if (interval <= 0 || System.nanoTime() - lastFrameNanos > TimeUnit.SECONDS.toNanos(1))
+    {
+      return 0;
+    }
+    return TimeUnit.SECONDS.toNanos(1) / interval;
+  }
+
+  /**
+   * Open the camera and start the capture thread, if not already done.
+   *
+   * @throws FrameGrabber.Exception
+   *           if the camera cannot be opened
+   */
+  public synchronized void start() throws FrameGrabber.Exception
+  {
+    if (isRunning())
+    {
+      return;
+    }
+    FrameSource newSource = sourceFactory.get();
+    newSource.start();
+    source.set(newSource);
+    captureThread = new Thread(() -> capture(newSource), "Camera capture " + name);
+    captureThread.setDaemon(true);
+    captureThread.start();
+    logger.info("Camera {} started", name);
+  }
+
+  /**
+   * Stop the capture thread and release the camera. A grab blocked on a stalled camera is interrupted, and the camera
+   * is released even if the capture thread does not end in time.
+   */
+  public synchronized void stop()
+  {
+    FrameSource stoppedSource = source.getAndSet(null);
+    if (stoppedSource == null)
+    {
+      return;
+    }
+    captureThread.interrupt();
+    try
+    {
+      captureThread.join(ModulabGlobals.CAPTURE_STOP_TIMEOUT_MILLIS);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    if (captureThread.isAlive())
+    {
+      logger.warn("The capture thread of camera {} did not end in {} ms, releasing the camera", name,
+          ModulabGlobals.CAPTURE_STOP_TIMEOUT_MILLIS);
+    }
+    release(stoppedSource);
+    logger.info("Camera {} stopped", name);
+  }
+
+  /**
+   * Live frames, starting with the next grabbed frame. Frames are dropped for a subscriber without pending demand.
+   *
+   * @return Flux of CapturedFrame.
+   */
+  public Flux<CapturedFrame> frames()
+  {
+    return Mono.fromCallable(() ->
+    {
+      start();
+      return this;
+    }).flatMapMany(capture -> sink.asFlux());
+  }
+
+  /**
+   * The most recent frame, or the next one if no frame has been captured yet. The frame is retained, the subscriber
+   * must release it.
+   *
+   * @return Mono of CapturedFrame.
+   */
+  public Mono<CapturedFrame> latestFrame()
+  {
+    return Mono.defer(() ->
+    {
+      CapturedFrame latest = frameBus.latest();
+      if (latest != null && isRunning() && latest.retain())
+      {
+        return Mono.just(latest);
+      }
+      return frames().filter(CapturedFrame::retain).next();
+    }).doOnDiscard(CapturedFrame.class, CapturedFrame::release);
+  }
+
+  /**
+   * Grab the source until it is stopped, or until the thread is interrupted. A thread ending on its own, e.g.
+   * interrupted while waiting to retry, releases its source so that the next start opens the camera again.
+   *
+   * @param captureSource
+   *          Source of the thread, started
+   */
+  private void capture(FrameSource captureSource)
+  {
+    cpuAffinity.apply();
+    try
+    {
+      grabFrames(captureSource);
+    }
+    finally
+    {
+      if (source.compareAndSet(captureSource, null))
+      {
+        release(captureSource);
+        logger.warn("The capture thread of camera {} ended, the camera is released", name);
+      }
+    }
+  }
+
+  private void grabFrames(FrameSource captureSource)
+  {
+    while (source.get() == captureSource && !Thread.currentThread().isInterrupted())
+    {
+      try
+      {
+        long grabStartNanos = System.nanoTime();
+        Frame frame = captureSource.grab();
+        long captureNanos = System.nanoTime();
+        if (frame == null || frame.image == null || source.get() != captureSource)
+        {
+          // No frame, or grabbed from a source stopped meanwhile
+          continue;
+        }
+        grabTimer.record(captureNanos - grabStartNanos, TimeUnit.NANOSECONDS);
+        long captureTimeMillis = System.currentTimeMillis();
+        countFrame(captureNanos);
+        // The source may reuse its frame, consumers get their own copy
+        CapturedFrame capturedFrame;
+        if (framePool.canPool(frame))
+        {
+          capturedFrame = framePool.copyOf(frame, frameBus.getNextSequence(), captureNanos, captureTimeMillis);
+          copyTimer.record(System.nanoTime() - captureNanos, TimeUnit.NANOSECONDS);
+          if (capturedFrame == null)
+          {
+            // All the pooled frames are still in use, counted by the pool
+            continue;
+          }
+        }
+        else
+        {
+          // Only the 8 bits per component frames are pooled, the others are copied
+          Frame copy = frame.clone();
+          copyTimer.record(System.nanoTime() - captureNanos, TimeUnit.NANOSECONDS);
+          capturedFrame = new CapturedFrame(frameBus.getNextSequence(), captureNanos, captureTimeMillis, copy);
+        }
+        // The frame bus owns the initial reference, released when the frame leaves the ring
+        frameBus.publish(capturedFrame);
+        captureStage.record(captureNanos);
+        sink.tryEmitNext(capturedFrame);
+      }
+      catch (FrameGrabber.Exception | RuntimeException e)
+      {
+        logger.error("Error while grabbing from camera {}", name, e);
+        sleepBeforeRetry();
+      }
+    }
+  }
+
+  private void release(FrameSource stoppedSource)
+  {
+    try
+    {
+      stoppedSource.stop();
+    }
+    catch (FrameGrabber.Exception e)
+    {
+      logger.error("Error while releasing the camera {}", name, e);
+    }
+  }
+
+  private void countFrame(long captureNanos)
+  {
+    frameCounter.increment();
+    long previous = lastFrameNanos;
+    lastFrameNanos = captureNanos;
+    if (previous != 0)
+    {
+      long interval = captureNanos - previous;
+      double average = averageIntervalNanos;
+      averageIntervalNanos = average <= 0 ? interval : average + RATE_SMOOTHING * (interval - average);
+    }
+  }
+
+  private void sleepBeforeRetry()
+  {
+    try
+    {
+      Thread.sleep(RETRY_DELAY_MILLIS);
+    }
+    catch (InterruptedException e)
+    {
+      // Ends the capture thread
+      Thread.currentThread().interrupt();
+    }
+  }
+}
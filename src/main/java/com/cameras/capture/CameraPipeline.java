@@ -0,0 +1,130 @@
+package com.cameras.capture;
+
+import com.cameras.streaming.DvrRecorder;
+import com.cameras.streaming.HlsSegmenter;
+import com.cameras.streaming.LiveMp4Broadcaster;
+import com.cameras.streaming.MjpegBroadcaster;
+import com.cameras.streaming.SnapshotCache;
+import com.constants.ModulabGlobals;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Everything serving one camera: its capture, with its own capture thread and frame pool, its snapshot cache and live
+ * broadcasters, each with its own encoder thread, its HLS segmenter and DVR recorder, cut from its live MP4 stream, and
+ * a scheduler for the blocking work of its requests. Nothing is shared with the pipelines of the other cameras, a
+ * stalled or slow camera only delays its own consumers. The capture and encoder threads of the pipeline run on the CPUs
+ * of the {@link CpuAffinity} of its capture, the threads of the scheduler come and go with the requests and run on any
+ * CPU.
+ */
+public class CameraPipeline
+{
+
+  private final String id;
+  private final String source;
+  private final CameraCapture capture;
+  private final SnapshotCache snapshotCache;
+  private final MjpegBroadcaster mjpegBroadcaster;
+  private final LiveMp4Broadcaster liveMp4Broadcaster;
+  private final HlsSegmenter hlsSegmenter;
+  private final DvrRecorder dvrRecorder;
+  private final Scheduler scheduler;
+
+  /**
+   * @param id
+   *          Id of the camera in the urls, also the name of its capture
+   * @param source
+   *          Description of the frame source, e.g. opencv:0
+   * @param hlsSegmenter
+   *          HLS stream cut from the live MP4 stream of the pipeline
+   * @param dvrRecorder
+   *          Recorder of the live MP4 stream of the pipeline, started with the pipeline
+   */
+  public CameraPipeline(String id, String source, CameraCapture capture, SnapshotCache snapshotCache,
+      MjpegBroadcaster mjpegBroadcaster, LiveMp4Broadcaster liveMp4Broadcaster, HlsSegmenter hlsSegmenter,
+      DvrRecorder dvrRecorder)
+  {
+    this.id = id;
+    this.source = source;
+    this.capture = capture;
+    this.snapshotCache = snapshotCache;
+    this.mjpegBroadcaster = mjpegBroadcaster;
+    this.liveMp4Broadcaster = liveMp4Broadcaster;
+    this.hlsSegmenter = hlsSegmenter;
+    this.dvrRecorder = dvrRecorder;
+    this.scheduler = Schedulers.newBoundedElastic(ModulabGlobals.CAMERA_THREADS, ModulabGlobals.CAMERA_QUEUED_TASKS,
+        "Camera " + id);
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public CameraCapture getCapture()
+  {
+    return capture;
+  }
+
+  public SnapshotCache getSnapshotCache()
+  {
+    return snapshotCache;
+  }
+
+  public MjpegBroadcaster getMjpegBroadcaster()
+  {
+    return mjpegBroadcaster;
+  }
+
+  public LiveMp4Broadcaster getLiveMp4Broadcaster()
+  {
+    return liveMp4Broadcaster;
+  }
+
+  public HlsSegmenter getHlsSegmenter()
+  {
+    return hlsSegmenter;
+  }
+
+  public DvrRecorder getDvrRecorder()
+  {
+    return dvrRecorder;
+  }
+
+  /**
+   * @return Scheduler of the blocking camera and encoder work of the requests, out of the request threads
+   */
+  public Scheduler getScheduler()
+  {
+    return scheduler;
+  }
+
+  public CameraStatus getStatus()
+  {
+    return new CameraStatus(id, source, capture.getCpuAffinity().toString(), capture.isRunning(),
+        capture.getFrameRate());
+  }
+
+  /**
+   * Start the DVR recorder, in its mode.
+   */
+  public void start()
+  {
+    dvrRecorder.start();
+  }
+
+  /**
+   * Stop the recorder, the encoders and the capture, and release the camera.
+   */
+  public void dispose()
+  {
+    dvrRecorder.dispose();
+    hlsSegmenter.dispose();
+    liveMp4Broadcaster.dispose();
+    mjpegBroadcaster.dispose();
+    snapshotCache.dispose();
+    scheduler.dispose();
+    capture.stop();
+  }
+}
@@ -0,0 +1,107 @@
+package com.cameras.capture;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cameras of the station, addressed by id, each with its own {@link CameraPipeline}. The first camera is the
+ * default camera, served by the endpoints without a camera id. Binds the metrics of the frame pools of all the cameras.
+ */
+public class CameraRegistry implements MeterBinder
+{
+
+  private final Map<String, CameraPipeline> pipelines;
+  private final CameraPipeline defaultPipeline;
+
+  /**
+   * @param pipelines
+   *          Pipelines of the cameras, the first one is the default camera
+   */
+  public CameraRegistry(List<CameraPipeline> pipelines)
+  {
+    if (pipelines.isEmpty())
+    {
+      throw new IllegalArgumentException("No camera");
+    }
+    Map<String, CameraPipeline> byId = new LinkedHashMap<>();
+    for (CameraPipeline pipeline : pipelines)
+    {
+      if (byId.put(pipeline.getId(), pipeline) != null)
+      {
+        throw new IllegalArgumentException("Duplicate camera " + pipeline.getId());
+      }
+    }
+    this.pipelines = Collections.unmodifiableMap(byId);
+    this.defaultPipeline = pipelines.get(0);
+  }
+
+  /**
+   * @param id
+   *          Id of the camera, null for the default camera
+   * @return Pipeline of the camera, null if there is no such camera
+   */
+  public CameraPipeline get(String id)
+  {
+    return id == null ? defaultPipeline : pipelines.get(id);
+  }
+
+  public CameraPipeline getDefault()
+  {
+    return defaultPipeline;
+  }
+
+  /**
+   * @return Pipelines of the cameras, the default camera first
+   */
+  public List<CameraPipeline> getPipelines()
+  {
+    return new ArrayList<>(pipelines.values());
+  }
+
+  public List<CameraStatus> getStatuses()
+  {
+    List<CameraStatus> statuses = new ArrayList<>(pipelines.size());
+    for (CameraPipeline pipeline : pipelines.values())
+    {
+      statuses.add(pipeline.getStatus());
+    }
+    return statuses;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry)
+  {
+    for (CameraPipeline pipeline : pipelines.values())
+    {
+      pipeline.getCapture().getFramePool().bindTo(registry);
+    }
+  }
+
+  /**
+   * Start the DVR recorders of all the cameras.
+   */
+  public void start()
+  {
+    for (CameraPipeline pipeline : pipelines.values())
+    {
+      pipeline.start();
+    }
+  }
+
+  /**
+   * Stop all the cameras.
+   */
+  public void dispose()
+  {
+    for (CameraPipeline pipeline : pipelines.values())
+    {
+      pipeline.dispose();
+    }
+  }
+}
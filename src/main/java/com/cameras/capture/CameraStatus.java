@@ -0,0 +1,60 @@
+package com.cameras.capture;
+
+/**
+ * State of a camera of the {@link CameraRegistry}
+ */
+public final class CameraStatus
+{
+
+  private final String id;
+  private final String source;
+  private final String cpus;
+  private final boolean running;
+  private final double frameRate;
+
+  public CameraStatus(String id, String source, String cpus, boolean running, double frameRate)
+  {
+    this.id = id;
+    this.source = source;
+    this.cpus = cpus;
+    this.running = running;
+    this.frameRate = frameRate;
+  }
+
+  public String getId()
+  {
+    return id;
+  }
+
+  /**
+   * @return Frame source of the camera, e.g. opencv:0
+   */
+  public String getSource()
+  {
+    return source;
+  }
+
+  /**
+   * @return CPUs of the threads of the camera, empty when they run on any CPU
+   */
+  public String getCpus()
+  {
+    return cpus;
+  }
+
+  /**
+   * @return <code>true</code> while the camera is captured, it is opened on first use
+   */
+  public boolean isRunning()
+  {
+    return running;
+  }
+
+  /**
+   * @return Frames captured per second
+   */
+  public double getFrameRate()
+  {
+    return frameRate;
+  }
+}
@@ -0,0 +1,269 @@
+package com.cameras.capture;
+
+import com.cameras.basler.BaslerModel;
+import com.cameras.basler.RgbFrameConverter;
+import com.cameras.source.BaslerFrameSource;
+import com.cameras.source.OpenCVFrameSource;
+import com.cameras.source.SyntheticFrameSource;
+import com.cameras.streaming.DvrRecorder;
+import com.cameras.streaming.EncoderSettings;
+import com.cameras.streaming.FFmpegJpegEncoder;
+import com.cameras.streaming.FrameEncoder;
+import com.cameras.streaming.HlsSegmenter;
+import com.cameras.streaming.JpegEncoder;
+import com.cameras.streaming.LiveMp4Broadcaster;
+import com.cameras.streaming.MjpegBroadcaster;
+import com.cameras.streaming.SnapshotCache;
+import com.constants.ModulabGlobals;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+@Configuration
+public class CaptureConfiguration
+{
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  /**
+   * The cameras of the station, each with its own capture, encoders and threads. The cameras are listed by id in
+   * video-stream.camera.ids, or found among the OpenCV devices with auto. A camera takes its settings from
+   * video-stream.cameras.&lt;id&gt;.*, falling back to the video-stream.camera.* settings of all the cameras.
+   *
+   * @param cpuPlacement
+   *          none: the threads of the cameras run on any CPU, spread: the CPUs are shared out between the cameras.
+   *          The CPUs of a camera set in video-stream.cameras.&lt;id&gt;.cpus take precedence
+   */
+  @Bean(initMethod = "start", destroyMethod = "dispose")
+  public CameraRegistry cameraRegistry(Environment environment,
+      @Value("${video-stream.camera.ids:default}") String ids,
+      @Value("${video-stream.camera.discovery.max-devices:8}") int discoveryMaxDevices,
+      @Value("${video-stream.camera.cpu-placement:none}") String cpuPlacement,
+      @Value("${video-stream.snapshot.encoder:imageio}") String snapshotEncoder,
+      @Value("${video-stream.snapshot.quality:0.9}") float snapshotQuality,
+      @Value("${video-stream.mjpeg.encoder:imageio}") String mjpegEncoder,
+      @Value("${video-stream.mjpeg.quality:0.8}") float mjpegQuality,
+      @Value("${video-stream.latency.headers:true}") boolean frameHeaders,
+      @Value("${video-stream.latency.window-seconds:60}") long latencyWindowSeconds,
+      @Value("${video-stream.latency.budget-millis:250}") long latencyBudgetMillis,
+      @Value("${video-stream.live.max-pending-fragments:60}") int maxPendingFragments,
+      EncoderSettings encoderSettings, MeterRegistry meterRegistry) throws IOException
+  {
+    // Id and device of each camera, the device is only set for the discovered cameras
+    Map<String, Integer> cameras = new LinkedHashMap<>();
+    if ("auto".equals(ids.trim()))
+    {
+      for (int device : OpenCVFrameSource.discoverDevices(discoveryMaxDevices))
+      {
+        cameras.put(String.valueOf(device), device);
+      }
+      if (cameras.isEmpty())
+      {
+        logger.warn("No camera found among the first {} devices, using the default camera", discoveryMaxDevices);
+        cameras.put("default", null);
+      }
+    }
+    else
+    {
+      for (String id : ids.split(","))
+      {
+        if (!id.trim().isEmpty())
+        {
+          cameras.put(id.trim(), null);
+        }
+      }
+    }
+
+    List<CameraPipeline> pipelines = new ArrayList<>(cameras.size());
+    int baslerCameras = 0;
+    int index = 0;
+    for (Map.Entry<String, Integer> camera : cameras.entrySet())
+    {
+      String id = camera.getKey();
+      String source = camera.getValue() != null ? "opencv"
+          : cameraProperty(environment, id, "source", String.class, "opencv");
+      if ("basler".equals(source) && ++baslerCameras > 1)
+      {
+        // The native library opens the first Basler camera only
+        throw new IllegalArgumentException("Only one Basler camera is supported, " + id + " is the second one");
+      }
+      int device = camera.getValue() != null ? camera.getValue()
+          : cameraProperty(environment, id, "device", Integer.class, ModulabGlobals.DEFAULT_CAMERA);
+      int syntheticWidth = cameraProperty(environment, id, "synthetic.width", Integer.class, 1920);
+      int syntheticHeight = cameraProperty(environment, id, "synthetic.height", Integer.class, 1080);
+      double syntheticFrameRate = cameraProperty(environment, id, "synthetic.frame-rate", Double.class, 30D);
+      RgbFrameConverter.Mode baslerPixelPipeline = cameraProperty(environment, id, "basler.pixel-pipeline",
+          RgbFrameConverter.Mode.class, RgbFrameConverter.Mode.STRIPED);
+      String cpus = environment.getProperty("video-stream.cameras." + id + ".cpus", "");
+      CpuAffinity cpuAffinity = !cpus.isEmpty() ? CpuAffinity.of(cpus)
+          : cpuAffinity(cpuPlacement, index, cameras.size());
+
+      CameraCapture capture = new CameraCapture(id,
+          frameSourceFactory(id, source, device, syntheticWidth, syntheticHeight, syntheticFrameRate,
+              baslerPixelPipeline, cpuAffinity, meterRegistry),
+          ModulabGlobals.FRAME_RING_SIZE, ModulabGlobals.FRAME_POOL_SIZE, meterRegistry,
+          new FrameLatencyTracer(id, Duration.ofSeconds(latencyWindowSeconds), latencyBudgetMillis, meterRegistry),
+          cpuAffinity);
+      LiveMp4Broadcaster liveMp4Broadcaster = new LiveMp4Broadcaster(capture, encoderSettings, maxPendingFragments,
+          meterRegistry);
+      pipelines.add(new CameraPipeline(id,
+          sourceDescription(source, device, syntheticWidth, syntheticHeight, syntheticFrameRate), capture,
+          new SnapshotCache(capture, jpegEncoderFactory(snapshotEncoder), snapshotQuality,
+              ModulabGlobals.MAX_RENDITIONS, meterRegistry),
+          new MjpegBroadcaster(capture, jpegEncoderFactory(mjpegEncoder), mjpegQuality, ModulabGlobals.MAX_RENDITIONS,
+              frameHeaders, meterRegistry),
+          liveMp4Broadcaster, hlsSegmenter(environment, liveMp4Broadcaster),
+          dvrRecorder(environment, id, liveMp4Broadcaster, maxPendingFragments)));
+      logger.info("Camera {}: {}, CPUs {}", id, source, cpuAffinity.isNone() ? "any" : cpuAffinity);
+      index++;
+    }
+    return new CameraRegistry(pipelines);
+  }
+
+  /**
+   * Setting of a camera in video-stream.cameras.&lt;id&gt;.&lt;key&gt;, or else in video-stream.camera.&lt;key&gt;
+   */
+  static <T> T cameraProperty(Environment environment, String id, String key, Class<T> type, T defaultValue)
+  {
+    T shared = environment.getProperty("video-stream.camera." + key, type, defaultValue);
+    return environment.getProperty("video-stream.cameras." + id + "." + key, type, shared);
+  }
+
+  /**
+   * @param placement
+   *          none: any CPU, spread: a share of the CPUs of the JVM for each camera
+   */
+  static CpuAffinity cpuAffinity(String placement, int index, int cameras)
+  {
+    switch (placement)
+    {
+      case "none":
+        return CpuAffinity.NONE;
+      case "spread":
+        return CpuAffinity.spread(index, cameras, Runtime.getRuntime().availableProcessors());
+      default:
+        throw new IllegalArgumentException("Unknown CPU placement " + placement);
+    }
+  }
+
+  private static String sourceDescription(String source, int device, int syntheticWidth, int syntheticHeight,
+      double syntheticFrameRate)
+  {
+    switch (source)
+    {
+      case "opencv":
+        return source + ":" + device;
+      case "synthetic":
+        return source + ":" + syntheticWidth + "x" + syntheticHeight + "@" + syntheticFrameRate;
+      default:
+        return source;
+    }
+  }
+
+  /**
+   * @param camera
+   *          Name of the camera in the metrics
+   * @param source
+   *          opencv: camera of the system, basler: Basler camera through the native library, synthetic: test pattern
+   * @param cpuAffinity
+   *          CPUs of the acquisition and pixel conversion of the Basler camera
+   */
+  static Supplier<FrameSource> frameSourceFactory(String camera, String source, int device, int syntheticWidth,
+      int syntheticHeight, double syntheticFrameRate, RgbFrameConverter.Mode baslerPixelPipeline,
+      CpuAffinity cpuAffinity, MeterRegistry meterRegistry)
+  {
+    switch (source)
+    {
+      case "opencv":
+        return () -> new OpenCVFrameSource(device);
+      case "basler":
+        return () ->
+        {
+          BaslerModel aBaslerModel = new BaslerModel();
+          aBaslerModel.setPixelPipeline(baslerPixelPipeline);
+          aBaslerModel.setCpuAffinity(cpuAffinity);
+          aBaslerModel.bindMetrics(meterRegistry, camera);
+          return new BaslerFrameSource(aBaslerModel);
+        };
+      case "synthetic":
+        return () -> new SyntheticFrameSource(syntheticWidth, syntheticHeight, syntheticFrameRate);
+      default:
+        throw new IllegalArgumentException("Unknown frame source " + source);
+    }
+  }
+
+  /**
+   * @param encoder
+   *          imageio: JPEG writer of ImageIO, ffmpeg: native MJPEG encoder of FFmpeg
+   */
+  static Function<Float, FrameEncoder> jpegEncoderFactory(String encoder)
+  {
+    switch (encoder)
+    {
+      case "imageio":
+        return JpegEncoder::new;
+      case "ffmpeg":
+        return FFmpegJpegEncoder::new;
+      default:
+        throw new IllegalArgumentException("Unknown JPEG encoder " + encoder);
+    }
+  }
+
+  /**
+   * H.264 settings of the live outputs of the cameras
+   */
+  @Bean
+  public EncoderSettings encoderSettings(@Value("${video-stream.live.width:640}") int width,
+      @Value("${video-stream.live.height:480}") int height,
+      @Value("${video-stream.live.frame-rate:30}") double frameRate,
+      @Value("${video-stream.live.gop-size:30}") int gopSize,
+      @Value("${video-stream.live.bitrate:1500000}") int bitrate,
+      @Value("${video-stream.live.preset:ultrafast}") String preset,
+      @Value("${video-stream.live.tune:zerolatency}") String tune)
+  {
+    return new EncoderSettings(width, height, frameRate, gopSize, bitrate, preset, tune);
+  }
+
+  /**
+   * Live HLS stream of a camera, cut from its live fragmented MP4 stream, with the settings video-stream.hls.*
+   */
+  static HlsSegmenter hlsSegmenter(Environment environment, LiveMp4Broadcaster liveMp4Broadcaster)
+  {
+    return new HlsSegmenter(liveMp4Broadcaster,
+        environment.getProperty("video-stream.hls.segment-duration", Double.class, 2D),
+        environment.getProperty("video-stream.hls.live-segments", Integer.class, 6),
+        Duration.ofSeconds(environment.getProperty("video-stream.hls.idle-timeout-seconds", Long.class, 30L)));
+  }
+
+  /**
+   * Recording of the live stream of a camera to disk, with the settings video-stream.dvr.*. The files of all the
+   * cameras are in the same directory, prefixed with the id of their camera; the retention applies to each camera.
+   */
+  static DvrRecorder dvrRecorder(Environment environment, String id, LiveMp4Broadcaster liveMp4Broadcaster,
+      int maxPendingFragments) throws IOException
+  {
+    String directory = environment.getProperty("video-stream.dvr.dir", "");
+    return new DvrRecorder(liveMp4Broadcaster, id,
+        directory.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir"), "video-stream-dvr") : Paths.get(directory),
+        environment.getProperty("video-stream.dvr.mode", DvrRecorder.Mode.class, DvrRecorder.Mode.OFF),
+        Duration.ofSeconds(environment.getProperty("video-stream.dvr.segment-duration-seconds", Long.class, 60L)),
+        Duration.ofSeconds(environment.getProperty("video-stream.dvr.pre-trigger-seconds", Long.class, 10L)),
+        Duration.ofHours(environment.getProperty("video-stream.dvr.max-age-hours", Long.class, 24L)),
+        environment.getProperty("video-stream.dvr.max-bytes", Long.class, 10737418240L), maxPendingFragments);
+  }
+}
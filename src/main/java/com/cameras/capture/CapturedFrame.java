@@ -0,0 +1,132 @@
+package com.cameras.capture;
+
+import org.bytedeco.javacv.Frame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Frame grabbed from a camera. The frame is shared by all the consumers and must not be modified.
+ * <p>
+ * The pixels are held in a pooled frame, reference counted: the frame bus holds one reference while the frame is in
+ * the ring, and a consumer must {@link #retain()} the frame before reading its pixels and {@link #release()} it when
+ * done. The pooled frame goes back to its pool when the last reference is released, and is reused for a later grab:
+ * the sequence and the times must also be read while the frame is retained.
+ */
+public final class CapturedFrame
+{
+
+  private long sequence;
+  private long captureNanos;
+  private long captureTimeMillis;
+  private final Frame frame;
+  private final FramePool pool;
+
+  /**
+   * One reference held by the creator plus one per {@link #retain()}, 0 while the frame is idle in its pool
+   */
+  private final AtomicInteger references = new AtomicInteger();
+
+  /**
+   * Frame not pooled, not reference counted
+   */
+  public CapturedFrame(long sequence, long captureNanos, long captureTimeMillis, Frame frame)
+  {
+    this(frame, null);
+    reset(sequence, captureNanos, captureTimeMillis);
+  }
+
+  /**
+   * Idle frame of a pool, see {@link #reset(long, long, long)}
+   *
+   * @param pool
+   *          Pool the frame goes back to once released
+   */
+  CapturedFrame(Frame frame, FramePool pool)
+  {
+    this.frame = frame;
+    this.pool = pool;
+  }
+
+  /**
+   * Give an idle frame the values of a new grab, with one reference held by the caller. The reference count is set
+   * last, so the threads retaining the frame see the new values.
+   */
+  void reset(long sequence, long captureNanos, long captureTimeMillis)
+  {
+    this.sequence = sequence;
+    this.captureNanos = captureNanos;
+    this.captureTimeMillis = captureTimeMillis;
+    references.set(1);
+  }
+
+  /**
+   * @return Sequence number of the frame, starting at 0 and increased by one per grabbed frame
+   */
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when the frame was grabbed
+   */
+  public long getCaptureNanos()
+  {
+    return captureNanos;
+  }
+
+  /**
+   * @return Wall clock time when the frame was grabbed
+   */
+  public long getCaptureTimeMillis()
+  {
+    return captureTimeMillis;
+  }
+
+  /**
+   * @return The pixels, only valid while the frame is retained
+   */
+  public Frame getFrame()
+  {
+    return frame;
+  }
+
+  /**
+   * Keep the pixels until {@link #release()} is called.
+   *
+   * @return <code>false</code> if the frame has already been recycled, its pixels must not be read
+   */
+  public boolean retain()
+  {
+    int count;
+    do
+    {
+      count = references.get();
+      if (count == 0)
+      {
+        return false;
+      }
+    }
+    while (!references.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Release a reference, the last one gives the pixels back to the pool.
+   */
+  public void release()
+  {
+    if (references.decrementAndGet() == 0 && pool != null)
+    {
+      pool.recycle(this);
+    }
+  }
+
+  /**
+   * @return Milliseconds elapsed since the frame was grabbed
+   */
+  public long getAgeMillis()
+  {
+    return (System.nanoTime() - captureNanos) / 1_000_000L;
+  }
+}
@@ -0,0 +1,222 @@
+package com.cameras.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * CPUs the long-lived threads of one camera run on: its capture thread, its encoder threads and the pool of its pixel
+ * conversion. Each thread pins itself when it starts, with <code>taskset</code> on its own Linux thread id, since the
+ * JVM has no affinity API; as that forks a process, only threads that live as long as the camera are pinned. Where the
+ * thread cannot be pinned, e.g. not on Linux or without util-linux, a warning is logged once and the thread runs
+ * wherever the system places it.
+ */
+public final class CpuAffinity
+{
+
+  /**
+   * No placement, the system schedules the threads on any CPU
+   */
+  public static final CpuAffinity NONE = new CpuAffinity("");
+
+  private static final Pattern CPU_LIST = Pattern.compile("[0-9]+(-[0-9]+)?(,[0-9]+(-[0-9]+)?)*");
+
+  /**
+   * Link to /proc/&lt;pid&gt;/task/&lt;tid&gt; of the calling thread
+   */
+  private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final String cpus;
+  private final AtomicBoolean warned = new AtomicBoolean();
+
+  private CpuAffinity(String cpus)
+  {
+    this.cpus = cpus;
+  }
+
+  /**
+   * @param cpus
+   *          CPU list in the format of taskset, e.g. 0-3 or 0,2,4, empty for no placement
+   */
+  public static CpuAffinity of(String cpus)
+  {
+    String list = cpus.replace(" ", "");
+    if (list.isEmpty())
+    {
+      return NONE;
+    }
+    if (!CPU_LIST.matcher(list).matches())
+    {
+      throw new IllegalArgumentException("Invalid CPU list " + cpus);
+    }
+    return new CpuAffinity(list);
+  }
+
+  /**
+   * Share of the CPUs of one camera when they are spread evenly over the cameras: with more CPUs than cameras each
+   * camera gets its own consecutive CPUs, otherwise the cameras take turns on the CPUs.
+   *
+   * @param index
+   *          Index of the camera
+   * @param cameras
+   *          Number of cameras
+   * @param processors
+   *          Number of CPUs, numbered from 0
+   */
+  public static CpuAffinity spread(int index, int cameras, int processors)
+  {
+    if (processors <= cameras)
+    {
+      return new CpuAffinity(String.valueOf(index % processors));
+    }
+    int first = index * processors / cameras;
+    int last = (index + 1) * processors / cameras - 1;
+    return new CpuAffinity(first == last ? String.valueOf(first) : first + "-" + last);
+  }
+
+  public boolean isNone()
+  {
+    return cpus.isEmpty();
+  }
+
+  /**
+   * @return Number of CPUs of the list, 0 for no placement
+   */
+  public int getCpuCount()
+  {
+    int count = 0;
+    if (isNone())
+    {
+      return count;
+    }
+    for (String range : cpus.split(","))
+    {
+      int separator = range.indexOf('-');
+      count += separator < 0 ? 1
+          : Integer.parseInt(range.substring(separator + 1)) - Integer.parseInt(range.substring(0, separator)) + 1;
+    }
+    return Math.max(count, 1);
+  }
+
+  /**
+   * Pin the calling thread to the CPUs.
+   */
+  public void apply()
+  {
+    if (isNone())
+    {
+      return;
+    }
+    try
+    {
+      String threadId = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+      Process taskset = new ProcessBuilder("taskset", "-p", "-c", cpus, threadId)
+          .redirectErrorStream(true)
+          .start();
+      try (InputStream output = taskset.getInputStream())
+      {
+        while (output.read() >= 0)
+        {
+          // The output is only read to let taskset complete
+        }
+      }
+      if (taskset.waitFor() != 0)
+      {
+        warnOnce("taskset exited with " + taskset.exitValue());
+      }
+    }
+    catch (IOException | UnsupportedOperationException e)
+    {
+      warnOnce(e.toString());
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Daemon threads pinned to the CPUs when they start.
+   *
+   * @param name
+   *          Name of the threads, numbered when there are several
+   */
+  public ThreadFactory threadFactory(String name)
+  {
+    AtomicInteger count = new AtomicInteger();
+    return runnable ->
+    {
+      int number = count.incrementAndGet();
+      Thread thread = new Thread(() ->
+      {
+        apply();
+        runnable.run();
+      }, number == 1 ? name : name + "-" + number);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Single thread scheduler pinned to the CPUs.
+   */
+  public Scheduler newSingle(String name)
+  {
+    return Schedulers.newSingle(threadFactory(name));
+  }
+
+  /**
+   * ForkJoin pool pinned to the CPUs, with one worker per CPU. The workers only retire after seconds without work, so
+   * they are not pinned again for every task.
+   */
+  public ForkJoinPool newForkJoinPool(String name)
+  {
+    AtomicInteger count = new AtomicInteger();
+    return new ForkJoinPool(Math.max(getCpuCount(), 1), pool ->
+    {
+      ForkJoinWorkerThread worker = new ForkJoinWorkerThread(pool)
+      {
+        @Override
+        protected void onStart()
+        {
+          super.onStart();
+          apply();
+        }
+      };
+      worker.setName(name + "-" + count.incrementAndGet());
+      return worker;
+    }, null, false);
+  }
+
+  private void warnOnce(String reason)
+  {
+    if (warned.compareAndSet(false, true))
+    {
+      logger.warn("Cannot pin the threads to the CPUs {}, they run on any CPU: {}", cpus, reason);
+    }
+  }
+
+  /**
+   * @return CPU list in the format of taskset, empty for no placement
+   */
+  @Override
+  public String toString()
+  {
+    return cpus;
+  }
+}
@@ -0,0 +1,46 @@
+package com.cameras.capture;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the frames a consumer of a camera did not process, from the gaps in the sequence numbers of the frames it
+ * received: a frame recycled before the consumer could retain it is not received, and falls in the next gap. Published as the camera.frames.dropped counter, tagged
+ * with the camera and the consumer. Not thread safe, intended for the thread of the consumer.
+ */
+public class DroppedFrameCounter
+{
+
+  private final Counter dropped;
+  private long lastSequence = -1;
+
+  /**
+   * @param meterRegistry
+   *          Registry of the counter
+   * @param camera
+   *          Name of the camera
+   * @param consumer
+   *          Name of the consumer
+   */
+  public DroppedFrameCounter(MeterRegistry meterRegistry, String camera, String consumer)
+  {
+    this.dropped = Counter.builder("camera.frames.dropped")
+        .description("Frames grabbed but not processed by a consumer")
+        .tag("camera", camera)
+        .tag("consumer", consumer)
+        .register(meterRegistry);
+  }
+
+  /**
+   * @param sequence
+   *          Sequence number of the frame received
+   */
+  public void received(long sequence)
+  {
+    if (lastSequence >= 0 && sequence > lastSequence + 1)
+    {
+      dropped.increment(sequence - lastSequence - 1);
+    }
+    lastSequence = Math.max(lastSequence, sequence);
+  }
+}
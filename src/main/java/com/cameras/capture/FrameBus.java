@@ -0,0 +1,281 @@
+package com.cameras.capture;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Single producer, multi consumer bus of the most recent frames: a preallocated ring buffer with sequence numbers.
+ * The producer never waits for the consumers, takes no lock and allocates nothing: it rewrites the slots in place, in
+ * seqlock order, and a reader only keeps a frame when the sequence of its slot is the same before and after reading it. Each consumer reads through its own {@link Cursor}, at
+ * its own pace; a consumer that falls more than the capacity of the ring behind loses frames, according to its
+ * {@link DropPolicy}.
+ *
+ * @param <T>
+ *          Frame type
+ */
+public final class FrameBus<T>
+{
+
+  /**
+   * What a consumer reads next when the frames it has not read yet have been overwritten
+   */
+  public enum DropPolicy
+  {
+    /**
+     * Jump to the most recent frame, for live consumers such as encoders and snapshots
+     */
+    SKIP_TO_LATEST,
+    /**
+     * Resume from the oldest frame still in the ring, losing as few frames as possible, for recorders
+     */
+    SKIP_TO_OLDEST
+  }
+
+  private final Slot<T>[] slots;
+  private final CopyOnWriteArrayList<Cursor> cursors = new CopyOnWriteArrayList<>();
+  private final Consumer<? super T> onEvict;
+
+  /**
+   * Sequence number of the most recent frame, -1 before the first one
+   */
+  private volatile long published = -1;
+
+  public FrameBus(int capacity)
+  {
+    this(capacity, null);
+  }
+
+  /**
+   * @param capacity
+   *          Number of frames kept
+   * @param onEvict
+   *          Called on the producer thread with each frame replaced by a newer one, <code>null</code> for none
+   */
+  @SuppressWarnings("unchecked")
+  public FrameBus(int capacity, Consumer<? super T> onEvict)
+  {
+    this.slots = new Slot[capacity];
+    for (int i = 0; i < capacity; i++)
+    {
+      slots[i] = new Slot<>();
+    }
+    this.onEvict = onEvict;
+  }
+
+  public int getCapacity()
+  {
+    return slots.length;
+  }
+
+  /**
+   * @return Sequence number the next published frame will get
+   */
+  public long getNextSequence()
+  {
+    return published + 1;
+  }
+
+  /**
+   * Store a new frame, replacing the oldest one, and wake up the waiting consumers. Producer thread only.
+   *
+   * @param frame
+   *          New frame
+   * @return Sequence number of the frame
+   */
+  public long publish(T frame)
+  {
+    long sequence = published + 1;
+    Slot<T> slot = slots[index(sequence)];
+    T evicted = slot.frame;
+    // The slot is marked as being written first, so a reader never pairs the new frame with the previous sequence
+    slot.sequence = Slot.WRITING;
+    slot.frame = frame;
+    slot.sequence = sequence;
+    published = sequence;
+    for (Cursor cursor : cursors)
+    {
+      cursor.signal();
+    }
+    if (evicted != null && onEvict != null)
+    {
+      onEvict.accept(evicted);
+    }
+    return sequence;
+  }
+
+  /**
+   * @return Most recent frame, <code>null</code> if no frame has been published yet
+   */
+  public T latest()
+  {
+    long sequence = published;
+    return sequence < 0 ? null : get(sequence);
+  }
+
+  /**
+   * @param sequence
+   *          Sequence number of the frame
+   * @return The frame or <code>null</code> if it has not been published yet or has already been overwritten
+   */
+  public T get(long sequence)
+  {
+    Slot<T> slot = slots[index(sequence)];
+    if (slot.sequence != sequence)
+    {
+      return null;
+    }
+    T frame = slot.frame;
+    return slot.sequence == sequence ? frame : null;
+  }
+
+  /**
+   * New consumer, reading from the next published frame on. The cursor must be closed when no longer used.
+   *
+   * @param dropPolicy
+   *          What to read when the consumer falls behind
+   * @return Cursor.
+   */
+  public Cursor subscribe(DropPolicy dropPolicy)
+  {
+    Cursor cursor = new Cursor(dropPolicy, published + 1);
+    cursors.add(cursor);
+    return cursor;
+  }
+
+  private int index(long sequence)
+  {
+    return (int) (sequence % slots.length);
+  }
+
+  /**
+   * Read position of one consumer. A cursor is used by one consumer thread at a time.
+   */
+  public final class Cursor implements AutoCloseable
+  {
+
+    private final DropPolicy dropPolicy;
+    private long next;
+    private long sequence = -1;
+    private long dropped;
+    private volatile Thread waiter;
+
+    private Cursor(DropPolicy dropPolicy, long next)
+    {
+      this.dropPolicy = dropPolicy;
+      this.next = next;
+    }
+
+    /**
+     * @return The next frame, <code>null</code> if there is no new frame
+     */
+    public T poll()
+    {
+      while (true)
+      {
+        long latest = published;
+        if (next > latest)
+        {
+          return null;
+        }
+        if (latest - next >= slots.length)
+        {
+          long resume = dropPolicy == DropPolicy.SKIP_TO_LATEST ? latest : latest - slots.length + 1;
+          dropped += resume - next;
+          next = resume;
+        }
+        T frame = get(next);
+        if (frame != null)
+        {
+          sequence = next++;
+          return frame;
+        }
+        // Overwritten meanwhile, the producer is ahead again
+      }
+    }
+
+    /**
+     * @param timeout
+     *          Maximum time to wait for a frame
+     * @param unit
+     *          Unit of the timeout
+     * @return The next frame, <code>null</code> if none was published in time
+     * @throws InterruptedException
+     *           if the thread is interrupted while waiting
+     */
+    public T take(long timeout, TimeUnit unit) throws InterruptedException
+    {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (true)
+      {
+        T frame = poll();
+        if (frame != null)
+        {
+          return frame;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          return null;
+        }
+        waiter = Thread.currentThread();
+        if (next > published)
+        {
+          LockSupport.parkNanos(this, remaining);
+        }
+        waiter = null;
+        if (Thread.interrupted())
+        {
+          throw new InterruptedException();
+        }
+      }
+    }
+
+    /**
+     * @return Sequence number of the last frame read, -1 if none
+     */
+    public long getSequence()
+    {
+      return sequence;
+    }
+
+    /**
+     * @return Number of frames this consumer has lost by falling behind
+     */
+    public long getDropped()
+    {
+      return dropped;
+    }
+
+    @Override
+    public void close()
+    {
+      cursors.remove(this);
+    }
+
+    private void signal()
+    {
+      Thread thread = waiter;
+      if (thread != null)
+      {
+        LockSupport.unpark(thread);
+      }
+    }
+  }
+
+  /**
+   * Frame of the ring with its sequence number, rewritten by the producer for each new frame
+   */
+  private static final class Slot<T>
+  {
+
+    /**
+     * Sequence of an empty slot or of a slot being written, never published
+     */
+    private static final long WRITING = -1;
+
+    private volatile long sequence = WRITING;
+    private volatile T frame;
+  }
+}
@@ -0,0 +1,222 @@
+package com.cameras.capture;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the frames of a camera through the pipeline. Every frame carries its capture time and sequence number;
+ * each stage records, when a frame leaves it, the time elapsed since the frame was captured. The latencies are recorded
+ * in HdrHistogram recorders, wait-free for the pipeline threads, reported by {@link #report()} over the last one to two
+ * windows, and published as the timer camera.frame.latency tagged with the camera and the stage. The windows rotate
+ * with time, on the first frame or report after the end of a window, whether or not the latencies are reported.
+ * <p>
+ * Stages are named after the component and the step, e.g. mjpeg.dequeue (picked up by the encoder), mjpeg.encode
+ * (encoded) and mjpeg.send (handed to the connection of a viewer), and are reported in the order they were created.
+ */
+public class FrameLatencyTracer
+{
+
+  /**
+   * Period over which the latencies are reported by default
+   */
+  public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+  /**
+   * Precision of the recorded latencies
+   */
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final String camera;
+  private final long windowNanos;
+  private final long budgetMicros;
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Stages by name, in their creation order. Access must be synchronized on it
+   */
+  private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+  /**
+   * @param camera
+   *          Name of the camera
+   * @param window
+   *          Period over which the latencies are reported
+   * @param budgetMillis
+   *          Latency the frames should not exceed at any stage, 0 for none
+   * @param meterRegistry
+   *          Registry of the latency timers
+   */
+  public FrameLatencyTracer(String camera, Duration window, long budgetMillis, MeterRegistry meterRegistry)
+  {
+    this.camera = camera;
+    this.windowNanos = window.toNanos();
+    this.budgetMicros = TimeUnit.MILLISECONDS.toMicros(budgetMillis);
+    this.meterRegistry = meterRegistry;
+  }
+
+  public String getCamera()
+  {
+    return camera;
+  }
+
+  /**
+   * @param name
+   *          Name of the stage
+   * @return The stage, created on first use. Components keep their stages, the lookup is not meant for every frame
+   */
+  public Stage stage(String name)
+  {
+    synchronized (stages)
+    {
+      return stages.computeIfAbsent(name, Stage::new);
+    }
+  }
+
+  /**
+   * @return Latencies of the stages over the last one to two windows
+   */
+  public LatencyReport report()
+  {
+    List<Stage> current;
+    synchronized (stages)
+    {
+      current = new ArrayList<>(stages.values());
+    }
+    long now = System.nanoTime();
+    List<StageLatency> latencies = new ArrayList<>(current.size());
+    for (Stage stage : current)
+    {
+      latencies.add(stage.latency(now));
+    }
+    return new LatencyReport(camera, TimeUnit.NANOSECONDS.toSeconds(windowNanos),
+        TimeUnit.MICROSECONDS.toMillis(budgetMicros), latencies);
+  }
+
+  /**
+   * One stage of the pipeline. Thread-safe, any number of threads can record at the same time
+   */
+  public final class Stage
+  {
+
+    private final String name;
+    private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Timer timer;
+
+    /**
+     * Latencies of the previous and of the current window, null when empty, and the interval histogram recycled by the
+     * recorder. Access must be synchronized on the stage
+     */
+    private Histogram previousWindow;
+    private Histogram currentWindow;
+    private Histogram interval;
+    private long windowStartNanos = System.nanoTime();
+
+    /**
+     * End of the current window, read by the recording threads to rotate the windows
+     */
+    private volatile long windowEndNanos = windowStartNanos + windowNanos;
+
+    private Stage(String name)
+    {
+      this.name = name;
+      this.timer = Timer.builder("camera.frame.latency")
+          .description("Time from the capture of a frame to the end of a stage of the pipeline")
+          .tag("camera", camera)
+          .tag("stage", name)
+          .publishPercentileHistogram()
+          .register(meterRegistry);
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    /**
+     * Record a frame leaving the stage now.
+     *
+     * @param captureNanos
+     *          Capture time of the frame, from {@link System#nanoTime()}
+     * @return The latency of the frame, in microseconds
+     */
+    public long record(long captureNanos)
+    {
+      long now = System.nanoTime();
+      long latencyNanos = Math.max(0, now - captureNanos);
+      long latencyMicros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+      recorder.recordValue(latencyMicros);
+      timer.record(latencyNanos, TimeUnit.NANOSECONDS);
+      if (now - windowEndNanos >= 0)
+      {
+        rotate(now);
+      }
+      return latencyMicros;
+    }
+
+    /**
+     * Move the latencies recorded since the last rotation into the current window, then start a new window if the
+     * current one has ended. After more than a window without rotation, the previous windows are dropped and the
+     * latencies recorded since the last rotation, including the one that triggered it, start the current window
+     */
+    private synchronized void rotate(long now)
+    {
+      interval = recorder.getIntervalHistogram(interval);
+      long windows = (now - windowStartNanos) / windowNanos;
+      if (windows >= 2)
+      {
+        previousWindow = null;
+        currentWindow = interval.copy();
+      }
+      else
+      {
+        if (currentWindow == null)
+        {
+          currentWindow = interval.copy();
+        }
+        else
+        {
+          currentWindow.add(interval);
+        }
+        if (windows == 1)
+        {
+          previousWindow = currentWindow;
+          currentWindow = null;
+        }
+      }
+      if (windows > 0)
+      {
+        windowStartNanos += windows * windowNanos;
+        windowEndNanos = windowStartNanos + windowNanos;
+      }
+    }
+
+    private synchronized StageLatency latency(long now)
+    {
+      rotate(now);
+      Histogram reported = new Histogram(SIGNIFICANT_DIGITS);
+      if (currentWindow != null)
+      {
+        reported.add(currentWindow);
+      }
+      if (previousWindow != null)
+      {
+        reported.add(previousWindow);
+      }
+      long total = reported.getTotalCount();
+      long overBudget = budgetMicros <= 0 || total == 0 ? 0
+          : total - reported.getCountBetweenValues(0, budgetMicros);
+      return new StageLatency(name, total, reported.getValueAtPercentile(50), reported.getValueAtPercentile(90),
+          reported.getValueAtPercentile(99), reported.getValueAtPercentile(99.9), reported.getMaxValue(),
+          total == 0 ? 0 : (double) overBudget / total);
+    }
+  }
+}
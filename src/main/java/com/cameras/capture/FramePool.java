@@ -0,0 +1,213 @@
+package com.cameras.capture;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.bytedeco.javacv.Frame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed pool of captured frames, each with its pixels in direct memory, so grabbing does not allocate once the pool is
+ * warm: neither the pixels nor the reference counted {@link CapturedFrame} holding them. A frame is taken with
+ * {@link #copyOf(Frame, long, long, long)} and goes back to the pool when its last user releases it. When all the
+ * frames are in use the copy fails and the grabbed frame is dropped, the capture never allocates beyond the pool.
+ */
+public class FramePool implements MeterBinder
+{
+
+  private final String name;
+  private final int capacity;
+  private final BlockingQueue<CapturedFrame> idle;
+  private final AtomicInteger allocated = new AtomicInteger();
+  private final AtomicLong allocationFailures = new AtomicLong();
+
+  /**
+   * Geometry of the pooled frames, a frame of another geometry resets the pool. Replaced by the capture thread, read
+   * by the consumer threads recycling frames
+   */
+  private volatile Geometry geometry = new Geometry(0, 0, 0);
+
+  /**
+   * @param name
+   *          Name of the camera, tag of the metrics
+   * @param capacity
+   *          Maximum number of frames
+   */
+  public FramePool(String name, int capacity)
+  {
+    this.name = name;
+    this.capacity = capacity;
+    this.idle = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * @param frame
+   *          Grabbed frame
+   * @return <code>true</code> iff the frame can be copied into the pool: 8 bits per component, as cameras grab
+   */
+  public boolean canPool(Frame frame)
+  {
+    return frame.imageDepth == Frame.DEPTH_UBYTE && frame.image != null && frame.image[0] instanceof ByteBuffer;
+  }
+
+  /**
+   * Copy a grabbed frame into a frame of the pool. Capture thread only.
+   *
+   * @param source
+   *          Frame accepted by {@link #canPool(Frame)}
+   * @param sequence
+   *          Sequence number of the captured frame
+   * @param captureNanos
+   *          {@link System#nanoTime()} when the frame was grabbed
+   * @param captureTimeMillis
+   *          Wall clock time when the frame was grabbed
+   * @return The copy, with one reference held by the caller, <code>null</code> if all the frames are in use
+   */
+  public CapturedFrame copyOf(Frame source, long sequence, long captureNanos, long captureTimeMillis)
+  {
+    Geometry current = geometry;
+    if (!current.matches(source))
+    {
+      current = new Geometry(source.imageWidth, source.imageHeight, source.imageChannels);
+      geometry = current;
+      CapturedFrame stale;
+      while ((stale = idle.poll()) != null)
+      {
+        discard(stale);
+      }
+    }
+    CapturedFrame target;
+    while ((target = idle.poll()) != null && !current.matches(target.getFrame()))
+    {
+      // Recycled by a consumer while the geometry changed
+      discard(target);
+    }
+    if (target == null)
+    {
+      if (allocated.incrementAndGet() > capacity)
+      {
+        allocated.decrementAndGet();
+        allocationFailures.incrementAndGet();
+        return null;
+      }
+      target = new CapturedFrame(new Frame(current.width, current.height, Frame.DEPTH_UBYTE, current.channels), this);
+    }
+    Frame pixels = target.getFrame();
+    copyPixels(source, pixels);
+    pixels.timestamp = source.timestamp;
+    pixels.keyFrame = source.keyFrame;
+    target.reset(sequence, captureNanos, captureTimeMillis);
+    return target;
+  }
+
+  /**
+   * Give a frame back to the pool once no one uses it. Called by {@link CapturedFrame#release()}.
+   *
+   * @param frame
+   *          Frame returned by {@link #copyOf(Frame, long, long, long)}
+   */
+  void recycle(CapturedFrame frame)
+  {
+    if (!geometry.matches(frame.getFrame()) || !idle.offer(frame))
+    {
+      discard(frame);
+    }
+  }
+
+  /**
+   * @return Frames allocated, idle or in use
+   */
+  public int getAllocated()
+  {
+    return allocated.get();
+  }
+
+  /**
+   * @return Frames in use by the frame bus and the consumers
+   */
+  public int getInUse()
+  {
+    return allocated.get() - idle.size();
+  }
+
+  /**
+   * @return Grabbed frames dropped because all the frames were in use
+   */
+  public long getAllocationFailures()
+  {
+    return allocationFailures.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry)
+  {
+    Gauge.builder("camera.frame.pool.capacity", this, pool -> pool.capacity)
+        .tag("camera", name)
+        .description("Maximum number of pooled frames")
+        .register(registry);
+    Gauge.builder("camera.frame.pool.allocated", this, FramePool::getAllocated)
+        .tag("camera", name)
+        .description("Pooled frames allocated")
+        .register(registry);
+    Gauge.builder("camera.frame.pool.in.use", this, FramePool::getInUse)
+        .tag("camera", name)
+        .description("Pooled frames in use")
+        .register(registry);
+    FunctionCounter.builder("camera.frame.pool.failures", allocationFailures, AtomicLong::get)
+        .tag("camera", name)
+        .description("Grabbed frames dropped because the pool was exhausted")
+        .register(registry);
+  }
+
+  private void discard(CapturedFrame frame)
+  {
+    allocated.decrementAndGet();
+    frame.getFrame().close();
+  }
+
+  private static void copyPixels(Frame source, Frame target)
+  {
+    ByteBuffer from = ((ByteBuffer) source.image[0]).duplicate();
+    ByteBuffer to = ((ByteBuffer) target.image[0]).duplicate();
+    int rowBytes = source.imageWidth * source.imageChannels;
+    if (source.imageStride == target.imageStride)
+    {
+      from.position(0).limit(Math.min(from.capacity(), source.imageStride * source.imageHeight));
+      to.position(0);
+      to.put(from);
+      return;
+    }
+    for (int y = 0; y < source.imageHeight; y++)
+    {
+      from.limit(y * source.imageStride + rowBytes).position(y * source.imageStride);
+      to.position(y * target.imageStride);
+      to.put(from);
+    }
+  }
+
+  private static final class Geometry
+  {
+
+    private final int width;
+    private final int height;
+    private final int channels;
+
+    private Geometry(int width, int height, int channels)
+    {
+      this.width = width;
+      this.height = height;
+      this.channels = channels;
+    }
+
+    private boolean matches(Frame frame)
+    {
+      return frame.imageWidth == width && frame.imageHeight == height && frame.imageChannels == channels;
+    }
+  }
+}
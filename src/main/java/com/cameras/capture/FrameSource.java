@@ -0,0 +1,36 @@
+package com.cameras.capture;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Source of the frames of a camera: a real device or a synthetic test source. Used by the capture thread only.
+ */
+public interface FrameSource
+{
+
+  /**
+   * Open the source.
+   *
+   * @throws FrameGrabber.Exception
+   *           if the source cannot be opened
+   */
+  void start() throws FrameGrabber.Exception;
+
+  /**
+   * Wait for the next frame.
+   *
+   * @return The frame, <code>null</code> if none is available yet. The frame may be reused by the next call
+   * @throws FrameGrabber.Exception
+   *           if the frame cannot be read
+   */
+  Frame grab() throws FrameGrabber.Exception;
+
+  /**
+   * Close the source and release its resources.
+   *
+   * @throws FrameGrabber.Exception
+   *           if the source cannot be closed
+   */
+  void stop() throws FrameGrabber.Exception;
+}
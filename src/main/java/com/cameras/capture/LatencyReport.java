@@ -0,0 +1,52 @@
+package com.cameras.capture;
+
+import java.util.List;
+
+/**
+ * Latencies of the stages of the pipeline of a camera, see {@link FrameLatencyTracer}
+ */
+public final class LatencyReport
+{
+
+  private final String camera;
+  private final long windowSeconds;
+  private final long budgetMillis;
+  private final List<StageLatency> stages;
+
+  public LatencyReport(String camera, long windowSeconds, long budgetMillis, List<StageLatency> stages)
+  {
+    this.camera = camera;
+    this.windowSeconds = windowSeconds;
+    this.budgetMillis = budgetMillis;
+    this.stages = stages;
+  }
+
+  public String getCamera()
+  {
+    return camera;
+  }
+
+  /**
+   * @return Period over which the latencies are reported, the latencies cover one to two periods
+   */
+  public long getWindowSeconds()
+  {
+    return windowSeconds;
+  }
+
+  /**
+   * @return Latency budget of the frames, 0 for none
+   */
+  public long getBudgetMillis()
+  {
+    return budgetMillis;
+  }
+
+  /**
+   * @return Latencies by stage, in microseconds, in the order of the pipeline
+   */
+  public List<StageLatency> getStages()
+  {
+    return stages;
+  }
+}
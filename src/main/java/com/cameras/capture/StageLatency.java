@@ -0,0 +1,76 @@
+package com.cameras.capture;
+
+/**
+ * Latencies of the frames at the end of a stage of the pipeline, from their capture, in microseconds
+ */
+public final class StageLatency
+{
+
+  private final String stage;
+  private final long count;
+  private final long p50;
+  private final long p90;
+  private final long p99;
+  private final long p999;
+  private final long max;
+  private final double overBudget;
+
+  /**
+   * @param overBudget
+   *          Fraction of the frames over the latency budget
+   */
+  public StageLatency(String stage, long count, long p50, long p90, long p99, long p999, long max, double overBudget)
+  {
+    this.stage = stage;
+    this.count = count;
+    this.p50 = p50;
+    this.p90 = p90;
+    this.p99 = p99;
+    this.p999 = p999;
+    this.max = max;
+    this.overBudget = overBudget;
+  }
+
+  public String getStage()
+  {
+    return stage;
+  }
+
+  public long getCount()
+  {
+    return count;
+  }
+
+  public long getP50()
+  {
+    return p50;
+  }
+
+  public long getP90()
+  {
+    return p90;
+  }
+
+  public long getP99()
+  {
+    return p99;
+  }
+
+  public long getP999()
+  {
+    return p999;
+  }
+
+  public long getMax()
+  {
+    return max;
+  }
+
+  /**
+   * @return Fraction of the frames over the latency budget, 0 without budget
+   */
+  public double getOverBudget()
+  {
+    return overBudget;
+  }
+}
@@ -0,0 +1,79 @@
+package com.cameras.source;
+
+import com.cameras.basler.BaslerModel;
+import com.cameras.capture.FrameBus;
+import com.cameras.capture.FrameSource;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Basler camera, read from the frame bus of a {@link BaslerModel} acquiring continuously.
+ */
+public class BaslerFrameSource implements FrameSource
+{
+
+  private static final long GRAB_TIMEOUT_MILLIS = 1000;
+
+  private final BaslerModel aBaslerModel;
+  private final Java2DFrameConverter converter = new Java2DFrameConverter();
+  private FrameBus<BufferedImage>.Cursor cursor;
+
+  /**
+   * @param aBaslerModel
+   *          Model of the camera, connected by {@link #start()}
+   */
+  public BaslerFrameSource(BaslerModel aBaslerModel)
+  {
+    this.aBaslerModel = aBaslerModel;
+  }
+
+  @Override
+  public void start() throws FrameGrabber.Exception
+  {
+    try
+    {
+      aBaslerModel.startConnection();
+    }
+    catch (UnsatisfiedLinkError e)
+    {
+      throw new FrameGrabber.Exception("The Basler native library is not available", e);
+    }
+    if (!aBaslerModel.isConnected())
+    {
+      throw new FrameGrabber.Exception("Cannot connect to the Basler camera");
+    }
+    cursor = aBaslerModel.getFrameBus().subscribe(FrameBus.DropPolicy.SKIP_TO_LATEST);
+    aBaslerModel.startAcquisition();
+  }
+
+  @Override
+  public Frame grab() throws FrameGrabber.Exception
+  {
+    try
+    {
+      BufferedImage image = cursor.take(GRAB_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      return image == null ? null : converter.convert(image);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new FrameGrabber.Exception("Interrupted while waiting for a Basler frame", e);
+    }
+  }
+
+  @Override
+  public void stop()
+  {
+    if (cursor != null)
+    {
+      cursor.close();
+      cursor = null;
+    }
+    aBaslerModel.endConnection();
+  }
+}
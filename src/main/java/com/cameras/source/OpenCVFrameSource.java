@@ -0,0 +1,86 @@
+package com.cameras.source;
+
+import com.cameras.capture.FrameSource;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Camera of the system, read through OpenCV.
+ */
+public class OpenCVFrameSource implements FrameSource
+{
+
+  private final OpenCVFrameGrabber grabber;
+
+  /**
+   * @param deviceNumber
+   *          0: default camera, 1: next...so on
+   */
+  public OpenCVFrameSource(int deviceNumber)
+  {
+    this.grabber = new OpenCVFrameGrabber(deviceNumber);
+  }
+
+  /**
+   * Find the cameras of the system by opening each device number in turn. Each camera found is opened and released,
+   * a camera already in use by another process is not found.
+   *
+   * @param maxDevices
+   *          Number of device numbers tried, from 0
+   * @return Device numbers of the cameras that could be opened
+   */
+  public static List<Integer> discoverDevices(int maxDevices)
+  {
+    List<Integer> devices = new ArrayList<>();
+    for (int device = 0; device < maxDevices; device++)
+    {
+      OpenCVFrameGrabber probe = new OpenCVFrameGrabber(device);
+      try
+      {
+        probe.start();
+        probe.stop();
+        devices.add(device);
+      }
+      catch (FrameGrabber.Exception e)
+      {
+        // No camera at this device number
+      }
+      finally
+      {
+        try
+        {
+          probe.release();
+        }
+        catch (FrameGrabber.Exception e)
+        {
+          // Nothing was opened
+        }
+      }
+    }
+    return devices;
+  }
+
+  @Override
+  public void start() throws FrameGrabber.Exception
+  {
+    grabber.start();
+  }
+
+  @Override
+  public Frame grab() throws FrameGrabber.Exception
+  {
+    return grabber.grab();
+  }
+
+  @Override
+  public void stop() throws FrameGrabber.Exception
+  {
+    grabber.stop();
+    grabber.release();
+  }
+}
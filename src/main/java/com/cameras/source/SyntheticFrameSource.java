@@ -0,0 +1,125 @@
+package com.cameras.source;
+
+import com.cameras.capture.FrameSource;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Test source generating a deterministic pattern at a given resolution and frame rate, to run the pipeline without a
+ * camera. Frame n shows colour bars scrolled by n pixels and, in the top left corner, n encoded in binary as a row of
+ * black and white blocks, so the same frame number always gives the same image.
+ */
+public class SyntheticFrameSource implements FrameSource
+{
+
+  /**
+   * BGR colour bars: white, yellow, cyan, green, magenta, red, blue, black
+   */
+  private static final int[][] BARS = { { 255, 255, 255 }, { 0, 255, 255 }, { 255, 255, 0 }, { 0, 255, 0 },
+      { 255, 0, 255 }, { 0, 0, 255 }, { 255, 0, 0 }, { 0, 0, 0 } };
+  private static final int COUNTER_BITS = 32;
+
+  private final int width;
+  private final int height;
+  private final long frameIntervalNanos;
+
+  private Frame frame;
+  private byte[] rowPattern;
+  private long frameNumber;
+  private long nextFrameNanos;
+
+  /**
+   * @param width
+   *          frame width
+   * @param height
+   *          frame height
+   * @param frameRate
+   *          frames per second
+   */
+  public SyntheticFrameSource(int width, int height, double frameRate)
+  {
+    this.width = width;
+    this.height = height;
+    this.frameIntervalNanos = (long) (1000000000L / frameRate);
+  }
+
+  @Override
+  public void start()
+  {
+    frame = new Frame(width, height, Frame.DEPTH_UBYTE, 3);
+    // Two periods of the bars, a scrolled row is a copy from an offset
+    rowPattern = new byte[width * 3 * 2];
+    for (int x = 0; x < width * 2; x++)
+    {
+      int[] bar = BARS[(x % width) * BARS.length / width];
+      rowPattern[x * 3] = (byte) bar[0];
+      rowPattern[x * 3 + 1] = (byte) bar[1];
+      rowPattern[x * 3 + 2] = (byte) bar[2];
+    }
+    frameNumber = 0;
+    nextFrameNanos = System.nanoTime();
+  }
+
+  @Override
+  public Frame grab() throws FrameGrabber.Exception
+  {
+    waitForNextFrame();
+    ByteBuffer pixels = (ByteBuffer) frame.image[0];
+    int offset = (int) (frameNumber % width) * 3;
+    for (int y = 0; y < height; y++)
+    {
+      pixels.position(y * frame.imageStride);
+      pixels.put(rowPattern, offset, width * 3);
+    }
+    drawCounter(pixels);
+    pixels.rewind();
+    frame.timestamp = frameNumber * frameIntervalNanos / 1000;
+    frameNumber++;
+    return frame;
+  }
+
+  @Override
+  public void stop()
+  {
+    frame = null;
+    rowPattern = null;
+  }
+
+  private void waitForNextFrame() throws FrameGrabber.Exception
+  {
+    long wait = nextFrameNanos - System.nanoTime();
+    if (wait > 0)
+    {
+      try
+      {
+        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+        throw new FrameGrabber.Exception("Interrupted while waiting for the next frame", e);
+      }
+    }
+    nextFrameNanos += frameIntervalNanos;
+  }
+
+  private void drawCounter(ByteBuffer pixels)
+  {
+    int block = Math.max(1, Math.min(width / COUNTER_BITS, height / 8));
+    for (int bit = 0; bit < COUNTER_BITS && (bit + 1) * block <= width; bit++)
+    {
+      byte value = (byte) (((frameNumber >>> (COUNTER_BITS - 1 - bit)) & 1) != 0 ? 255 : 0);
+      for (int y = 0; y < block; y++)
+      {
+        int position = y * frame.imageStride + bit * block * 3;
+        for (int x = 0; x < block * 3; x++)
+        {
+          pixels.put(position + x, value);
+        }
+      }
+    }
+  }
+}
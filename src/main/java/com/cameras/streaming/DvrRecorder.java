@@ -0,0 +1,478 @@
+package com.cameras.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Recording of a live camera stream to disk (DVR). The fragments of the {@link LiveMp4Broadcaster} are written as they
+ * are, without re-encoding, into fragmented MP4 files cut on the first keyframe after the segment duration. A file is
+ * written in a work directory and moved to the recording directory once complete, so only complete files are visible
+ * and served.
+ * <p>
+ * While the recorder runs, the last GOPs covering the pre-trigger duration are kept in memory: a recording started by
+ * {@link #record(Duration)} begins with them. The oldest files are deleted once they are older than the maximum age or
+ * the files exceed the maximum size.
+ */
+public class DvrRecorder
+{
+
+  /**
+   * When the recorder runs
+   */
+  public enum Mode
+  {
+    /**
+     * Only while a recording is requested, without pre-trigger buffer
+     */
+    OFF,
+    /**
+     * Always, to keep the pre-trigger buffer, recording when requested
+     */
+    TRIGGERED,
+    /**
+     * Always, recording all the time
+     */
+    CONTINUOUS
+  }
+
+  private static final String WORK_DIR = ".recording";
+  private static final String EXTENSION = ".mp4";
+  private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+      .withZone(ZoneId.systemDefault());
+  private static final long RETENTION_CHECK_SECONDS = 60;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final LiveMp4Broadcaster broadcaster;
+  private final String name;
+  private final Path directory;
+  private final Path workDirectory;
+  private final Pattern fileNamePattern;
+  private final Mode mode;
+  private final long segmentDurationNanos;
+  private final long preTriggerNanos;
+  private final long maxAgeMillis;
+  private final long maxBytes;
+  private final int maxPendingFragments;
+  private final Scheduler scheduler;
+
+  /**
+   * State of the recorder. Access must be synchronized on this
+   */
+  private final ArrayDeque<List<Mp4Fragment>> gops = new ArrayDeque<>();
+  private byte[] initSegment;
+  private boolean waitingKeyframe = true;
+  private long recordUntilNanos;
+  private boolean recordRequested;
+  private FileChannel segment;
+  private Path segmentPath;
+  private long segmentStartNanos;
+  private Disposable subscription;
+  private boolean disposed;
+
+  /**
+   * @param broadcaster
+   *          Live stream to record
+   * @param name
+   *          Name of the camera, prefix of the file names
+   * @param directory
+   *          Directory of the recorded files, created if needed
+   * @param mode
+   *          When the recorder runs
+   * @param segmentDuration
+   *          Duration of a file, files are cut on the first keyframe after it
+   * @param preTrigger
+   *          Time kept in memory before a recording starts
+   * @param maxAge
+   *          Age after which a file is deleted
+   * @param maxBytes
+   *          Size of all the files above which the oldest are deleted
+   * @param maxPendingFragments
+   *          Fragments buffered while writing before dropping to the next keyframe
+   * @throws IOException
+   *           if the directory cannot be created
+   */
+  public DvrRecorder(LiveMp4Broadcaster broadcaster, String name, Path directory, Mode mode, Duration segmentDuration,
+      Duration preTrigger, Duration maxAge, long maxBytes, int maxPendingFragments) throws IOException
+  {
+    this.broadcaster = broadcaster;
+    this.name = name;
+    this.directory = directory.toAbsolutePath();
+    this.workDirectory = this.directory.resolve(WORK_DIR);
+    this.fileNamePattern = Pattern.compile(Pattern.quote(name) + "-[0-9]{8}-[0-9]{6}-[0-9]{3}"
+        + Pattern.quote(EXTENSION));
+    this.mode = mode;
+    this.segmentDurationNanos = segmentDuration.toNanos();
+    this.preTriggerNanos = preTrigger.toNanos();
+    this.maxAgeMillis = maxAge.toMillis();
+    this.maxBytes = maxBytes;
+    this.maxPendingFragments = maxPendingFragments;
+    this.scheduler = Schedulers.newSingle("DVR " + name, true);
+    Files.createDirectories(workDirectory);
+  }
+
+  /**
+   * @return Directory of the recorded files
+   */
+  public Path getDirectory()
+  {
+    return directory;
+  }
+
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * Start the recorder in the {@link Mode#TRIGGERED} and {@link Mode#CONTINUOUS} modes, and the retention.
+   */
+  public synchronized void start()
+  {
+    if (mode != Mode.OFF)
+    {
+      subscribe();
+    }
+    scheduler.schedulePeriodically(this::applyRetention, 0, RETENTION_CHECK_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Record from the pre-trigger buffer on, until the given duration has elapsed. A recording in progress is extended.
+   * The recording starts on the next keyframe.
+   *
+   * @param duration
+   *          Time recorded from now on
+   */
+  public synchronized void record(Duration duration)
+  {
+    long until = System.nanoTime() + duration.toNanos();
+    if (!recordRequested || until - recordUntilNanos > 0)
+    {
+      recordUntilNanos = until;
+    }
+    recordRequested = true;
+    subscribe();
+    logger.info("DVR {} recording for {} s", name, duration.getSeconds());
+  }
+
+  /**
+   * Stop the requested recording, on the next keyframe. Does not stop the {@link Mode#CONTINUOUS} recording.
+   */
+  public synchronized void stopRecording()
+  {
+    recordRequested = false;
+  }
+
+  /**
+   * @return <code>true</code> while a recording is in progress or requested
+   */
+  public synchronized boolean isRecording()
+  {
+    return mode == Mode.CONTINUOUS || recordRequested || segment != null;
+  }
+
+  /**
+   * @return Names of the recorded files, oldest first
+   */
+  public List<String> getRecordings()
+  {
+    List<String> names = new ArrayList<>();
+    for (Path path : listRecordings())
+    {
+      names.add(path.getFileName().toString());
+    }
+    return names;
+  }
+
+  /**
+   * Stop recording and complete the current file. The file is closed on the calling thread, under the lock of the
+   * fragments, since the scheduler drops its pending tasks when it is disposed.
+   */
+  public void dispose()
+  {
+    synchronized (this)
+    {
+      disposed = true;
+      unsubscribe();
+      closeSegment();
+    }
+    scheduler.dispose();
+  }
+
+  private void subscribe()
+  {
+    if (subscription == null && !disposed)
+    {
+      subscription = broadcaster.fragments()
+          .onBackpressureBuffer(maxPendingFragments, dropped -> onDropped(), BufferOverflowStrategy.DROP_LATEST)
+          .publishOn(scheduler, 1)
+          .subscribe(this::onFragment, e -> logger.error("Error in the live stream, DVR {} stopped", name, e));
+    }
+  }
+
+  private void unsubscribe()
+  {
+    if (subscription != null)
+    {
+      subscription.dispose();
+      subscription = null;
+    }
+    gops.clear();
+    initSegment = null;
+    waitingKeyframe = true;
+  }
+
+  private synchronized void onDropped()
+  {
+    // The next fragments cannot be decoded before the next keyframe
+    waitingKeyframe = true;
+  }
+
+  private synchronized void onFragment(Mp4Fragment fragment)
+  {
+    if (disposed)
+    {
+      // A fragment already published when the recorder was stopped
+      return;
+    }
+    if (fragment.getInitSegment() != initSegment)
+    {
+      // New encoder session, the previous fragments cannot be decoded with the new init segment
+      closeSegment();
+      gops.clear();
+      initSegment = fragment.getInitSegment();
+      waitingKeyframe = true;
+    }
+    if (waitingKeyframe)
+    {
+      if (!fragment.isKeyframe())
+      {
+        return;
+      }
+      waitingKeyframe = false;
+      // Fragments may have been lost, what was buffered or written cannot be followed by this one
+      closeSegment();
+      gops.clear();
+    }
+    long now = fragment.getCaptureNanos();
+    if (fragment.isKeyframe())
+    {
+      boolean recording = mode == Mode.CONTINUOUS || (recordRequested && now - recordUntilNanos < 0);
+      if (!recording)
+      {
+        recordRequested = false;
+      }
+      if (segment != null && (!recording || now - segmentStartNanos >= segmentDurationNanos))
+      {
+        closeSegment();
+        if (recording)
+        {
+          openSegment(now, Collections.<List<Mp4Fragment>> emptyList());
+        }
+      }
+      else if (segment == null && recording)
+      {
+        // Start of a recording, from the pre-trigger buffer
+        openSegment(now, gops);
+      }
+      if (!recording && mode == Mode.OFF)
+      {
+        unsubscribe();
+        return;
+      }
+      gops.addLast(new ArrayList<>());
+    }
+    if (gops.isEmpty())
+    {
+      return;
+    }
+    gops.getLast().add(fragment);
+    trimPreTrigger(now);
+    if (segment != null)
+    {
+      write(fragment.getData());
+    }
+  }
+
+  /**
+   * Drop the oldest GOPs that are not needed to cover the pre-trigger duration
+   */
+  private void trimPreTrigger(long now)
+  {
+    while (gops.size() > 1)
+    {
+      Iterator<List<Mp4Fragment>> iterator = gops.iterator();
+      iterator.next();
+      if (now - firstCaptureNanos(iterator.next()) < preTriggerNanos)
+      {
+        return;
+      }
+      gops.removeFirst();
+    }
+  }
+
+  private static long firstCaptureNanos(List<Mp4Fragment> gop)
+  {
+    return gop.isEmpty() ? Long.MAX_VALUE : gop.get(0).getCaptureNanos();
+  }
+
+  /**
+   * @param buffered
+   *          GOPs written after the init segment
+   */
+  private void openSegment(long startNanos, Iterable<List<Mp4Fragment>> buffered)
+  {
+    long firstNanos = startNanos;
+    for (List<Mp4Fragment> gop : buffered)
+    {
+      firstNanos = Math.min(firstNanos, firstCaptureNanos(gop));
+    }
+    long startMillis = System.currentTimeMillis() - (System.nanoTime() - firstNanos) / 1_000_000L;
+    Path path = workDirectory.resolve(name + "-" + FILE_TIME.format(Instant.ofEpochMilli(startMillis)) + EXTENSION);
+    try
+    {
+      segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      segmentPath = path;
+      segmentStartNanos = startNanos;
+      write(initSegment);
+      for (List<Mp4Fragment> gop : buffered)
+      {
+        for (Mp4Fragment fragment : gop)
+        {
+          write(fragment.getData());
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      logger.error("Cannot create the DVR file {}", path, e);
+      segment = null;
+    }
+  }
+
+  private void write(byte[] data)
+  {
+    if (segment == null)
+    {
+      return;
+    }
+    try
+    {
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+      while (buffer.hasRemaining())
+      {
+        segment.write(buffer);
+      }
+    }
+    catch (IOException e)
+    {
+      logger.error("Error while writing the DVR file {}, the file is closed", segmentPath, e);
+      closeSegment();
+    }
+  }
+
+  private void closeSegment()
+  {
+    if (segment == null)
+    {
+      return;
+    }
+    try
+    {
+      segment.close();
+      Files.move(segmentPath, directory.resolve(segmentPath.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+      logger.info("DVR {} recorded {}", name, segmentPath.getFileName());
+    }
+    catch (IOException e)
+    {
+      logger.error("Cannot complete the DVR file {}", segmentPath, e);
+    }
+    segment = null;
+    segmentPath = null;
+    applyRetention();
+  }
+
+  /**
+   * Delete the files older than the maximum age, then the oldest files while above the maximum size
+   */
+  private void applyRetention()
+  {
+    List<Path> recordings = listRecordings();
+    long total = 0;
+    List<Long> sizes = new ArrayList<>(recordings.size());
+    for (Path path : recordings)
+    {
+      long size = path.toFile().length();
+      sizes.add(size);
+      total += size;
+    }
+    long oldest = System.currentTimeMillis() - maxAgeMillis;
+    for (int i = 0; i < recordings.size(); i++)
+    {
+      Path path = recordings.get(i);
+      if (total > maxBytes || path.toFile().lastModified() < oldest)
+      {
+        try
+        {
+          Files.deleteIfExists(path);
+          total -= sizes.get(i);
+          logger.info("DVR {} deleted {}", name, path.getFileName());
+        }
+        catch (IOException e)
+        {
+          logger.error("Cannot delete the DVR file {}", path, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The recorded files, oldest first
+   */
+  private List<Path> listRecordings()
+  {
+    List<Path> recordings = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+    {
+      for (Path path : stream)
+      {
+        if (fileNamePattern.matcher(path.getFileName().toString()).matches())
+        {
+          recordings.add(path);
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      logger.error("Cannot list the DVR directory {}", directory, e);
+    }
+    // The names start with the recording time
+    Collections.sort(recordings);
+    return recordings;
+  }
+}
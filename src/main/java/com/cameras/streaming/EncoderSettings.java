@@ -0,0 +1,100 @@
+package com.cameras.streaming;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+
+/**
+ * H.264 encoder settings shared by the live outputs of a camera.
+ */
+public class EncoderSettings
+{
+
+  private final int width;
+  private final int height;
+  private final double frameRate;
+  private final int gopSize;
+  private final int bitrate;
+  private final String preset;
+  private final String tune;
+
+  /**
+   * @param width
+   *          Output width in pixels
+   * @param height
+   *          Output height in pixels
+   * @param frameRate
+   *          Frames per second
+   * @param gopSize
+   *          Frames between two keyframes. Viewers join on a keyframe so it bounds the join delay
+   * @param bitrate
+   *          Target bitrate in bits per second
+   * @param preset
+   *          x264 preset, e.g. "ultrafast", "veryfast"
+   * @param tune
+   *          x264 tune, "zerolatency" disables the frame lookahead
+   */
+  public EncoderSettings(int width, int height, double frameRate, int gopSize, int bitrate, String preset, String tune)
+  {
+    this.width = width;
+    this.height = height;
+    this.frameRate = frameRate;
+    this.gopSize = gopSize;
+    this.bitrate = bitrate;
+    this.preset = preset;
+    this.tune = tune;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public double getFrameRate()
+  {
+    return frameRate;
+  }
+
+  public int getGopSize()
+  {
+    return gopSize;
+  }
+
+  public int getBitrate()
+  {
+    return bitrate;
+  }
+
+  public String getPreset()
+  {
+    return preset;
+  }
+
+  public String getTune()
+  {
+    return tune;
+  }
+
+  /**
+   * Set up a recorder to encode H.264 with the settings, in YUV 4:2:0. The size of the recorder is set when it is
+   * created.
+   *
+   * @param recorder
+   *          Recorder not started yet
+   */
+  public void configure(FFmpegFrameRecorder recorder)
+  {
+    recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+    recorder.setPixelFormat(avutil.AV_PIX_FMT_YUV420P);
+    recorder.setFrameRate(frameRate);
+    recorder.setGopSize(gopSize);
+    recorder.setVideoBitrate(bitrate);
+    recorder.setVideoOption("preset", preset);
+    recorder.setVideoOption("tune", tune);
+  }
+}
@@ -0,0 +1,51 @@
+package com.cameras.streaming;
+
+import com.constants.ModulabGlobals;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+
+/**
+ * Shutdown of the single encoder threads. Disposing a single scheduler drops its pending tasks, so the encoders are
+ * closed by a task the caller waits for, on the encoder thread since the encoders are not thread safe, before the
+ * scheduler is disposed.
+ */
+final class EncoderThreads
+{
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EncoderThreads.class);
+
+  private EncoderThreads()
+  {
+  }
+
+  /**
+   * Run the task on the encoder thread, after the tasks already scheduled, wait for it at most
+   * {@link ModulabGlobals#ENCODER_STOP_TIMEOUT_MILLIS} and dispose the scheduler.
+   *
+   * @param scheduler
+   *          Single scheduler of the encoder thread
+   * @param close
+   *          Closes the encoders of the thread
+   * @param name
+   *          Name of the encoder, for the logs
+   */
+  static void closeAndDispose(Scheduler scheduler, Runnable close, String name)
+  {
+    try
+    {
+      Mono.fromRunnable(close)
+          .subscribeOn(scheduler)
+          .block(Duration.ofMillis(ModulabGlobals.ENCODER_STOP_TIMEOUT_MILLIS));
+    }
+    catch (RuntimeException e)
+    {
+      LOGGER.warn("The encoders of {} were not closed, the encoder thread is stopped anyway", name, e);
+    }
+    scheduler.dispose();
+  }
+}
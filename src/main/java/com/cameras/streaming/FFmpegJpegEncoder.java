@@ -0,0 +1,113 @@
+package com.cameras.streaming;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameRecorder;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * JPEG encoder running the native MJPEG encoder of FFmpeg. The encoder stays open between two frames of the same
+ * geometry, its muxer writes a raw MJPEG stream that is flushed after each frame, so each frame gives exactly one JPEG
+ * image. Not thread safe, every encoding thread needs its own instance.
+ */
+public class FFmpegJpegEncoder implements FrameEncoder
+{
+
+  /**
+   * Best and worst quantizer scales of the MJPEG encoder
+   */
+  private static final int BEST_QSCALE = 2;
+  private static final int WORST_QSCALE = 31;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final float quality;
+  /**
+   * Output of the muxer, reused from one frame to the next
+   */
+  private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1 << 16);
+  private final Java2DFrameConverter converter = new Java2DFrameConverter();
+  private FFmpegFrameRecorder recorder;
+
+  /**
+   * @param quality
+   *          Compression quality between 0 (smallest) and 1 (best)
+   */
+  public FFmpegJpegEncoder(float quality)
+  {
+    this.quality = quality;
+  }
+
+  public float getQuality()
+  {
+    return quality;
+  }
+
+  @Override
+  public byte[] encode(Frame frame) throws IOException
+  {
+    if (recorder == null || recorder.getImageWidth() != frame.imageWidth
+        || recorder.getImageHeight() != frame.imageHeight)
+    {
+      close();
+      recorder = start(frame.imageWidth, frame.imageHeight);
+    }
+    outputStream.reset();
+    try
+    {
+      recorder.record(frame);
+    }
+    catch (FrameRecorder.Exception e)
+    {
+      // The encoder state is unknown, a new one is started for the next frame
+      close();
+      throw e;
+    }
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  public byte[] encode(BufferedImage image) throws IOException
+  {
+    return encode(converter.convert(image));
+  }
+
+  @Override
+  public void close()
+  {
+    if (recorder == null)
+    {
+      return;
+    }
+    try
+    {
+      recorder.release();
+    }
+    catch (FrameRecorder.Exception e)
+    {
+      logger.error("Error while releasing the JPEG encoder", e);
+    }
+    recorder = null;
+  }
+
+  private FFmpegFrameRecorder start(int width, int height) throws FrameRecorder.Exception
+  {
+    FFmpegFrameRecorder newRecorder = new FFmpegFrameRecorder(outputStream, width, height);
+    newRecorder.setFormat("mjpeg");
+    newRecorder.setVideoCodec(avcodec.AV_CODEC_ID_MJPEG);
+    newRecorder.setPixelFormat(avutil.AV_PIX_FMT_YUVJ420P);
+    newRecorder.setVideoQuality(BEST_QSCALE + (1 - Math.max(0, Math.min(1, quality))) * (WORST_QSCALE - BEST_QSCALE));
+    // Write each JPEG image as soon as it is encoded
+    newRecorder.setOption("flush_packets", "1");
+    newRecorder.start();
+    return newRecorder;
+  }
+}
@@ -0,0 +1,40 @@
+package com.cameras.streaming;
+
+import org.bytedeco.javacv.Frame;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Encodes frames into still images. Implementations are not thread safe, every encoding thread needs its own
+ * instance.
+ */
+public interface FrameEncoder extends AutoCloseable
+{
+
+  /**
+   * @param frame
+   *          Frame to encode, only read during the call
+   * @return The encoded image
+   * @throws IOException
+   *           if the frame cannot be encoded
+   */
+  byte[] encode(Frame frame) throws IOException;
+
+  /**
+   * @param image
+   *          Image to encode, only read during the call
+   * @return The encoded image
+   * @throws IOException
+   *           if the image cannot be encoded
+   */
+  byte[] encode(BufferedImage image) throws IOException;
+
+  /**
+   * Release the native resources of the encoder, if any
+   */
+  @Override
+  default void close()
+  {
+  }
+}
@@ -0,0 +1,233 @@
+package com.cameras.streaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HLS output of a live camera stream. The fragments of the {@link LiveMp4Broadcaster} are grouped into segments
+ * starting on a keyframe and kept in a bounded in-memory ring, served with a rolling playlist. Segments never change
+ * once published, so players and CDNs can cache them: the fan-out cost moves from the encoder to cheap GETs.
+ * <p>
+ * The segmenter subscribes to the encoder on the first request and unsubscribes when nobody has requested the
+ * playlist for a while. Sequence numbers start from the epoch second and each encoder session gets its own init
+ * segment URI, so a URI never designates two different contents, even across restarts.
+ */
+public class HlsSegmenter
+{
+
+  private static final long IDLE_CHECK_SECONDS = 5;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final LiveMp4Broadcaster broadcaster;
+  private final double targetDuration;
+  private final int ringSize;
+  private final long idleTimeoutNanos;
+  private final Scheduler scheduler;
+
+  /**
+   * State of the segmenter. Access must be synchronized on this
+   */
+  private final ArrayDeque<HlsSegment> segments = new ArrayDeque<>();
+  private byte[] initSegment;
+  private long initSegmentId;
+  private long nextSequence = System.currentTimeMillis() / 1000;
+  private ByteArrayOutputStream currentSegment;
+  private long currentSegmentStartNanos;
+  private Disposable subscription;
+  private volatile long lastAccessNanos;
+
+  /**
+   * @param broadcaster
+   *          Live stream to segment
+   * @param targetDuration
+   *          Segment duration in seconds, segments are cut on the first keyframe after it
+   * @param ringSize
+   *          Number of segments kept in memory and listed in the playlist
+   * @param idleTimeout
+   *          Time without requests after which the segmenter stops
+   */
+  public HlsSegmenter(LiveMp4Broadcaster broadcaster, double targetDuration, int ringSize, Duration idleTimeout)
+  {
+    this.broadcaster = broadcaster;
+    this.targetDuration = targetDuration;
+    this.ringSize = ringSize;
+    this.idleTimeoutNanos = idleTimeout.toNanos();
+    this.scheduler = Schedulers.newSingle("HLS segmenter", true);
+    this.scheduler.schedulePeriodically(this::stopIfIdle, IDLE_CHECK_SECONDS, IDLE_CHECK_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Rolling playlist, available once the first segment is complete.
+   *
+   * @return Mono of the playlist text.
+   */
+  public Mono<String> playlist()
+  {
+    return Mono.fromCallable(() ->
+    {
+      touch();
+      return buildPlaylist();
+    })
+        .repeatWhenEmpty(empty -> empty.delayElements(Duration.ofMillis(100)))
+        .timeout(Duration.ofSeconds((long) Math.ceil(targetDuration * 4) + 10));
+  }
+
+  /**
+   * @param id
+   *          Id of the encoder session, as found in the playlist
+   * @return ftyp + moov boxes of the encoder session, empty if it is not the current one
+   */
+  public synchronized Mono<byte[]> initSegment(long id)
+  {
+    touch();
+    return id == initSegmentId ? Mono.justOrEmpty(initSegment) : Mono.empty();
+  }
+
+  /**
+   * @param sequence
+   *          Media sequence number of the segment
+   * @return The segment, empty if it is not in the ring
+   */
+  public synchronized Mono<byte[]> segment(long sequence)
+  {
+    touch();
+    for (HlsSegment segment : segments)
+    {
+      if (segment.sequence == sequence)
+      {
+        return Mono.just(segment.data);
+      }
+    }
+    return Mono.empty();
+  }
+
+  public void dispose()
+  {
+    stop();
+    scheduler.dispose();
+  }
+
+  private synchronized void touch()
+  {
+    lastAccessNanos = System.nanoTime();
+    if (subscription == null)
+    {
+      subscription = broadcaster.fragments().subscribe(this::onFragment,
+          e -> logger.error("Error in the live stream, HLS segmenter stopped", e));
+    }
+  }
+
+  private synchronized void stopIfIdle()
+  {
+    if (subscription != null && System.nanoTime() - lastAccessNanos > idleTimeoutNanos)
+    {
+      stop();
+    }
+  }
+
+  private synchronized void stop()
+  {
+    if (subscription != null)
+    {
+      subscription.dispose();
+      subscription = null;
+    }
+    segments.clear();
+    initSegment = null;
+    currentSegment = null;
+  }
+
+  private synchronized void onFragment(Mp4Fragment fragment)
+  {
+    if (fragment.getInitSegment() != initSegment)
+    {
+      // New encoder session, the previous segments cannot be decoded with the new init segment
+      segments.clear();
+      initSegment = fragment.getInitSegment();
+      initSegmentId = nextSequence;
+      currentSegment = null;
+    }
+    if (fragment.isKeyframe())
+    {
+      if (currentSegment != null && (fragment.getCaptureNanos() - currentSegmentStartNanos) / 1e9 >= targetDuration)
+      {
+        publishSegment(fragment.getCaptureNanos());
+      }
+      if (currentSegment == null)
+      {
+        currentSegment = new ByteArrayOutputStream();
+        currentSegmentStartNanos = fragment.getCaptureNanos();
+      }
+    }
+    if (currentSegment != null)
+    {
+      currentSegment.write(fragment.getData(), 0, fragment.getData().length);
+    }
+  }
+
+  private void publishSegment(long endNanos)
+  {
+    double duration = (endNanos - currentSegmentStartNanos) / 1e9;
+    segments.addLast(new HlsSegment(nextSequence++, duration, currentSegment.toByteArray()));
+    while (segments.size() > ringSize)
+    {
+      segments.removeFirst();
+    }
+    currentSegment = null;
+  }
+
+  private synchronized String buildPlaylist()
+  {
+    if (segments.isEmpty())
+    {
+      return null;
+    }
+    List<HlsSegment> listed = new ArrayList<>(segments);
+    double maxDuration = targetDuration;
+    for (HlsSegment segment : listed)
+    {
+      maxDuration = Math.max(maxDuration, segment.duration);
+    }
+    StringBuilder playlist = new StringBuilder();
+    playlist.append("#EXTM3U\n");
+    playlist.append("#EXT-X-VERSION:7\n");
+    playlist.append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(maxDuration)).append('\n');
+    playlist.append("#EXT-X-MEDIA-SEQUENCE:").append(listed.get(0).sequence).append('\n');
+    playlist.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+    playlist.append("#EXT-X-MAP:URI=\"init-").append(initSegmentId).append(".mp4\"\n");
+    for (HlsSegment segment : listed)
+    {
+      playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segment.duration));
+      playlist.append(segment.sequence).append(".m4s\n");
+    }
+    return playlist.toString();
+  }
+
+  private static final class HlsSegment
+  {
+
+    private final long sequence;
+    private final double duration;
+    private final byte[] data;
+
+    private HlsSegment(long sequence, double duration, byte[] data)
+    {
+      this.sequence = sequence;
+      this.duration = duration;
+      this.data = data;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package com.cameras.streaming;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * JPEG encoder with a fixed quality, running the ImageIO JPEG writer. Not thread safe, every encoding thread needs its
+ * own instance.
+ */
+public class JpegEncoder implements FrameEncoder
+{
+
+  private final float quality;
+  private final Java2DFrameConverter converter = new Java2DFrameConverter();
+  private final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+  private final ImageWriteParam param = writer.getDefaultWriteParam();
+
+  /**
+   * Output of {@link #encode(Frame)} and {@link #encode(BufferedImage)}, reused from one frame to the next
+   */
+  private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1 << 16);
+
+  /**
+   * @param quality
+   *          Compression quality between 0 (smallest) and 1 (best)
+   */
+  public JpegEncoder(float quality)
+  {
+    this.quality = quality;
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(quality);
+  }
+
+  public float getQuality()
+  {
+    return quality;
+  }
+
+  @Override
+  public byte[] encode(Frame frame) throws IOException
+  {
+    outputStream.reset();
+    encode(frame, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  @Override
+  public byte[] encode(BufferedImage image) throws IOException
+  {
+    outputStream.reset();
+    encode(image, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  public void encode(Frame frame, OutputStream outputStream) throws IOException
+  {
+    encode(converter.convert(frame), outputStream);
+  }
+
+  public void encode(BufferedImage image, OutputStream outputStream) throws IOException
+  {
+    try (ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream))
+    {
+      writer.setOutput(imageOutputStream);
+      writer.write(null, new IIOImage(image, null, null), param);
+    }
+    finally
+    {
+      writer.reset();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    writer.dispose();
+  }
+}
@@ -0,0 +1,283 @@
+package com.cameras.streaming;
+
+import com.cameras.capture.CameraCapture;
+import com.cameras.capture.CapturedFrame;
+import com.cameras.capture.DroppedFrameCounter;
+import com.cameras.capture.FrameLatencyTracer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Live fragmented MP4 stream of a camera. A single H.264 encoder, running while there are viewers, writes one
+ * fragment per frame; each fragment is pushed to all the viewers as soon as the muxer produces it. Viewers start with
+ * the init segment and the next keyframe fragment. A viewer that falls too far behind drops fragments and resumes on
+ * the next keyframe, without affecting the encoder or the other viewers.
+ * <p>
+ * The latency of the frames is traced when the encoder picks them up (live-mp4.dequeue), when the muxer writes their
+ * fragment (live-mp4.encode) and when a viewer takes their fragment (live-mp4.send).
+ */
+public class LiveMp4Broadcaster
+{
+
+  public static final String CONTENT_TYPE = "video/mp4";
+
+  /**
+   * Fragmented MP4 with an empty moov written upfront and one fragment per frame
+   */
+  public static final String MOVFLAGS = "empty_moov+default_base_moof+frag_every_frame";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final EncoderSettings settings;
+  private final int maxPendingFragments;
+  private final String cameraName;
+  private final MeterRegistry meterRegistry;
+  private final Timer encodeTimer;
+  private final FrameLatencyTracer.Stage dequeueStage;
+  private final FrameLatencyTracer.Stage encodeStage;
+  private final FrameLatencyTracer.Stage sendStage;
+  private final Scheduler encoderScheduler;
+  private final Flux<Mp4Fragment> fragments;
+
+  /**
+   * Encoder session running, null while there is no viewer
+   */
+  private final AtomicReference<LiveEncoder> session = new AtomicReference<>();
+
+  /**
+   * @param capture
+   *          Camera capture
+   * @param settings
+   *          Encoder settings
+   * @param maxPendingFragments
+   *          Fragments buffered per viewer before it starts dropping
+   * @param meterRegistry
+   *          Registry of the encode time and of the frames dropped by the encoder
+   */
+  public LiveMp4Broadcaster(CameraCapture capture, EncoderSettings settings, int maxPendingFragments,
+      MeterRegistry meterRegistry)
+  {
+    this.settings = settings;
+    this.maxPendingFragments = maxPendingFragments;
+    this.cameraName = capture.getName();
+    this.meterRegistry = meterRegistry;
+    this.encodeTimer = Timer.builder("camera.frame.encode")
+        .description("Time encoding a frame")
+        .tag("camera", capture.getName())
+        .tag("encoder", "live-mp4")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.dequeueStage = capture.getLatencyTracer().stage("live-mp4.dequeue");
+    this.encodeStage = capture.getLatencyTracer().stage("live-mp4.encode");
+    this.sendStage = capture.getLatencyTracer().stage("live-mp4.send");
+    this.encoderScheduler = capture.getCpuAffinity().newSingle("Live MP4 encoder " + capture.getName());
+    this.fragments = Flux.<Mp4Fragment>create(sink ->
+    {
+      LiveEncoder encoder = new LiveEncoder(sink);
+      session.set(encoder);
+      Disposable frames = capture.frames()
+          .subscribeOn(encoderScheduler)
+          .onBackpressureLatest()
+          .publishOn(encoderScheduler, 1)
+          .subscribe(encoder::record, sink::error);
+      sink.onDispose(() ->
+      {
+        session.compareAndSet(encoder, null);
+        frames.dispose();
+        try
+        {
+          encoderScheduler.schedule(encoder::close);
+        }
+        catch (RejectedExecutionException e)
+        {
+          // Stopped by dispose(), which closed the encoder
+        }
+      });
+    })
+        .publish()
+        .refCount();
+  }
+
+  /**
+   * Fragments of the encoder, shared by all the viewers. Starts the encoder on first subscription.
+   *
+   * @return Flux of Mp4Fragment.
+   */
+  public Flux<Mp4Fragment> fragments()
+  {
+    return fragments;
+  }
+
+  /**
+   * Playable stream for one viewer: the init segment followed by the fragments from the next keyframe on.
+   *
+   * @return Flux of byte[], the arrays are shared and must not be modified.
+   */
+  public Flux<byte[]> stream()
+  {
+    return Flux.defer(() ->
+    {
+      AtomicBoolean waitingKeyframe = new AtomicBoolean(true);
+      AtomicReference<byte[]> sentInitSegment = new AtomicReference<>();
+      return fragments
+          .onBackpressureBuffer(maxPendingFragments, dropped -> waitingKeyframe.set(true),
+              BufferOverflowStrategy.DROP_LATEST)
+          .concatMapIterable(fragment ->
+          {
+            if (waitingKeyframe.get())
+            {
+              if (!fragment.isKeyframe())
+              {
+                return Collections.<byte[]> emptyList();
+              }
+              waitingKeyframe.set(false);
+            }
+            sendStage.record(fragment.getCaptureNanos());
+            if (sentInitSegment.get() != fragment.getInitSegment())
+            {
+              sentInitSegment.set(fragment.getInitSegment());
+              return Arrays.asList(fragment.getInitSegment(), fragment.getData());
+            }
+            return Collections.singletonList(fragment.getData());
+          }, 1);
+    });
+  }
+
+  /**
+   * End the streams of the viewers, close the encoder session, on the encoder thread, and stop it.
+   */
+  public void dispose()
+  {
+    LiveEncoder encoder = session.getAndSet(null);
+    if (encoder == null)
+    {
+      encoderScheduler.dispose();
+      return;
+    }
+    encoder.sink.complete();
+    EncoderThreads.closeAndDispose(encoderScheduler, encoder::close, "the live MP4 stream of camera " + cameraName);
+  }
+
+  /**
+   * One encoder session, from the first frame to the last viewer leaving. Only used from the encoder thread.
+   */
+  private class LiveEncoder implements Mp4FragmentParser.Listener
+  {
+
+    private final FluxSink<Mp4Fragment> sink;
+    private final DroppedFrameCounter droppedFrames = new DroppedFrameCounter(meterRegistry, cameraName, "live-mp4");
+    private FFmpegFrameRecorder recorder;
+    private boolean closed;
+    private long startNanos;
+    private long lastCaptureNanos;
+    private byte[] initSegment;
+
+    private LiveEncoder(FluxSink<Mp4Fragment> sink)
+    {
+      this.sink = sink;
+    }
+
+    private void record(CapturedFrame frame)
+    {
+      if (closed)
+      {
+        // Frame delivered after the session was closed by dispose()
+        return;
+      }
+      if (!frame.retain())
+      {
+        // Recycled while waiting for the encoder, counted with the next gap in the sequence numbers
+        return;
+      }
+      droppedFrames.received(frame.getSequence());
+      dequeueStage.record(frame.getCaptureNanos());
+      long encodeStartNanos = System.nanoTime();
+      try
+      {
+        if (recorder == null)
+        {
+          recorder = createRecorder();
+          recorder.start();
+          startNanos = frame.getCaptureNanos();
+        }
+        long timestamp = (frame.getCaptureNanos() - startNanos) / 1000;
+        if (timestamp > recorder.getTimestamp())
+        {
+          recorder.setTimestamp(timestamp);
+        }
+        lastCaptureNanos = frame.getCaptureNanos();
+        recorder.record(frame.getFrame());
+        encodeTimer.record(System.nanoTime() - encodeStartNanos, TimeUnit.NANOSECONDS);
+      }
+      catch (FFmpegFrameRecorder.Exception e)
+      {
+        sink.error(e);
+      }
+      finally
+      {
+        frame.release();
+      }
+    }
+
+    private FFmpegFrameRecorder createRecorder()
+    {
+      FFmpegFrameRecorder newRecorder = new FFmpegFrameRecorder(new Mp4FragmentParser(this), settings.getWidth(),
+          settings.getHeight());
+      newRecorder.setFormat("mp4");
+      settings.configure(newRecorder);
+      newRecorder.setOption("movflags", MOVFLAGS);
+      return newRecorder;
+    }
+
+    private void close()
+    {
+      closed = true;
+      if (recorder == null)
+      {
+        return;
+      }
+      try
+      {
+        recorder.stop();
+        recorder.release();
+      }
+      catch (FFmpegFrameRecorder.Exception e)
+      {
+        logger.error("Error while stopping the live encoder", e);
+      }
+      recorder = null;
+    }
+
+    @Override
+    public void onInitSegment(byte[] initSegment)
+    {
+      this.initSegment = initSegment;
+    }
+
+    @Override
+    public void onFragment(byte[] fragment, boolean keyframe)
+    {
+      if (initSegment != null)
+      {
+        encodeStage.record(lastCaptureNanos);
+        sink.next(new Mp4Fragment(initSegment, fragment, keyframe, lastCaptureNanos));
+      }
+    }
+  }
+}
@@ -0,0 +1,302 @@
+package com.cameras.streaming;
+
+import com.cameras.capture.CameraCapture;
+import com.cameras.capture.CapturedFrame;
+import com.cameras.capture.DroppedFrameCounter;
+import com.cameras.capture.FrameLatencyTracer;
+import com.constants.ModulabGlobals;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Live MJPEG stream of a camera. Each frame is encoded once per {@link Rendition}, by a single encoder thread, into a
+ * complete multipart/x-mixed-replace part shared by all the viewers of the rendition. The encoding of a rendition only
+ * runs while it has viewers and skips frames when it cannot keep up with the camera; a viewer that cannot keep up with
+ * the encoder skips parts. A rendition stream, and its encoder, stops with its last viewer; at most a maximum number of
+ * renditions are streamed at once.
+ * <p>
+ * With the frame headers, each part also carries the sequence number of its frame (X-Frame-Sequence), its capture
+ * time (X-Frame-Capture-Time, epoch milliseconds) and the microseconds from the capture to the end of the encoding
+ * (X-Frame-Latency).
+ */
+public class MjpegBroadcaster
+{
+
+  public static final String BOUNDARY = "frame";
+  public static final String CONTENT_TYPE = "multipart/x-mixed-replace; boundary=" + BOUNDARY;
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final CameraCapture capture;
+  private final Function<Float, FrameEncoder> encoderFactory;
+  private final float quality;
+  private final int maxRenditions;
+  private final boolean frameHeaders;
+  private final MeterRegistry meterRegistry;
+  private final Timer encodeTimer;
+  private final FrameLatencyTracer.Stage dequeueStage;
+  private final FrameLatencyTracer.Stage encodeStage;
+  private final FrameLatencyTracer.Stage sendStage;
+  private final Scheduler encoderScheduler;
+
+  /**
+   * Streams of the renditions with viewers. Access must be synchronized on it
+   */
+  private final Map<Rendition, Flux<Part>> renditions = new HashMap<>();
+
+  /**
+   * Encoders of the rendition streams, closed on the encoder thread when their stream stops
+   */
+  private final Set<FrameEncoder> encoders = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param capture
+   *          Camera capture
+   * @param encoderFactory
+   *          Creates the JPEG encoder of a rendition stream, for a quality
+   * @param quality
+   *          JPEG quality of the renditions that do not set one
+   * @param maxRenditions
+   *          Number of renditions streamed at once
+   * @param frameHeaders
+   *          <code>true</code> to add the sequence number, the capture time and the latency of the frame to the part
+   *          headers
+   * @param meterRegistry
+   *          Registry of the encode time and of the frames dropped by the encoder
+   */
+  public MjpegBroadcaster(CameraCapture capture, Function<Float, FrameEncoder> encoderFactory, float quality,
+      int maxRenditions, boolean frameHeaders, MeterRegistry meterRegistry)
+  {
+    this.capture = capture;
+    this.encoderFactory = encoderFactory;
+    this.quality = quality;
+    this.maxRenditions = maxRenditions;
+    this.frameHeaders = frameHeaders;
+    this.meterRegistry = meterRegistry;
+    this.encodeTimer = Timer.builder("camera.frame.encode")
+        .description("Time encoding a frame")
+        .tag("camera", capture.getName())
+        .tag("encoder", "mjpeg")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.dequeueStage = capture.getLatencyTracer().stage("mjpeg.dequeue");
+    this.encodeStage = capture.getLatencyTracer().stage("mjpeg.encode");
+    this.sendStage = capture.getLatencyTracer().stage("mjpeg.send");
+    this.encoderScheduler = capture.getCpuAffinity().newSingle("MJPEG encoder " + capture.getName());
+  }
+
+  /**
+   * Encoded parts of the whole frames, each one made of the boundary, the part headers and the JPEG image.
+   *
+   * @return Flux of byte[], the arrays are shared and must not be modified.
+   */
+  public Flux<byte[]> parts()
+  {
+    return parts(Rendition.ORIGINAL);
+  }
+
+  /**
+   * Encoded parts of a rendition, each one made of the boundary, the part headers and the JPEG image. The latency of
+   * a part is traced when the viewer takes it, to write it to its connection. The stream of the rendition is joined
+   * on subscription, it fails when the maximum number of renditions are already streamed.
+   *
+   * @param rendition
+   *          Region, size and quality of the stream
+   * @return Flux of byte[], the arrays are shared and must not be modified.
+   */
+  public Flux<byte[]> parts(Rendition rendition)
+  {
+    return Flux.defer(() ->
+    {
+      Flux<Part> parts;
+      synchronized (renditions)
+      {
+        parts = renditions.get(rendition);
+        if (parts == null)
+        {
+          if (renditions.size() >= maxRenditions)
+          {
+            return Flux.error(new IllegalStateException(
+                "Camera " + capture.getName() + " already streams " + maxRenditions + " MJPEG renditions"));
+          }
+          parts = broadcast(rendition);
+          renditions.put(rendition, parts);
+        }
+      }
+      return parts.onBackpressureLatest()
+          .map(part ->
+          {
+            sendStage.record(part.captureNanos);
+            return part.data;
+          });
+    });
+  }
+
+  /**
+   * @param rendition
+   *          Region, size and quality of the stream
+   * @return <code>true</code> if the rendition is streamed or another rendition can be streamed
+   */
+  public boolean canStream(Rendition rendition)
+  {
+    synchronized (renditions)
+    {
+      return renditions.size() < maxRenditions || renditions.containsKey(rendition);
+    }
+  }
+
+  /**
+   * Close the encoders of the rendition streams, on the encoder thread, and stop it.
+   */
+  public void dispose()
+  {
+    EncoderThreads.closeAndDispose(encoderScheduler, () ->
+    {
+      encoders.forEach(FrameEncoder::close);
+      encoders.clear();
+    }, "the MJPEG stream of camera " + capture.getName());
+  }
+
+  /**
+   * Encoding of one rendition, shared by its viewers. The encoder is created with the first viewer; when the last
+   * viewer leaves the encoder is closed and the stream is removed from the renditions.
+   */
+  private Flux<Part> broadcast(Rendition rendition)
+  {
+    AtomicReference<Flux<Part>> parts = new AtomicReference<>();
+    parts.set(Flux.defer(() ->
+    {
+      FrameEncoder encoder = encoderFactory.apply(rendition.getQuality(quality));
+      encoders.add(encoder);
+      RenditionScaler scaler = rendition.isFullFrame() ? null : new RenditionScaler();
+      DroppedFrameCounter droppedFrames = new DroppedFrameCounter(meterRegistry, capture.getName(), "mjpeg");
+      return capture.frames()
+          .subscribeOn(encoderScheduler)
+          .onBackpressureLatest()
+          .publishOn(encoderScheduler, 1)
+          // A rendition that does not fit the frames ends the stream, other errors only skip the frame
+          .concatMap(frame -> Mono.fromCallable(() -> encodePart(encoder, scaler, rendition, frame, droppedFrames))
+              .onErrorResume(e -> !(e instanceof IllegalArgumentException), e ->
+              {
+                logger.error("Error while encoding a frame in {}", rendition, e);
+                return Mono.empty();
+              }), 1)
+          .doFinally(signal -> close(encoder));
+    })
+        .doFinally(signal ->
+        {
+          synchronized (renditions)
+          {
+            renditions.remove(rendition, parts.get());
+          }
+        })
+        .publish()
+        .refCount());
+    return parts.get();
+  }
+
+  /**
+   * Close the encoder of a stopped rendition stream, on the encoder thread once it is done with the encoder.
+   */
+  private void close(FrameEncoder encoder)
+  {
+    try
+    {
+      encoderScheduler.schedule(() ->
+      {
+        if (encoders.remove(encoder))
+        {
+          encoder.close();
+        }
+      });
+    }
+    catch (RejectedExecutionException e)
+    {
+      // Stopped by dispose(), which closed the encoders
+    }
+  }
+
+  /**
+   * @param scaler
+   *          Scaler of the rendition, <code>null</code> for the whole frames
+   * @return The part, <code>null</code> if the frame has already been recycled
+   */
+  private Part encodePart(FrameEncoder encoder, RenditionScaler scaler, Rendition rendition, CapturedFrame frame,
+      DroppedFrameCounter droppedFrames) throws IOException
+  {
+    if (!frame.retain())
+    {
+      // Recycled while waiting for the encoder, counted with the next gap in the sequence numbers
+      return null;
+    }
+    // The frame is reused by the pool once released, its values are read while it is retained
+    long sequence = frame.getSequence();
+    long captureNanos = frame.getCaptureNanos();
+    long captureTimeMillis = frame.getCaptureTimeMillis();
+    droppedFrames.received(sequence);
+    dequeueStage.record(captureNanos);
+    long encodeStartNanos = System.nanoTime();
+    byte[] jpeg;
+    try
+    {
+      jpeg = scaler == null ? encoder.encode(frame.getFrame())
+          : encoder.encode(scaler.scale(frame.getFrame(), rendition));
+      encodeTimer.record(System.nanoTime() - encodeStartNanos, TimeUnit.NANOSECONDS);
+    }
+    finally
+    {
+      frame.release();
+    }
+    long latencyMicros = encodeStage.record(captureNanos);
+    StringBuilder headers = new StringBuilder(192)
+        .append("--").append(BOUNDARY).append("\r\n")
+        .append("Content-Type: image/jpeg\r\n")
+        .append("Content-Length: ").append(jpeg.length).append("\r\n");
+    if (frameHeaders)
+    {
+      headers.append(ModulabGlobals.FRAME_SEQUENCE).append(": ").append(sequence).append("\r\n")
+          .append(ModulabGlobals.FRAME_CAPTURE_TIME).append(": ").append(captureTimeMillis).append("\r\n")
+          .append(ModulabGlobals.FRAME_LATENCY).append(": ").append(latencyMicros).append("\r\n");
+    }
+    headers.append("\r\n");
+    ByteArrayOutputStream part = new ByteArrayOutputStream(jpeg.length + 192);
+    part.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+    part.write(jpeg);
+    part.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    return new Part(part.toByteArray(), captureNanos);
+  }
+
+  /**
+   * Encoded part and the capture time of its frame
+   */
+  private static final class Part
+  {
+
+    private final byte[] data;
+    private final long captureNanos;
+
+    private Part(byte[] data, long captureNanos)
+    {
+      this.data = data;
+      this.captureNanos = captureNanos;
+    }
+  }
+}
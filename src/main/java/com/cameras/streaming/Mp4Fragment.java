@@ -0,0 +1,50 @@
+package com.cameras.streaming;
+
+/**
+ * Fragment (moof + mdat) of a live fragmented MP4 stream, with the init segment needed to start decoding it.
+ */
+public final class Mp4Fragment
+{
+
+  private final byte[] initSegment;
+  private final byte[] data;
+  private final boolean keyframe;
+  private final long captureNanos;
+
+  public Mp4Fragment(byte[] initSegment, byte[] data, boolean keyframe, long captureNanos)
+  {
+    this.initSegment = initSegment;
+    this.data = data;
+    this.keyframe = keyframe;
+    this.captureNanos = captureNanos;
+  }
+
+  /**
+   * @return ftyp + moov boxes of the encoder session that produced the fragment
+   */
+  public byte[] getInitSegment()
+  {
+    return initSegment;
+  }
+
+  public byte[] getData()
+  {
+    return data;
+  }
+
+  /**
+   * @return <code>true</code> iff the fragment starts with a keyframe, so a viewer can start decoding from it
+   */
+  public boolean isKeyframe()
+  {
+    return keyframe;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when the last frame of the fragment was grabbed
+   */
+  public long getCaptureNanos()
+  {
+    return captureNanos;
+  }
+}
@@ -0,0 +1,206 @@
+package com.cameras.streaming;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Output stream splitting the fragmented MP4 written by the muxer into its init segment (ftyp + moov) and its
+ * fragments (moof + mdat), as soon as each one is complete.
+ */
+public class Mp4FragmentParser extends OutputStream
+{
+
+  /**
+   * Receives the init segment and the fragments, on the thread writing to the parser.
+   */
+  public interface Listener
+  {
+
+    void onInitSegment(byte[] initSegment);
+
+    void onFragment(byte[] fragment, boolean keyframe);
+  }
+
+  private static final int SAMPLE_IS_NON_SYNC = 0x00010000;
+
+  private final Listener listener;
+
+  private byte[] buffer = new byte[64 * 1024];
+  private int length;
+
+  private byte[] initSegment = new byte[0];
+  private boolean initSegmentDone;
+  private byte[] pendingMoof;
+
+  public Mp4FragmentParser(Listener listener)
+  {
+    this.listener = listener;
+  }
+
+  @Override
+  public void write(int b)
+  {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int count)
+  {
+    if (length + count > buffer.length)
+    {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + count));
+    }
+    System.arraycopy(bytes, offset, buffer, length, count);
+    length += count;
+    parseBoxes();
+  }
+
+  private void parseBoxes()
+  {
+    int position = 0;
+    while (length - position >= 8)
+    {
+      long size = readUnsignedInt(buffer, position);
+      if (size == 1)
+      {
+        if (length - position < 16)
+        {
+          break;
+        }
+        size = ((long) readUnsignedInt(buffer, position + 8) << 32) | readUnsignedInt(buffer, position + 12);
+      }
+      if (size < 8 || size > Integer.MAX_VALUE)
+      {
+        throw new IllegalStateException("Invalid MP4 box size " + size);
+      }
+      if (length - position < size)
+      {
+        break;
+      }
+      onBox(new String(buffer, position + 4, 4, StandardCharsets.US_ASCII),
+          Arrays.copyOfRange(buffer, position, position + (int) size));
+      position += (int) size;
+    }
+    if (position > 0)
+    {
+      System.arraycopy(buffer, position, buffer, 0, length - position);
+      length -= position;
+    }
+  }
+
+  private void onBox(String type, byte[] box)
+  {
+    switch (type)
+    {
+      case "moof":
+        if (!initSegmentDone)
+        {
+          initSegmentDone = true;
+          listener.onInitSegment(initSegment);
+        }
+        pendingMoof = box;
+        break;
+      case "mdat":
+        if (pendingMoof != null)
+        {
+          byte[] fragment = Arrays.copyOf(pendingMoof, pendingMoof.length + box.length);
+          System.arraycopy(box, 0, fragment, pendingMoof.length, box.length);
+          listener.onFragment(fragment, isKeyframe(pendingMoof));
+          pendingMoof = null;
+        }
+        break;
+      default:
+        if (!initSegmentDone)
+        {
+          byte[] init = Arrays.copyOf(initSegment, initSegment.length + box.length);
+          System.arraycopy(box, 0, init, initSegment.length, box.length);
+          initSegment = init;
+        }
+        // boxes after the first fragment (mfra...) are not needed for live playback
+    }
+  }
+
+  /**
+   * @return <code>true</code> iff the first sample of the first track fragment of the moof box is a sync sample
+   */
+  static boolean isKeyframe(byte[] moof)
+  {
+    int traf = findChild(moof, 8, moof.length, "traf");
+    if (traf < 0)
+    {
+      return false;
+    }
+    int trafEnd = traf + (int) readUnsignedInt(moof, traf);
+    Integer defaultFlags = null;
+    int tfhd = findChild(moof, traf + 8, trafEnd, "tfhd");
+    if (tfhd >= 0)
+    {
+      int flags = readInt(moof, tfhd + 8) & 0xFFFFFF;
+      int field = tfhd + 16;
+      field += (flags & 0x01) != 0 ? 8 : 0;
+      field += (flags & 0x02) != 0 ? 4 : 0;
+      field += (flags & 0x08) != 0 ? 4 : 0;
+      field += (flags & 0x10) != 0 ? 4 : 0;
+      if ((flags & 0x20) != 0)
+      {
+        defaultFlags = readInt(moof, field);
+      }
+    }
+    int trun = findChild(moof, traf + 8, trafEnd, "trun");
+    if (trun < 0)
+    {
+      return false;
+    }
+    int flags = readInt(moof, trun + 8) & 0xFFFFFF;
+    int field = trun + 16;
+    field += (flags & 0x01) != 0 ? 4 : 0;
+    Integer sampleFlags = null;
+    if ((flags & 0x04) != 0)
+    {
+      sampleFlags = readInt(moof, field);
+    }
+    else if ((flags & 0x400) != 0)
+    {
+      field += (flags & 0x100) != 0 ? 4 : 0;
+      field += (flags & 0x200) != 0 ? 4 : 0;
+      sampleFlags = readInt(moof, field);
+    }
+    else
+    {
+      sampleFlags = defaultFlags;
+    }
+    // Without explicit flags the muxer defaults (trex) apply, which FFmpeg sets to non sync for video
+    return sampleFlags != null && (sampleFlags & SAMPLE_IS_NON_SYNC) == 0;
+  }
+
+  private static int findChild(byte[] box, int from, int to, String type)
+  {
+    int position = from;
+    while (position + 8 <= to)
+    {
+      long size = readUnsignedInt(box, position);
+      if (size < 8)
+      {
+        return -1;
+      }
+      if (new String(box, position + 4, 4, StandardCharsets.US_ASCII).equals(type))
+      {
+        return position;
+      }
+      position += (int) size;
+    }
+    return -1;
+  }
+
+  private static int readInt(byte[] bytes, int position)
+  {
+    return ((bytes[position] & 0xFF) << 24) | ((bytes[position + 1] & 0xFF) << 16) | ((bytes[position + 2] & 0xFF) << 8)
+        | (bytes[position + 3] & 0xFF);
+  }
+
+  private static long readUnsignedInt(byte[] bytes, int position)
+  {
+    return readInt(bytes, position) & 0xFFFFFFFFL;
+  }
+}
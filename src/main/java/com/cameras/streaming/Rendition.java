@@ -0,0 +1,202 @@
+package com.cameras.streaming;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.Objects;
+
+/**
+ * Rendition of the camera frames requested by a client: a region of the frame, the size it is scaled down to and the
+ * JPEG quality. Frames are never scaled up, a size larger than the region is reduced to the region.
+ */
+public final class Rendition
+{
+
+  /**
+   * The whole frame at its own size, with the default quality
+   */
+  public static final Rendition ORIGINAL = new Rendition(0, 0, null, null);
+
+  /**
+   * Largest width or height of a rendition
+   */
+  public static final int MAX_SIZE = 8192;
+
+  private final int width;
+  private final int height;
+  private final Rectangle crop;
+  private final Float quality;
+
+  private Rendition(int width, int height, Rectangle crop, Float quality)
+  {
+    this.width = width;
+    this.height = height;
+    this.crop = crop;
+    this.quality = quality;
+  }
+
+  /**
+   * @param width
+   *          Width in pixels, <code>null</code> to follow the height or the region
+   * @param height
+   *          Height in pixels, <code>null</code> to follow the width or the region
+   * @param crop
+   *          Region of the frame as "x,y,width,height" in pixels of the frame, <code>null</code> for the whole frame
+   * @param quality
+   *          JPEG quality between 0 and 1, <code>null</code> for the default quality
+   * @return The rendition
+   * @throws IllegalArgumentException
+   *           if a parameter is out of range or malformed
+   */
+  public static Rendition of(Integer width, Integer height, String crop, Float quality)
+  {
+    if (width == null && height == null && crop == null && quality == null)
+    {
+      return ORIGINAL;
+    }
+    return new Rendition(checkSize("width", width), checkSize("height", height), parseCrop(crop),
+        checkQuality(quality));
+  }
+
+  /**
+   * @return <code>true</code> if the frame is encoded as it is, without cropping nor scaling
+   */
+  public boolean isFullFrame()
+  {
+    return width == 0 && height == 0 && crop == null;
+  }
+
+  /**
+   * @param defaultQuality
+   *          Quality when the rendition does not set one
+   * @return JPEG quality between 0 and 1
+   */
+  public float getQuality(float defaultQuality)
+  {
+    return quality == null ? defaultQuality : quality;
+  }
+
+  /**
+   * @return The region of a frame of this size, clipped to the frame
+   */
+  public Rectangle cropOf(int frameWidth, int frameHeight)
+  {
+    Rectangle frame = new Rectangle(0, 0, frameWidth, frameHeight);
+    if (crop == null)
+    {
+      return frame;
+    }
+    Rectangle region = crop.intersection(frame);
+    if (region.isEmpty())
+    {
+      throw new IllegalArgumentException("Crop " + crop + " outside of the frame " + frameWidth + "x" + frameHeight);
+    }
+    return region;
+  }
+
+  /**
+   * @return Size of the scaled region, at least 1x1 and never larger than the region
+   */
+  public Dimension sizeOf(int regionWidth, int regionHeight)
+  {
+    int scaledWidth = width;
+    int scaledHeight = height;
+    if (scaledWidth == 0 && scaledHeight == 0)
+    {
+      return new Dimension(regionWidth, regionHeight);
+    }
+    if (scaledWidth == 0)
+    {
+      scaledWidth = (int) Math.round((double) regionWidth * Math.min(scaledHeight, regionHeight) / regionHeight);
+    }
+    else if (scaledHeight == 0)
+    {
+      scaledHeight = (int) Math.round((double) regionHeight * Math.min(scaledWidth, regionWidth) / regionWidth);
+    }
+    return new Dimension(Math.max(1, Math.min(scaledWidth, regionWidth)),
+        Math.max(1, Math.min(scaledHeight, regionHeight)));
+  }
+
+  @Override
+  public boolean equals(Object o)
+  {
+    if (this == o)
+    {
+      return true;
+    }
+    if (!(o instanceof Rendition))
+    {
+      return false;
+    }
+    Rendition other = (Rendition) o;
+    return width == other.width && height == other.height && Objects.equals(crop, other.crop)
+        && Objects.equals(quality, other.quality);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return Objects.hash(width, height, crop, quality);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "Rendition[width=" + width + ", height=" + height + ", crop=" + crop + ", quality=" + quality + "]";
+  }
+
+  private static int checkSize(String name, Integer size)
+  {
+    if (size == null)
+    {
+      return 0;
+    }
+    if (size < 1 || size > MAX_SIZE)
+    {
+      throw new IllegalArgumentException(name + " must be between 1 and " + MAX_SIZE);
+    }
+    return size;
+  }
+
+  private static Float checkQuality(Float quality)
+  {
+    if (quality == null)
+    {
+      return null;
+    }
+    if (!(quality >= 0 && quality <= 1))
+    {
+      throw new IllegalArgumentException("quality must be between 0 and 1");
+    }
+    // Close qualities share their rendition
+    return Math.round(quality * 100) / 100F;
+  }
+
+  private static Rectangle parseCrop(String crop)
+  {
+    if (crop == null)
+    {
+      return null;
+    }
+    String[] values = crop.split(",");
+    if (values.length != 4)
+    {
+      throw new IllegalArgumentException("crop must be x,y,width,height");
+    }
+    try
+    {
+      int x = Integer.parseInt(values[0].trim());
+      int y = Integer.parseInt(values[1].trim());
+      int cropWidth = Integer.parseInt(values[2].trim());
+      int cropHeight = Integer.parseInt(values[3].trim());
+      if (x < 0 || y < 0 || cropWidth < 1 || cropHeight < 1)
+      {
+        throw new IllegalArgumentException("crop must be a non empty region at positive coordinates");
+      }
+      return new Rectangle(x, y, cropWidth, cropHeight);
+    }
+    catch (NumberFormatException e)
+    {
+      throw new IllegalArgumentException("crop must be x,y,width,height", e);
+    }
+  }
+}
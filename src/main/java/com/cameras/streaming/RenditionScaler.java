@@ -0,0 +1,130 @@
+package com.cameras.streaming;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Crops and scales frames down to a {@link Rendition} with an area-average (box) filter: each pixel of the rendition
+ * is the mean of the block of frame pixels it covers. The frame rows are read once and summed column by column, so a
+ * rendition costs one pass over the region. 8-bit BGR frames are read in place, other frames are converted first.
+ * <p>
+ * The returned image is overwritten by the next call. Not thread safe, every scaling thread needs its own instance.
+ */
+public class RenditionScaler
+{
+
+  private static final int CHANNELS = 3;
+
+  private final Java2DFrameConverter converter = new Java2DFrameConverter();
+
+  private BufferedImage target;
+  private byte[] targetPixels;
+  private int[] columnSums = new int[0];
+  private byte[] row = new byte[0];
+
+  /**
+   * @param frame
+   *          Frame to scale, only read during the call
+   * @param rendition
+   *          Region and size of the result
+   * @return The scaled region, as a BGR image
+   */
+  public BufferedImage scale(Frame frame, Rendition rendition)
+  {
+    if (frame.imageDepth == Frame.DEPTH_UBYTE && frame.imageChannels == CHANNELS)
+    {
+      return scale((ByteBuffer) frame.image[0], frame.imageStride, frame.imageWidth, frame.imageHeight, rendition);
+    }
+    BufferedImage image = converter.convert(frame);
+    BufferedImage bgr = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+    Graphics2D graphics = bgr.createGraphics();
+    try
+    {
+      graphics.drawImage(image, 0, 0, null);
+    }
+    finally
+    {
+      graphics.dispose();
+    }
+    byte[] pixels = ((DataBufferByte) bgr.getRaster().getDataBuffer()).getData();
+    return scale(ByteBuffer.wrap(pixels), bgr.getWidth() * CHANNELS, bgr.getWidth(), bgr.getHeight(), rendition);
+  }
+
+  /**
+   * @param pixels
+   *          BGR pixels of the frame
+   * @param stride
+   *          Bytes from one row of the frame to the next
+   */
+  private BufferedImage scale(ByteBuffer pixels, int stride, int frameWidth, int frameHeight, Rendition rendition)
+  {
+    Rectangle region = rendition.cropOf(frameWidth, frameHeight);
+    Dimension size = rendition.sizeOf(region.width, region.height);
+    BufferedImage image = targetImage(size.width, size.height);
+    byte[] out = targetPixels;
+    int rowBytes = region.width * CHANNELS;
+    if (columnSums.length < rowBytes)
+    {
+      columnSums = new int[rowBytes];
+      row = new byte[rowBytes];
+    }
+    int[] sums = columnSums;
+    byte[] rowPixels = row;
+    ByteBuffer source = pixels.duplicate();
+    int o = 0;
+    for (int ty = 0; ty < size.height; ty++)
+    {
+      int fromRow = region.y + (int) ((long) ty * region.height / size.height);
+      int toRow = region.y + (int) ((long) (ty + 1) * region.height / size.height);
+      Arrays.fill(sums, 0, rowBytes, 0);
+      for (int y = fromRow; y < toRow; y++)
+      {
+        source.position(y * stride + region.x * CHANNELS);
+        source.get(rowPixels, 0, rowBytes);
+        for (int i = 0; i < rowBytes; i++)
+        {
+          sums[i] += rowPixels[i] & 0xFF;
+        }
+      }
+      int rows = toRow - fromRow;
+      for (int tx = 0; tx < size.width; tx++)
+      {
+        int fromColumn = (int) ((long) tx * region.width / size.width);
+        int toColumn = (int) ((long) (tx + 1) * region.width / size.width);
+        long blue = 0;
+        long green = 0;
+        long red = 0;
+        for (int i = fromColumn * CHANNELS; i < toColumn * CHANNELS; i += CHANNELS)
+        {
+          blue += sums[i];
+          green += sums[i + 1];
+          red += sums[i + 2];
+        }
+        long area = (long) rows * (toColumn - fromColumn);
+        long half = area / 2;
+        out[o++] = (byte) ((blue + half) / area);
+        out[o++] = (byte) ((green + half) / area);
+        out[o++] = (byte) ((red + half) / area);
+      }
+    }
+    return image;
+  }
+
+  private BufferedImage targetImage(int width, int height)
+  {
+    if (target == null || target.getWidth() != width || target.getHeight() != height)
+    {
+      target = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+      targetPixels = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+    }
+    return target;
+  }
+}
@@ -0,0 +1,65 @@
+package com.cameras.streaming;
+
+/**
+ * JPEG image of a captured frame, shared by all the requests of the frame.
+ */
+public final class Snapshot
+{
+
+  private final long sequence;
+  private final long captureNanos;
+  private final long captureTimeMillis;
+  private final byte[] jpeg;
+
+  /**
+   * @param sequence
+   *          Sequence number of the frame
+   * @param captureNanos
+   *          {@link System#nanoTime()} when the frame was grabbed
+   * @param captureTimeMillis
+   *          Wall clock time when the frame was grabbed
+   * @param jpeg
+   *          Encoded image
+   */
+  public Snapshot(long sequence, long captureNanos, long captureTimeMillis, byte[] jpeg)
+  {
+    this.sequence = sequence;
+    this.captureNanos = captureNanos;
+    this.captureTimeMillis = captureTimeMillis;
+    this.jpeg = jpeg;
+  }
+
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * @return {@link System#nanoTime()} when the frame was grabbed
+   */
+  public long getCaptureNanos()
+  {
+    return captureNanos;
+  }
+
+  public long getCaptureTimeMillis()
+  {
+    return captureTimeMillis;
+  }
+
+  /**
+   * @return The encoded image, shared, must not be modified
+   */
+  public byte[] getJpeg()
+  {
+    return jpeg;
+  }
+
+  /**
+   * @return Milliseconds elapsed since the frame was grabbed
+   */
+  public long getAgeMillis()
+  {
+    return (System.nanoTime() - captureNanos) / 1_000_000L;
+  }
+}
@@ -0,0 +1,260 @@
+package com.cameras.streaming;
+
+import com.cameras.capture.CameraCapture;
+import com.cameras.capture.CapturedFrame;
+import com.cameras.capture.FrameLatencyTracer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * JPEG snapshots of a camera, in any {@link Rendition}. A frame is only encoded when a snapshot is requested, and at
+ * most once per rendition: concurrent requests for the same frame and rendition share one scaling, one encoding and
+ * its bytes. Requests accepting an older image get the last encoded snapshot of their rendition without encoding
+ * anything. The most recently requested renditions are kept, the encoding runs on a single encoder thread.
+ */
+public class SnapshotCache
+{
+
+  private final CameraCapture capture;
+  private final Function<Float, FrameEncoder> encoderFactory;
+  private final float defaultQuality;
+  private final Timer encodeTimer;
+  private final FrameLatencyTracer.Stage dequeueStage;
+  private final FrameLatencyTracer.Stage encodeStage;
+  private final Scheduler encoderScheduler;
+
+  /**
+   * Snapshots by rendition, least recently requested first. Access must be synchronized on it
+   */
+  private final Map<Rendition, RenditionSnapshots> renditions;
+
+  /**
+   * Encoders of the encoder thread by quality, created on first use
+   */
+  private final Map<Float, FrameEncoder> encoders;
+  private final RenditionScaler scaler = new RenditionScaler();
+
+  /**
+   * @param capture
+   *          Camera capture
+   * @param encoderFactory
+   *          Creates the JPEG encoders of the encoder thread, for a quality
+   * @param defaultQuality
+   *          Quality of the renditions that do not set one
+   * @param maxRenditions
+   *          Number of renditions kept
+   * @param meterRegistry
+   *          Registry of the encode time
+   */
+  public SnapshotCache(CameraCapture capture, Function<Float, FrameEncoder> encoderFactory, float defaultQuality,
+      int maxRenditions, MeterRegistry meterRegistry)
+  {
+    this.capture = capture;
+    this.encoderFactory = encoderFactory;
+    this.defaultQuality = defaultQuality;
+    this.encodeTimer = Timer.builder("camera.frame.encode")
+        .description("Time encoding a frame")
+        .tag("camera", capture.getName())
+        .tag("encoder", "snapshot")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.dequeueStage = capture.getLatencyTracer().stage("snapshot.dequeue");
+    this.encodeStage = capture.getLatencyTracer().stage("snapshot.encode");
+    this.encoderScheduler = capture.getCpuAffinity().newSingle("Snapshot encoder " + capture.getName());
+    this.renditions = new LinkedHashMap<Rendition, RenditionSnapshots>(16, 0.75F, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Rendition, RenditionSnapshots> eldest)
+      {
+        return size() > maxRenditions;
+      }
+    };
+    this.encoders = new LinkedHashMap<Float, FrameEncoder>(16, 0.75F, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Float, FrameEncoder> eldest)
+      {
+        if (size() > maxRenditions)
+        {
+          eldest.getValue().close();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Snapshot of the whole frame.
+   *
+   * @param maxAgeMillis
+   *          Age of the last encoded snapshot that is still accepted, 0 for the most recent frame
+   * @return Mono of Snapshot.
+   */
+  public Mono<Snapshot> snapshot(long maxAgeMillis)
+  {
+    return snapshot(Rendition.ORIGINAL, maxAgeMillis);
+  }
+
+  /**
+   * Snapshot of the camera.
+   *
+   * @param rendition
+   *          Region, size and quality of the snapshot
+   * @param maxAgeMillis
+   *          Age of the last encoded snapshot of the rendition that is still accepted, 0 for the most recent frame
+   * @return Mono of Snapshot.
+   */
+  public Mono<Snapshot> snapshot(Rendition rendition, long maxAgeMillis)
+  {
+    return Mono.defer(() ->
+    {
+      RenditionSnapshots snapshots = snapshotsOf(rendition);
+      Snapshot snapshot = snapshots.latest.get();
+      if (snapshot != null && maxAgeMillis > 0 && snapshot.getAgeMillis() <= maxAgeMillis)
+      {
+        return Mono.just(snapshot);
+      }
+      return capture.latestFrame().flatMap(snapshots::encodeOnce);
+    });
+  }
+
+  /**
+   * Close the encoders, on the encoder thread, and stop it.
+   */
+  public void dispose()
+  {
+    EncoderThreads.closeAndDispose(encoderScheduler, () ->
+    {
+      encoders.values().forEach(FrameEncoder::close);
+      encoders.clear();
+    }, "the snapshots of camera " + capture.getName());
+  }
+
+  private RenditionSnapshots snapshotsOf(Rendition rendition)
+  {
+    synchronized (renditions)
+    {
+      return renditions.computeIfAbsent(rendition, RenditionSnapshots::new);
+    }
+  }
+
+  /**
+   * Runs on the encoder thread.
+   */
+  private byte[] encode(CapturedFrame frame, Rendition rendition) throws Exception
+  {
+    dequeueStage.record(frame.getCaptureNanos());
+    long encodeStartNanos = System.nanoTime();
+    FrameEncoder encoder = encoders.computeIfAbsent(rendition.getQuality(defaultQuality), encoderFactory);
+    byte[] jpeg = rendition.isFullFrame() ? encoder.encode(frame.getFrame())
+        : encoder.encode(scaler.scale(frame.getFrame(), rendition));
+    encodeTimer.record(System.nanoTime() - encodeStartNanos, TimeUnit.NANOSECONDS);
+    encodeStage.record(frame.getCaptureNanos());
+    return jpeg;
+  }
+
+  /**
+   * Snapshots of one rendition
+   */
+  private final class RenditionSnapshots
+  {
+
+    private final Rendition rendition;
+
+    /**
+     * Most recent encoded snapshot
+     */
+    private final AtomicReference<Snapshot> latest = new AtomicReference<>();
+
+    /**
+     * Most recent encoding, in progress or done
+     */
+    private final AtomicReference<Encoding> encoding = new AtomicReference<>();
+
+    private RenditionSnapshots(Rendition rendition)
+    {
+      this.rendition = rendition;
+    }
+
+    /**
+     * Join the encoding of the frame, or start it.
+     *
+     * @param frame
+     *          Retained frame, released here or once encoded
+     */
+    private Mono<Snapshot> encodeOnce(CapturedFrame frame)
+    {
+      Encoding current = encoding.get();
+      while (current == null || current.sequence < frame.getSequence())
+      {
+        Encoding next = new Encoding(frame);
+        if (encoding.compareAndSet(current, next))
+        {
+          return next.snapshot;
+        }
+        current = encoding.get();
+      }
+      // Already encoded or being encoded, or a newer frame is
+      frame.release();
+      return current.snapshot;
+    }
+
+    /**
+     * Runs on the encoder thread.
+     */
+    private Snapshot encode(CapturedFrame frame) throws Exception
+    {
+      // The frame is reused by the pool once released, its values are read while it is retained
+      long sequence = frame.getSequence();
+      long captureNanos = frame.getCaptureNanos();
+      long captureTimeMillis = frame.getCaptureTimeMillis();
+      byte[] jpeg;
+      try
+      {
+        jpeg = SnapshotCache.this.encode(frame, rendition);
+      }
+      finally
+      {
+        frame.release();
+      }
+      Snapshot snapshot = new Snapshot(sequence, captureNanos, captureTimeMillis, jpeg);
+      latest.accumulateAndGet(snapshot, (previous, next) ->
+          previous == null || previous.getSequence() < next.getSequence() ? next : previous);
+      return snapshot;
+    }
+
+    /**
+     * Encoding of one frame, shared by all its requests
+     */
+    private final class Encoding
+    {
+
+      private final long sequence;
+      private final Mono<Snapshot> snapshot;
+
+      private Encoding(CapturedFrame frame)
+      {
+        this.sequence = frame.getSequence();
+        this.snapshot = Mono.fromCallable(() -> encode(frame))
+            .subscribeOn(encoderScheduler)
+            // A failed encoding is not kept, the next request starts again from the latest frame
+            .doOnError(e -> encoding.compareAndSet(this, null))
+            .cache();
+      }
+    }
+  }
+}
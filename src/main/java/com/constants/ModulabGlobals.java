@@ -27,7 +27,29 @@ public class ModulabGlobals
   public static final String VIDEO_CONTENT = "video/";
   public static final String CONTENT_RANGE = "Content-Range";
   public static final String ACCEPT_RANGES = "Accept-Ranges";
+  public static final String CACHE_CONTROL = "Cache-Control";
+  public static final String NO_CACHE = "no-cache, no-store";
   public static final String BYTES = "bytes";
-  public static final int BYTE_RANGE = 1024;
+  public static final String IF_RANGE = "If-Range";
+  public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+  public static final String HLS_PLAYLIST_CONTENT = "application/vnd.apple.mpegurl";
+  public static final String HLS_LIVE_PLAYLIST_CACHE = "max-age=1";
+  public static final String HLS_VOD_PLAYLIST_CACHE = "max-age=60";
+  public static final String HLS_SEGMENT_CACHE = "public, max-age=31536000, immutable";
+  public static final String FRAME_SEQUENCE = "X-Frame-Sequence";
+  public static final String FRAME_CAPTURE_TIME = "X-Frame-Capture-Time";
+  public static final String FRAME_LATENCY = "X-Frame-Latency";
+  public static final int STREAM_CHUNK_SIZE = 1024 * 64;
   public static final int CHUNK_VIDEO_SIZE = 1024 * 10;
+  public static final int CAMERA_THREADS = 4;
+  public static final int CAMERA_QUEUED_TASKS = 64;
+  public static final int FRAME_RING_SIZE = 8;
+  public static final int FRAME_POOL_SIZE = 16;
+  public static final int RECORDER_FRAME_PREFETCH = 4;
+  public static final int MAX_RENDITIONS = 32;
+  public static final int BASLER_FRAME_QUEUE_SIZE = 4;
+  public static final long BASLER_STOP_TIMEOUT_MILLIS = 2000;
+  public static final long CAPTURE_STOP_TIMEOUT_MILLIS = 2000;
+  public static final long ENCODER_STOP_TIMEOUT_MILLIS = 2000;
+  public static final long BASLER_PROPERTY_CACHE_MILLIS = 1000;
 }
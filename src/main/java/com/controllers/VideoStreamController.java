@@ -1,36 +1,153 @@
 package com.controllers;
 
+import com.cameras.capture.CameraStatus;
+import com.cameras.capture.LatencyReport;
+import com.cameras.streaming.Rendition;
+import com.services.DvrService;
+import com.services.HlsService;
+import com.services.KeyframePosition;
 import com.services.VideoStreamService;
 
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 @RestController
 @RequestMapping(value =  "/video-stream")
 public class VideoStreamController {
 
   private final VideoStreamService videoStreamService;
+  private final HlsService hlsService;
+  private final DvrService dvrService;
 
-  public VideoStreamController(VideoStreamService videoStreamService) {
+  public VideoStreamController(VideoStreamService videoStreamService, HlsService hlsService, DvrService dvrService) {
     this.videoStreamService = videoStreamService;
+    this.hlsService = hlsService;
+    this.dvrService = dvrService;
   }
 
   @GetMapping("/file/{fileType}/{fileName}")
-  public Mono<ResponseEntity<byte[]>> streamVideo(ServerHttpResponse serverHttpResponse, @RequestHeader(value = "Range", required = false) String httpRangeList,
+  public Mono<Void> streamVideo(ServerWebExchange serverWebExchange,
       @PathVariable("fileType") String fileType,
       @PathVariable("fileName") String fileName) {
-    return Mono.just(videoStreamService.prepareContentFromVideo(fileName, fileType, httpRangeList));
+    return videoStreamService.prepareContentFromVideo(fileName, fileType, serverWebExchange);
+  }
+
+  @GetMapping("/file/{fileType}/{fileName}/seek")
+  public Mono<ResponseEntity<KeyframePosition>> seekVideo(@PathVariable("fileType") String fileType,
+      @PathVariable("fileName") String fileName,
+      @RequestParam("t") double seconds) {
+    return videoStreamService.seekVideo(fileName, fileType, seconds);
+  }
+
+  @GetMapping("/cameras")
+  public List<CameraStatus> cameras() {
+    return videoStreamService.cameras();
+  }
+
+  /**
+   * The camera endpoints without a camera id serve the default camera.
+   */
+  @GetMapping({"/camPhoto", "/camera/{id}/photo"})
+  public Mono<ResponseEntity<Flux<DataBuffer>>> streamWebcamPicture(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId,
+      @RequestParam(value = "maxAgeMs", defaultValue = "0") long maxAgeMs,
+      @RequestParam(value = "width", required = false) Integer width,
+      @RequestParam(value = "height", required = false) Integer height,
+      @RequestParam(value = "crop", required = false) String crop,
+      @RequestParam(value = "quality", required = false) Float quality) {
+    return videoStreamService.takePictureFromCamera(cameraId, rendition(width, height, crop, quality), maxAgeMs,
+        serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping({"/camVideo", "/camera/{id}/video"})
+  public Mono<ResponseEntity<Flux<DataBuffer>>> streamWebcamVideo(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId) {
+    return videoStreamService.caprureVideoFromCamera(cameraId, serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping({"/camMjpeg", "/camera/{id}/mjpeg"})
+  public ResponseEntity<Flux<DataBuffer>> streamWebcamMjpeg(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId,
+      @RequestParam(value = "width", required = false) Integer width,
+      @RequestParam(value = "height", required = false) Integer height,
+      @RequestParam(value = "crop", required = false) String crop,
+      @RequestParam(value = "quality", required = false) Float quality) {
+    return videoStreamService.streamMjpegFromCamera(cameraId, rendition(width, height, crop, quality),
+        serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping({"/camLive", "/camera/{id}/live"})
+  public ResponseEntity<Flux<DataBuffer>> streamWebcamLive(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId) {
+    return videoStreamService.streamLiveFromCamera(cameraId, serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping({"/latency", "/camera/{id}/latency"})
+  public ResponseEntity<LatencyReport> latency(@PathVariable(value = "id", required = false) String cameraId) {
+    return videoStreamService.latencyReport(cameraId);
+  }
+
+  @GetMapping({"/hls/camera/index.m3u8", "/camera/{id}/hls/index.m3u8"})
+  public Mono<ResponseEntity<Flux<DataBuffer>>> streamWebcamHlsPlaylist(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId) {
+    return hlsService.cameraPlaylist(cameraId, serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping({"/hls/camera/{segmentName}", "/camera/{id}/hls/{segmentName}"})
+  public Mono<ResponseEntity<Flux<DataBuffer>>> streamWebcamHlsSegment(ServerHttpResponse serverHttpResponse,
+      @PathVariable(value = "id", required = false) String cameraId,
+      @PathVariable("segmentName") String segmentName) {
+    return hlsService.cameraSegment(cameraId, segmentName, serverHttpResponse.bufferFactory());
+  }
+
+  @GetMapping("/hls/file/{fileType}/{fileName}/index.m3u8")
+  public Mono<ResponseEntity<Resource>> streamVideoHlsPlaylist(@PathVariable("fileType") String fileType,
+      @PathVariable("fileName") String fileName) {
+    return hlsService.filePlaylist(fileName, fileType);
+  }
+
+  @GetMapping("/hls/file/{fileType}/{fileName}/{segmentName}")
+  public Mono<ResponseEntity<Resource>> streamVideoHlsSegment(@PathVariable("fileType") String fileType,
+      @PathVariable("fileName") String fileName,
+      @PathVariable("segmentName") String segmentName) {
+    return hlsService.fileSegment(fileName, fileType, segmentName);
+  }
+
+  @PostMapping({"/dvr/record", "/camera/{id}/dvr/record"})
+  public ResponseEntity<Void> startRecording(@PathVariable(value = "id", required = false) String cameraId,
+      @RequestParam(value = "seconds", defaultValue = "60") long seconds) {
+    return dvrService.startRecording(cameraId, seconds);
+  }
+
+  @PostMapping({"/dvr/stop", "/camera/{id}/dvr/stop"})
+  public ResponseEntity<Void> stopRecording(@PathVariable(value = "id", required = false) String cameraId) {
+    return dvrService.stopRecording(cameraId);
   }
 
-  @GetMapping("/camPhoto")
-  public Mono<ResponseEntity<byte[]>> streamWebcamPicture() {
-    return Mono.just(videoStreamService.takePictureFromCamera());
+  @GetMapping({"/dvr/recordings", "/camera/{id}/dvr/recordings"})
+  public Mono<ResponseEntity<List<String>>> recordings(
+      @PathVariable(value = "id", required = false) String cameraId) {
+    return dvrService.recordings(cameraId);
   }
 
-  @GetMapping("/camVideo")
-  public Mono<ResponseEntity<byte[]>> streamWebcamVideo() {
-    return Mono.just(videoStreamService.caprureVideoFromCamera());
+  /**
+   * Rendition of the query parameters, 400 if they are invalid.
+   */
+  private static Rendition rendition(Integer width, Integer height, String crop, Float quality) {
+    try {
+      return Rendition.of(width, height, crop, quality);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+    }
   }
 }
@@ -0,0 +1,39 @@
+package com.services;
+
+import com.constants.ModulabGlobals;
+
+/**
+ * Satisfiable byte range of a file, both ends inclusive.
+ */
+public final class ByteRange {
+
+  private final long start;
+  private final long end;
+
+  public ByteRange(long start, long end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public long getEnd() {
+    return end;
+  }
+
+  public long getLength() {
+    return end - start + 1;
+  }
+
+  /**
+   * Content-Range header value.
+   *
+   * @param fileSize long.
+   * @return String.
+   */
+  public String toContentRange(long fileSize) {
+    return ModulabGlobals.BYTES + " " + start + "-" + end + "/" + fileSize;
+  }
+}
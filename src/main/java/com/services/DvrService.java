@@ -0,0 +1,76 @@
+package com.services;
+
+import com.cameras.capture.CameraPipeline;
+import com.cameras.capture.CameraRegistry;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Recordings of the cameras. The recorded files are served as video files, by their name.
+ */
+@Service
+public class DvrService {
+
+  private final CameraRegistry cameraRegistry;
+
+  public DvrService(CameraRegistry cameraRegistry) {
+    this.cameraRegistry = cameraRegistry;
+  }
+
+  /**
+   * Record a camera, starting with the pre-trigger buffer.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param seconds long, time recorded from now on.
+   * @return ResponseEntity, 202 once the recording is requested, 404 if there is no such camera.
+   */
+  public ResponseEntity<Void> startRecording(String cameraId, long seconds) {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    if (seconds < 1) {
+      return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    }
+    camera.getDvrRecorder().record(Duration.ofSeconds(seconds));
+    return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+  }
+
+  /**
+   * Stop the requested recording of a camera, the continuous recording goes on.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @return ResponseEntity, 404 if there is no such camera.
+   */
+  public ResponseEntity<Void> stopRecording(String cameraId) {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    camera.getDvrRecorder().stopRecording();
+    return ResponseEntity.status(HttpStatus.ACCEPTED).build();
+  }
+
+  /**
+   * Names of the recorded files of a camera, oldest first.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @return ResponseEntity, 404 if there is no such camera.
+   */
+  public Mono<ResponseEntity<List<String>>> recordings(String cameraId) {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    return Mono.fromCallable(camera.getDvrRecorder()::getRecordings)
+        .subscribeOn(Schedulers.boundedElastic())
+        .map(ResponseEntity::ok);
+  }
+}
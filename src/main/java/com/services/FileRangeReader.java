@@ -0,0 +1,199 @@
+package com.services;
+
+import com.constants.ModulabGlobals;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import reactor.netty.NettyPipeline;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams byte ranges of a file without loading the file in memory. The small ranges the {@link SegmentCache} holds
+ * are served from cached segments, the other ranges are read from the file.
+ */
+@Component
+public class FileRangeReader {
+
+  private final SegmentCache segmentCache;
+
+  public FileRangeReader(SegmentCache segmentCache) {
+    this.segmentCache = segmentCache;
+  }
+
+  /**
+   * Write a byte range of the file to the response. The ranges the cache does not hold use zero-copy transfer from
+   * the channel shared through the catalog when the connection supports it: the file is not opened again, and the
+   * bytes sent are those of the catalog entry the headers were computed from.
+   *
+   * @param file     VideoFile.
+   * @param position long, first byte to write.
+   * @param count    long, number of bytes to write.
+   * @param response ServerHttpResponse.
+   * @return Mono completed when the range has been written.
+   */
+  public Mono<Void> write(VideoFile file, long position, long count, ServerHttpResponse response) {
+    if (!segmentCache.isCached(count)) {
+      HttpServerResponse nettyResponse = zeroCopyResponse(response);
+      if (nettyResponse != null) {
+        // The status and the headers are committed first, the file region then goes straight to the connection
+        return response.setComplete()
+            .then(nettyResponse.sendUsing(file::retain,
+                (connection, retained) -> new SharedFileRegion(retained.getChannel(), position, count),
+                VideoFile::release)
+                .then());
+      }
+    }
+    return response.writeWith(read(file, position, count, response.bufferFactory()));
+  }
+
+  /**
+   * Read a byte range of the file as a stream of buffers. Only the requested bytes are read, one buffer per
+   * downstream request, from the channel shared through the catalog.
+   *
+   * @param file          VideoFile.
+   * @param position      long, first byte to read.
+   * @param count         long, number of bytes to read.
+   * @param bufferFactory DataBufferFactory.
+   * @return Flux of DataBuffer.
+   */
+  public Flux<DataBuffer> read(VideoFile file, long position, long count, DataBufferFactory bufferFactory) {
+    return Flux.using(file::retain,
+        retained -> segmentCache.isCached(count)
+            ? readCached(retained, position, count, bufferFactory)
+            : read(retained.getChannel(), position, count, bufferFactory),
+        VideoFile::release);
+  }
+
+  /**
+   * Read a byte range through the segment cache. The emitted buffers wrap the cached segments, nothing is copied.
+   */
+  private Flux<DataBuffer> readCached(VideoFile file, long position, long count, DataBufferFactory bufferFactory) {
+    long end = position + count;
+    int segmentSize = segmentCache.getSegmentSize();
+    return Flux.<DataBuffer, Long>generate(() -> position, (next, sink) -> {
+      if (next >= end) {
+        sink.complete();
+        return next;
+      }
+      try {
+        long segmentIndex = next / segmentSize;
+        ByteBuffer segment = segmentCache.get(file.getPath(), file.getLastModified(), segmentIndex, file.getChannel());
+        int offset = (int) (next - segmentIndex * segmentSize);
+        int length = (int) Math.min(segment.limit() - offset, end - next);
+        if (length <= 0) {
+          sink.complete();
+          return end;
+        }
+        segment.position(offset);
+        segment.limit(offset + length);
+        sink.next(bufferFactory.wrap(segment.slice()));
+        return next + length;
+      } catch (IOException e) {
+        sink.error(e);
+        return end;
+      }
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Reactor Netty response a file region can be written to: without TLS or compression, which need the bytes in
+   * memory, and over HTTP/1.1, as the HTTP/2 frame codec only writes buffers.
+   *
+   * @return HttpServerResponse, null when the range must be read.
+   */
+  private static HttpServerResponse zeroCopyResponse(ServerHttpResponse response) {
+    if (!(response instanceof AbstractServerHttpResponse)) {
+      return null;
+    }
+    Object nativeResponse = ((AbstractServerHttpResponse) response).getNativeResponse();
+    if (!(nativeResponse instanceof HttpServerResponse) || !(nativeResponse instanceof Connection)) {
+      return null;
+    }
+    Channel channel = ((Connection) nativeResponse).channel();
+    ChannelPipeline pipeline = channel.pipeline();
+    if (pipeline.get(NettyPipeline.SslHandler) != null || pipeline.get(NettyPipeline.CompressionHandler) != null) {
+      return null;
+    }
+    if (channel instanceof Http2StreamChannel || pipeline.get(NettyPipeline.H2ToHttp11Codec) != null
+        || pipeline.get(NettyPipeline.H2MultiplexHandler) != null) {
+      return null;
+    }
+    return (HttpServerResponse) nativeResponse;
+  }
+
+  /**
+   * Read a byte range from an open channel. The channel is not closed and may be shared, reads are positional.
+   *
+   * @param channel       FileChannel.
+   * @param position      long, first byte to read.
+   * @param count         long, number of bytes to read.
+   * @param bufferFactory DataBufferFactory.
+   * @return Flux of DataBuffer.
+   */
+  public Flux<DataBuffer> read(FileChannel channel, long position, long count, DataBufferFactory bufferFactory) {
+    long end = position + count;
+    return Flux.<DataBuffer, Long>generate(() -> position, (next, sink) -> {
+      if (next >= end) {
+        sink.complete();
+        return next;
+      }
+      int size = (int) Math.min(ModulabGlobals.STREAM_CHUNK_SIZE, end - next);
+      DataBuffer dataBuffer = bufferFactory.allocateBuffer(size);
+      try {
+        ByteBuffer byteBuffer = dataBuffer.asByteBuffer(0, size);
+        int read = 0;
+        while (read < size) {
+          int n = channel.read(byteBuffer, next + read);
+          if (n < 0) {
+            break;
+          }
+          read += n;
+        }
+        if (read == 0) {
+          DataBufferUtils.release(dataBuffer);
+          sink.complete();
+          return end;
+        }
+        dataBuffer.writePosition(read);
+        sink.next(dataBuffer);
+        return next + read;
+      } catch (IOException e) {
+        DataBufferUtils.release(dataBuffer);
+        sink.error(e);
+        return end;
+      }
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Region of a channel shared through the catalog. Netty closes the channel of a region once it is written, this one
+   * belongs to the catalog and is only released with the file.
+   */
+  private static final class SharedFileRegion extends DefaultFileRegion {
+
+    private SharedFileRegion(FileChannel channel, long position, long count) {
+      super(channel, position, count);
+    }
+
+    @Override
+    protected void deallocate() {
+      // The channel is released with the catalog entry
+    }
+  }
+}
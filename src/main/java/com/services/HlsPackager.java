@@ -0,0 +1,170 @@
+package com.services;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Packages the video files of the catalog as HLS VOD: fMP4 segments and a playlist, remuxed without re-encoding.
+ * A file is packaged once per version, on the first request, and the result is kept on disk until the file is
+ * modified or removed.
+ */
+@Component
+public class HlsPackager {
+
+  public static final String PLAYLIST = "index.m3u8";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final Path outputDir;
+  private final double segmentDuration;
+
+  /**
+   * Packaging in progress or done, by file version
+   */
+  private final ConcurrentMap<String, Mono<Path>> packages = new ConcurrentHashMap<>();
+
+  public HlsPackager(@Value("${video-stream.hls.vod-dir:}") String outputDir,
+      @Value("${video-stream.hls.segment-duration:2}") double segmentDuration) {
+    this.outputDir = outputDir.isEmpty()
+        ? Paths.get(System.getProperty("java.io.tmpdir"), "video-stream-hls")
+        : Paths.get(outputDir);
+    this.segmentDuration = segmentDuration;
+  }
+
+  /**
+   * Version of the file used in the names of its segments, so a segment name never designates two contents.
+   *
+   * @param file VideoFile.
+   * @return String.
+   */
+  public static String getVersion(VideoFile file) {
+    return file.getETag().replace("\"", "");
+  }
+
+  /**
+   * Directory holding the playlist and the segments of the file, packaged if not already done.
+   *
+   * @param file VideoFile.
+   * @return Mono of the directory.
+   */
+  public Mono<Path> getPackage(VideoFile file) {
+    return packages.computeIfAbsent(getKey(file), k -> Mono.fromCallable(() -> packageFile(file))
+        .subscribeOn(Schedulers.boundedElastic())
+        .doOnError(e -> packages.remove(k))
+        .cache());
+  }
+
+  /**
+   * Forget the package of a version of a file that has been modified or removed, and delete it once its packaging,
+   * if in progress, is done.
+   *
+   * @param file VideoFile, the previous version.
+   */
+  public void invalidate(VideoFile file) {
+    Path dir = getDirectory(file);
+    Mono<Path> packaging = packages.remove(getKey(file));
+    if (packaging == null) {
+      delete(dir);
+    } else {
+      packaging.subscribe(packaged -> delete(dir), e -> delete(dir));
+    }
+  }
+
+  private static String getKey(VideoFile file) {
+    return file.getName() + "/" + getVersion(file);
+  }
+
+  private Path getDirectory(VideoFile file) {
+    return outputDir.resolve(file.getName()).resolve(getVersion(file));
+  }
+
+  private Path packageFile(VideoFile file) throws IOException {
+    Path dir = getDirectory(file);
+    if (Files.exists(dir.resolve(PLAYLIST))) {
+      return dir;
+    }
+    deletePreviousVersions(file);
+    Path workDir = outputDir.resolve(file.getName()).resolve(getVersion(file) + ".tmp");
+    FileSystemUtils.deleteRecursively(workDir);
+    Files.createDirectories(workDir);
+    long start = System.nanoTime();
+    remux(file, workDir);
+    Files.move(workDir, dir, StandardCopyOption.ATOMIC_MOVE);
+    logger.info("{} packaged as HLS in {} ms", file.getName(), (System.nanoTime() - start) / 1000000);
+    return dir;
+  }
+
+  /**
+   * Delete the packages of the other versions of the file, left by a previous run.
+   */
+  private void deletePreviousVersions(VideoFile file) throws IOException {
+    Path fileDir = outputDir.resolve(file.getName());
+    if (!Files.isDirectory(fileDir)) {
+      return;
+    }
+    String version = getVersion(file);
+    try (DirectoryStream<Path> versions = Files.newDirectoryStream(fileDir,
+        path -> !path.getFileName().toString().equals(version))) {
+      for (Path path : versions) {
+        delete(path);
+      }
+    }
+  }
+
+  private void delete(Path dir) {
+    try {
+      if (FileSystemUtils.deleteRecursively(dir)) {
+        logger.info("HLS package {} deleted", dir);
+      }
+    } catch (IOException e) {
+      logger.warn("Cannot delete the HLS package {}", dir, e);
+    }
+  }
+
+  private void remux(VideoFile file, Path dir) throws IOException {
+    String version = getVersion(file);
+    FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(file.getPath().toFile());
+    FFmpegFrameRecorder recorder = null;
+    try {
+      grabber.start();
+      recorder = new FFmpegFrameRecorder(dir.resolve(PLAYLIST).toFile(), grabber.getImageWidth(),
+          grabber.getImageHeight(), grabber.getAudioChannels());
+      recorder.setFormat("hls");
+      recorder.setOption("hls_time", String.format(Locale.ROOT, "%.3f", segmentDuration));
+      recorder.setOption("hls_playlist_type", "vod");
+      recorder.setOption("hls_segment_type", "fmp4");
+      recorder.setOption("hls_fmp4_init_filename", version + "-init.mp4");
+      recorder.setOption("hls_segment_filename", dir.resolve(version + "-%d.m4s").toString());
+      recorder.start(grabber.getFormatContext());
+      AVPacket packet;
+      while ((packet = grabber.grabPacket()) != null) {
+        recorder.recordPacket(packet);
+      }
+      recorder.stop();
+      grabber.stop();
+    } finally {
+      if (recorder != null) {
+        recorder.release();
+      }
+      grabber.release();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package com.services;
+
+import com.cameras.capture.CameraPipeline;
+import com.cameras.capture.CameraRegistry;
+import com.constants.ModulabGlobals;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HLS playlists and segments of the cameras and of the video files. Segment names are unique, so segments are served
+ * as immutable and can be cached by the players and the CDN; only the playlists have to be fetched again.
+ */
+@Service
+public class HlsService {
+
+  private static final Pattern CAMERA_INIT = Pattern.compile("init-([0-9]{1,18})\\.mp4");
+  private static final Pattern CAMERA_SEGMENT = Pattern.compile("([0-9]{1,18})\\.m4s");
+  private static final Pattern FILE_SEGMENT = Pattern.compile("([0-9a-f]+-[0-9a-f]+)-(init\\.mp4|[0-9]+\\.m4s)");
+
+  private final VideoCatalog videoCatalog;
+  private final HlsPackager hlsPackager;
+  private final CameraRegistry cameraRegistry;
+
+  public HlsService(VideoCatalog videoCatalog, HlsPackager hlsPackager, CameraRegistry cameraRegistry) {
+    this.videoCatalog = videoCatalog;
+    this.hlsPackager = hlsPackager;
+    this.cameraRegistry = cameraRegistry;
+  }
+
+  /**
+   * Rolling playlist of a camera, 503 if the first segment is not ready in time.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera.
+   */
+  public Mono<ResponseEntity<Flux<DataBuffer>>> cameraPlaylist(String cameraId, DataBufferFactory bufferFactory) {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    return camera.getHlsSegmenter().playlist()
+        .map(playlist -> ResponseEntity.status(HttpStatus.OK)
+            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.HLS_PLAYLIST_CONTENT)
+            .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.HLS_LIVE_PLAYLIST_CACHE)
+            .body(Flux.just(bufferFactory.wrap(playlist.getBytes(StandardCharsets.UTF_8)))))
+        .onErrorResume(TimeoutException.class,
+            e -> Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()));
+  }
+
+  /**
+   * Init segment or media segment of a camera, 404 once it has left the ring.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param segmentName String.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera.
+   */
+  public Mono<ResponseEntity<Flux<DataBuffer>>> cameraSegment(String cameraId, String segmentName,
+      DataBufferFactory bufferFactory) {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    Matcher init = CAMERA_INIT.matcher(segmentName);
+    Matcher segment = CAMERA_SEGMENT.matcher(segmentName);
+    Mono<byte[]> data;
+    if (init.matches()) {
+      data = camera.getHlsSegmenter().initSegment(Long.parseLong(init.group(1)));
+    } else if (segment.matches()) {
+      data = camera.getHlsSegmenter().segment(Long.parseLong(segment.group(1)));
+    } else {
+      data = Mono.empty();
+    }
+    return data
+        .map(bytes -> ResponseEntity.status(HttpStatus.OK)
+            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + "mp4")
+            .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.HLS_SEGMENT_CACHE)
+            .body(Flux.just(bufferFactory.wrap(bytes))))
+        .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+  }
+
+  /**
+   * VOD playlist of a video file, packaged on the first request.
+   *
+   * @param fileName String.
+   * @param fileType String.
+   * @return ResponseEntity.
+   */
+  public Mono<ResponseEntity<Resource>> filePlaylist(String fileName, String fileType) {
+    VideoFile file = videoCatalog.get(fileName + "." + fileType);
+    if (file == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    return hlsPackager.getPackage(file)
+        .map(dir -> ResponseEntity.status(HttpStatus.OK)
+            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.HLS_PLAYLIST_CONTENT)
+            .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.HLS_VOD_PLAYLIST_CACHE)
+            .body(new FileSystemResource(dir.resolve(HlsPackager.PLAYLIST))));
+  }
+
+  /**
+   * Segment of the VOD playlist of a video file, 404 if it belongs to a previous version of the file.
+   *
+   * @param fileName String.
+   * @param fileType String.
+   * @param segmentName String.
+   * @return ResponseEntity.
+   */
+  public Mono<ResponseEntity<Resource>> fileSegment(String fileName, String fileType, String segmentName) {
+    VideoFile file = videoCatalog.get(fileName + "." + fileType);
+    Matcher segment = FILE_SEGMENT.matcher(segmentName);
+    if (file == null || !segment.matches() || !segment.group(1).equals(HlsPackager.getVersion(file))) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    return hlsPackager.getPackage(file)
+        .map(dir -> dir.resolve(segmentName))
+        .filter(Files::isRegularFile)
+        .map(path -> ResponseEntity.status(HttpStatus.OK)
+            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + "mp4")
+            .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.HLS_SEGMENT_CACHE)
+            .<Resource>body(new FileSystemResource(path)))
+        .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+  }
+}
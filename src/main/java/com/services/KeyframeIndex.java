@@ -0,0 +1,71 @@
+package com.services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keyframes of the video stream of a file: presentation time from the start of the file and byte offset of each
+ * keyframe packet, in time order.
+ */
+public final class KeyframeIndex {
+
+  private static final int MAGIC = 0x4B464931;
+
+  private final long[] timesMicros;
+  private final long[] offsets;
+
+  public KeyframeIndex(long[] timesMicros, long[] offsets) {
+    this.timesMicros = timesMicros;
+    this.offsets = offsets;
+  }
+
+  public int size() {
+    return timesMicros.length;
+  }
+
+  /**
+   * Last keyframe at or before the time, the first keyframe if the time is before it.
+   *
+   * @param timeMicros long.
+   * @return Position of the keyframe, null when the index is empty.
+   */
+  public KeyframePosition floor(long timeMicros) {
+    if (timesMicros.length == 0) {
+      return null;
+    }
+    int i = Arrays.binarySearch(timesMicros, timeMicros);
+    if (i < 0) {
+      i = Math.max(0, -i - 2);
+    }
+    // Keyframes sharing a time resolve to the first one
+    while (i > 0 && timesMicros[i - 1] == timesMicros[i]) {
+      i--;
+    }
+    return new KeyframePosition(timesMicros[i], offsets[i]);
+  }
+
+  void write(DataOutputStream output) throws IOException {
+    output.writeInt(MAGIC);
+    output.writeInt(timesMicros.length);
+    for (int i = 0; i < timesMicros.length; i++) {
+      output.writeLong(timesMicros[i]);
+      output.writeLong(offsets[i]);
+    }
+  }
+
+  static KeyframeIndex read(DataInputStream input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a keyframe index");
+    }
+    int size = input.readInt();
+    long[] timesMicros = new long[size];
+    long[] offsets = new long[size];
+    for (int i = 0; i < size; i++) {
+      timesMicros[i] = input.readLong();
+      offsets[i] = input.readLong();
+    }
+    return new KeyframeIndex(timesMicros, offsets);
+  }
+}
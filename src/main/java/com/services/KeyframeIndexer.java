@@ -0,0 +1,200 @@
+package com.services;
+
+import org.bytedeco.ffmpeg.avcodec.AVPacket;
+import org.bytedeco.ffmpeg.avformat.AVFormatContext;
+import org.bytedeco.ffmpeg.avformat.AVStream;
+import org.bytedeco.ffmpeg.avutil.AVRational;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keyframe indexes of the video files. The index of a file is built once per version, on the first seek, by reading
+ * the packets of the file without decoding them. It is persisted in the '.index' folder next to the file and loaded
+ * from there on the next runs; when the folder cannot be written the index is only kept in memory.
+ */
+@Component
+public class KeyframeIndexer {
+
+  public static final String INDEX_DIR = ".index";
+  private static final String EXTENSION = ".idx";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  /**
+   * Indexing in progress or done, by file version
+   */
+  private final ConcurrentMap<String, Mono<KeyframeIndex>> indexes = new ConcurrentHashMap<>();
+
+  /**
+   * Keyframe index of the file, loaded or built if not already done.
+   *
+   * @param file VideoFile.
+   * @return Mono of the index.
+   */
+  public Mono<KeyframeIndex> getIndex(VideoFile file) {
+    return indexes.computeIfAbsent(getKey(file), k -> Mono.fromCallable(() -> loadOrBuild(file))
+        .subscribeOn(Schedulers.boundedElastic())
+        .doOnError(e -> indexes.remove(k))
+        .cache());
+  }
+
+  /**
+   * Forget the index of a version of a file that has been modified or removed, and delete it once its indexing, if in
+   * progress, is done.
+   *
+   * @param file VideoFile, the previous version.
+   */
+  public void invalidate(VideoFile file) {
+    Path indexPath = getIndexPath(file);
+    Mono<KeyframeIndex> indexing = indexes.remove(getKey(file));
+    if (indexing == null) {
+      delete(indexPath);
+    } else {
+      indexing.subscribe(index -> delete(indexPath), e -> delete(indexPath));
+    }
+  }
+
+  private static String getKey(VideoFile file) {
+    return file.getName() + "/" + HlsPackager.getVersion(file);
+  }
+
+  private static Path getIndexPath(VideoFile file) {
+    return file.getPath().resolveSibling(INDEX_DIR)
+        .resolve(file.getName() + "." + HlsPackager.getVersion(file) + EXTENSION);
+  }
+
+  private void delete(Path indexPath) {
+    try {
+      Files.deleteIfExists(indexPath);
+    } catch (IOException e) {
+      logger.warn("Cannot delete the keyframe index {}", indexPath, e);
+    }
+  }
+
+  private KeyframeIndex loadOrBuild(VideoFile file) throws IOException {
+    Path indexPath = getIndexPath(file);
+    if (Files.isRegularFile(indexPath)) {
+      try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+        return KeyframeIndex.read(input);
+      } catch (IOException e) {
+        logger.warn("Cannot read the keyframe index {}, rebuilding it", indexPath, e);
+      }
+    }
+    long start = System.nanoTime();
+    KeyframeIndex index = build(file);
+    logger.info("{} indexed, {} keyframes in {} ms", file.getName(), index.size(), (System.nanoTime() - start) / 1000000);
+    try {
+      persist(file, index, indexPath);
+    } catch (IOException e) {
+      logger.warn("Cannot write the keyframe index {}, kept in memory", indexPath, e);
+    }
+    return index;
+  }
+
+  private KeyframeIndex build(VideoFile file) throws IOException {
+    FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(file.getPath().toFile());
+    try {
+      grabber.start();
+      AVFormatContext context = grabber.getFormatContext();
+      int videoStream = -1;
+      for (int i = 0; i < context.nb_streams(); i++) {
+        if (context.streams(i).codecpar().codec_type() == avutil.AVMEDIA_TYPE_VIDEO) {
+          videoStream = i;
+          break;
+        }
+      }
+      if (videoStream < 0) {
+        return new KeyframeIndex(new long[0], new long[0]);
+      }
+      AVStream stream = context.streams(videoStream);
+      AVRational timeBase = stream.time_base();
+      long startTime = stream.start_time() == avutil.AV_NOPTS_VALUE ? 0 : stream.start_time();
+      long[] timesMicros = new long[64];
+      long[] offsets = new long[64];
+      int size = 0;
+      AVPacket packet;
+      while ((packet = grabber.grabPacket()) != null) {
+        if (packet.stream_index() != videoStream || (packet.flags() & avcodec.AV_PKT_FLAG_KEY) == 0
+            || packet.pos() < 0) {
+          continue;
+        }
+        long timestamp = packet.pts() != avutil.AV_NOPTS_VALUE ? packet.pts() : packet.dts();
+        if (timestamp == avutil.AV_NOPTS_VALUE) {
+          continue;
+        }
+        if (size == timesMicros.length) {
+          timesMicros = Arrays.copyOf(timesMicros, size * 2);
+          offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        timesMicros[size] = (long) ((timestamp - startTime) * 1e6 * timeBase.num() / timeBase.den());
+        offsets[size] = packet.pos();
+        size++;
+      }
+      grabber.stop();
+      return sorted(Arrays.copyOf(timesMicros, size), Arrays.copyOf(offsets, size));
+    } finally {
+      grabber.release();
+    }
+  }
+
+  /**
+   * Keyframes in time order, the packets are read in file order.
+   */
+  private static KeyframeIndex sorted(long[] timesMicros, long[] offsets) {
+    Integer[] order = new Integer[timesMicros.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(timesMicros[a], timesMicros[b]));
+    long[] sortedTimes = new long[order.length];
+    long[] sortedOffsets = new long[order.length];
+    for (int i = 0; i < order.length; i++) {
+      sortedTimes[i] = timesMicros[order[i]];
+      sortedOffsets[i] = offsets[order[i]];
+    }
+    return new KeyframeIndex(sortedTimes, sortedOffsets);
+  }
+
+  /**
+   * Write the index and delete the indexes of the previous versions of the file.
+   */
+  private void persist(VideoFile file, KeyframeIndex index, Path indexPath) throws IOException {
+    Path directory = indexPath.getParent();
+    Files.createDirectories(directory);
+    String prefix = file.getName() + ".";
+    try (DirectoryStream<Path> previous = Files.newDirectoryStream(directory,
+        path -> path.getFileName().toString().startsWith(prefix) && path.getFileName().toString().endsWith(EXTENSION))) {
+      for (Path path : previous) {
+        Files.deleteIfExists(path);
+      }
+    }
+    Path tmp = Files.createTempFile(directory, file.getName(), ".tmp");
+    try {
+      try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        index.write(output);
+      }
+      Files.move(tmp, indexPath, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
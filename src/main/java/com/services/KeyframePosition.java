@@ -0,0 +1,38 @@
+package com.services;
+
+import com.constants.ModulabGlobals;
+
+/**
+ * Keyframe found for a seek: where to start the range request.
+ */
+public final class KeyframePosition {
+
+  private final long timeMicros;
+  private final long offset;
+
+  public KeyframePosition(long timeMicros, long offset) {
+    this.timeMicros = timeMicros;
+    this.offset = offset;
+  }
+
+  /**
+   * @return double, time of the keyframe in seconds from the start of the file.
+   */
+  public double getTime() {
+    return timeMicros / 1e6;
+  }
+
+  /**
+   * @return long, byte offset of the keyframe in the file.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return String, Range header reading the file from the keyframe on.
+   */
+  public String getRange() {
+    return ModulabGlobals.BYTES + "=" + offset + "-";
+  }
+}
@@ -0,0 +1,156 @@
+package com.services;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Bridges blocking code writing to an {@link OutputStream} (ImageIO, FFmpegFrameRecorder...) to a {@link Flux} of
+ * {@link DataBuffer}. The writer runs on the given scheduler and blocks while the subscriber has no pending demand, so
+ * a slow client only holds a few chunks in memory.
+ */
+public final class OutputStreamPublisher {
+
+  private OutputStreamPublisher() {
+  }
+
+  /**
+   * Blocking code producing the content.
+   */
+  @FunctionalInterface
+  public interface Writer {
+
+    void write(ChunkedOutputStream outputStream) throws Exception;
+  }
+
+  /**
+   * Publish the content written by the writer.
+   *
+   * @param writer        Writer, executed once per subscription.
+   * @param bufferFactory DataBufferFactory.
+   * @param scheduler     Scheduler running the writer.
+   * @param chunkSize     int, size of the emitted buffers.
+   * @return Flux of DataBuffer.
+   */
+  public static Flux<DataBuffer> publish(Writer writer, DataBufferFactory bufferFactory, Scheduler scheduler, int chunkSize) {
+    return Flux.create(sink -> {
+      ChunkedOutputStream outputStream = new ChunkedOutputStream(sink, bufferFactory, chunkSize);
+      sink.onRequest(outputStream::request);
+      sink.onDispose(outputStream::cancel);
+      scheduler.schedule(() -> {
+        try {
+          writer.write(outputStream);
+          outputStream.flush();
+          sink.complete();
+        } catch (Exception e) {
+          if (!outputStream.isCancelled()) {
+            sink.error(e);
+          }
+        }
+      });
+    }, FluxSink.OverflowStrategy.BUFFER);
+  }
+
+  /**
+   * Output stream emitting a buffer every time a chunk is filled, waiting for downstream demand before doing so.
+   */
+  public static final class ChunkedOutputStream extends OutputStream {
+
+    private final FluxSink<DataBuffer> sink;
+    private final DataBufferFactory bufferFactory;
+    private final byte[] chunk;
+    private int chunkPosition;
+    private long count;
+    private long demand;
+    private boolean cancelled;
+
+    private ChunkedOutputStream(FluxSink<DataBuffer> sink, DataBufferFactory bufferFactory, int chunkSize) {
+      this.sink = sink;
+      this.bufferFactory = bufferFactory;
+      this.chunk = new byte[chunkSize];
+    }
+
+    /**
+     * Number of bytes written so far.
+     *
+     * @return long.
+     */
+    public long getCount() {
+      return count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (chunkPosition == chunk.length) {
+        emit();
+      }
+      chunk[chunkPosition++] = (byte) b;
+      count++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (chunkPosition == chunk.length) {
+          emit();
+        }
+        int n = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(bytes, offset, chunk, chunkPosition, n);
+        chunkPosition += n;
+        offset += n;
+        length -= n;
+        count += n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (chunkPosition > 0) {
+        emit();
+      }
+    }
+
+    private void emit() throws IOException {
+      awaitDemand();
+      DataBuffer dataBuffer = bufferFactory.allocateBuffer(chunkPosition);
+      dataBuffer.write(chunk, 0, chunkPosition);
+      chunkPosition = 0;
+      sink.next(dataBuffer);
+    }
+
+    private synchronized void awaitDemand() throws IOException {
+      try {
+        while (demand == 0 && !cancelled) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for demand");
+      }
+      if (cancelled) {
+        throw new IOException("Subscriber cancelled");
+      }
+      demand--;
+    }
+
+    private synchronized void request(long n) {
+      demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+      notifyAll();
+    }
+
+    private synchronized void cancel() {
+      cancelled = true;
+      notifyAll();
+    }
+
+    private synchronized boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package com.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of fixed size, aligned file segments held in direct buffers, out of the Java heap. The total size of the
+ * cached segments never exceeds the configured byte budget. Only ranges up to a maximum size go through the cache:
+ * larger ranges, e.g. a whole recording played from the start, are mostly read once and would evict the hot segments.
+ */
+@Component
+public class SegmentCache implements MeterBinder {
+
+  private final boolean enabled;
+  private final int segmentSize;
+  private final long maxBytes;
+  private final long maxRange;
+
+  /**
+   * Segments in access order, the eldest entry is the least recently used. Access must be synchronized on the map
+   */
+  private final LinkedHashMap<SegmentKey, ByteBuffer> segments = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public SegmentCache(@Value("${video-stream.cache.enabled:true}") boolean enabled,
+      @Value("${video-stream.cache.segment-size:1048576}") int segmentSize,
+      @Value("${video-stream.cache.max-bytes:268435456}") long maxBytes,
+      @Value("${video-stream.cache.max-range:4194304}") long maxRange) {
+    this.enabled = enabled && maxBytes >= segmentSize;
+    this.segmentSize = segmentSize;
+    this.maxBytes = maxBytes;
+    this.maxRange = maxRange;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param count long, size of the range in bytes.
+   * @return true iff a range of this size is served through the cache.
+   */
+  public boolean isCached(long count) {
+    return enabled && count <= maxRange;
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  /**
+   * Get a segment of the file, reading it from the channel when it is not cached.
+   *
+   * @param path         Path, identifies the file.
+   * @param version      long, changes when the file is modified (e.g. last modified time).
+   * @param segmentIndex long, the segment starts at segmentIndex * segmentSize.
+   * @param channel      FileChannel, used on a miss.
+   * @return ByteBuffer with the segment content, position and limit can be freely modified by the caller.
+   * @throws IOException exception.
+   */
+  public ByteBuffer get(Path path, long version, long segmentIndex, FileChannel channel) throws IOException {
+    SegmentKey key = new SegmentKey(path, version, segmentIndex);
+    synchronized (segments) {
+      ByteBuffer segment = segments.get(key);
+      if (segment != null) {
+        hits.incrementAndGet();
+        return segment.duplicate();
+      }
+    }
+    misses.incrementAndGet();
+    ByteBuffer segment = load(segmentIndex, channel);
+    synchronized (segments) {
+      ByteBuffer previous = segments.put(key, segment);
+      if (previous != null) {
+        cachedBytes -= previous.capacity();
+      }
+      cachedBytes += segment.capacity();
+      evict();
+    }
+    return segment.duplicate();
+  }
+
+  /**
+   * Remove all the segments of the file.
+   *
+   * @param path Path.
+   */
+  public void invalidate(Path path) {
+    synchronized (segments) {
+      Iterator<Map.Entry<SegmentKey, ByteBuffer>> iterator = segments.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<SegmentKey, ByteBuffer> entry = iterator.next();
+        if (entry.getKey().path.equals(path)) {
+          cachedBytes -= entry.getValue().capacity();
+          iterator.remove();
+        }
+      }
+    }
+  }
+
+  private ByteBuffer load(long segmentIndex, FileChannel channel) throws IOException {
+    long position = segmentIndex * segmentSize;
+    int length = (int) Math.max(0, Math.min(segmentSize, channel.size() - position));
+    ByteBuffer segment = ByteBuffer.allocateDirect(length);
+    while (segment.hasRemaining()) {
+      if (channel.read(segment, position + segment.position()) < 0) {
+        break;
+      }
+    }
+    segment.flip();
+    return segment;
+  }
+
+  private void evict() {
+    Iterator<ByteBuffer> iterator = segments.values().iterator();
+    while (cachedBytes > maxBytes && iterator.hasNext()) {
+      cachedBytes -= iterator.next().capacity();
+      iterator.remove();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private long getCachedBytes() {
+    synchronized (segments) {
+      return cachedBytes;
+    }
+  }
+
+  private int getCachedSegments() {
+    synchronized (segments) {
+      return segments.size();
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("video.cache.gets", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .description("Segment reads served from the cache")
+        .register(registry);
+    FunctionCounter.builder("video.cache.gets", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .description("Segment reads served from the file")
+        .register(registry);
+    FunctionCounter.builder("video.cache.evictions", evictions, AtomicLong::get)
+        .description("Segments evicted to stay within the byte budget")
+        .register(registry);
+    Gauge.builder("video.cache.size", this, SegmentCache::getCachedBytes)
+        .baseUnit("bytes")
+        .description("Bytes held by cached segments")
+        .register(registry);
+    Gauge.builder("video.cache.segments", this, SegmentCache::getCachedSegments)
+        .description("Number of cached segments")
+        .register(registry);
+    Gauge.builder("video.cache.max", this, cache -> cache.maxBytes)
+        .baseUnit("bytes")
+        .description("Byte budget of the cache")
+        .register(registry);
+  }
+
+  private static final class SegmentKey {
+
+    private final Path path;
+    private final long version;
+    private final long index;
+
+    private SegmentKey(Path path, long version, long index) {
+      this.path = path;
+      this.version = version;
+      this.index = index;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SegmentKey)) {
+        return false;
+      }
+      SegmentKey that = (SegmentKey) o;
+      return version == that.version && index == that.index && path.equals(that.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, version, index);
+    }
+  }
+}
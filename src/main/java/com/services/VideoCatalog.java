@@ -0,0 +1,249 @@
+package com.services;
+
+import com.cameras.capture.CameraPipeline;
+import com.cameras.capture.CameraRegistry;
+import com.constants.ModulabGlobals;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Catalog of the video files. The video directory and the DVR recording directories are scanned at startup and kept up
+ * to date with a {@link WatchService}, so serving a file needs no path resolution and no stat call. The files are
+ * served by name: a file with the name of a file of another directory is ignored, with a warning, as long as the
+ * other file is in the catalog.
+ */
+@Service
+public class VideoCatalog {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final String videoDir;
+  private final SegmentCache segmentCache;
+  private final HlsPackager hlsPackager;
+  private final KeyframeIndexer keyframeIndexer;
+  private final CameraRegistry cameraRegistry;
+
+  private final Map<String, VideoFile> files = new ConcurrentHashMap<>();
+
+  private final List<Path> directories = new ArrayList<>();
+  private WatchService watchService;
+  private Thread watchThread;
+
+  public VideoCatalog(@Value("${video-stream.video-dir:}") String videoDir, SegmentCache segmentCache,
+      HlsPackager hlsPackager, KeyframeIndexer keyframeIndexer, CameraRegistry cameraRegistry) {
+    this.videoDir = videoDir;
+    this.segmentCache = segmentCache;
+    this.hlsPackager = hlsPackager;
+    this.keyframeIndexer = keyframeIndexer;
+    this.cameraRegistry = cameraRegistry;
+  }
+
+  /**
+   * Get a video file.
+   *
+   * @param fileName String, file name with extension.
+   * @return VideoFile or null when there is no such file.
+   */
+  public VideoFile get(String fileName) {
+    return files.get(fileName);
+  }
+
+  /**
+   * All the video files.
+   *
+   * @return Collection.
+   */
+  public Collection<VideoFile> getFiles() {
+    return Collections.unmodifiableCollection(files.values());
+  }
+
+  /**
+   * Scan the video directories and start watching them.
+   */
+  @PostConstruct
+  public void start() {
+    Path videoDirectory = resolveDirectory();
+    if (videoDirectory == null) {
+      logger.warn("No video directory found, set video-stream.video-dir to serve video files");
+    } else {
+      directories.add(videoDirectory);
+    }
+    for (CameraPipeline camera : cameraRegistry.getPipelines()) {
+      Path dvrDirectory = camera.getDvrRecorder().getDirectory();
+      if (!directories.contains(dvrDirectory)) {
+        directories.add(dvrDirectory);
+      }
+    }
+    try {
+      watchService = directories.get(directories.size() - 1).getFileSystem().newWatchService();
+    } catch (IOException e) {
+      logger.error("Cannot watch the video directories", e);
+      return;
+    }
+    for (Path directory : directories) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path path : stream) {
+          refresh(path);
+        }
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+      } catch (IOException e) {
+        logger.error("Error while scanning the video directory {}", directory, e);
+      }
+    }
+    watchThread = new Thread(this::watch, "Video catalog watcher");
+    watchThread.setDaemon(true);
+    watchThread.start();
+    logger.info("Serving {} video files from {}", files.size(), directories);
+  }
+
+  @PreDestroy
+  public void stop() throws IOException, InterruptedException {
+    if (watchService != null) {
+      watchService.close();
+      watchThread.join();
+    }
+    for (VideoFile file : files.values()) {
+      file.release();
+    }
+    files.clear();
+  }
+
+  private Path resolveDirectory() {
+    if (StringUtils.hasText(videoDir)) {
+      return Paths.get(videoDir).toAbsolutePath();
+    }
+    URL url = this.getClass().getResource(ModulabGlobals.VIDEO);
+    if (url == null || !"file".equals(url.getProtocol())) {
+      return null;
+    }
+    return new File(url.getFile()).toPath().toAbsolutePath();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            rescan();
+          } else {
+            refresh(directory.resolve((Path) event.context()));
+          }
+        }
+        if (!key.reset()) {
+          logger.warn("The video directory {} is no longer accessible", directory);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // catalog stopped
+    }
+  }
+
+  private void rescan() {
+    for (VideoFile file : files.values()) {
+      refresh(file.getPath());
+    }
+    for (Path directory : directories) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path path : stream) {
+          refresh(path);
+        }
+      } catch (IOException e) {
+        logger.error("Error while scanning the video directory {}", directory, e);
+      }
+    }
+  }
+
+  /**
+   * Add, update or remove the catalog entry of the file.
+   *
+   * @param path Path.
+   */
+  void refresh(Path path) {
+    String fileName = path.getFileName().toString();
+    VideoFile current = files.get(fileName);
+    if (current != null && !current.getPath().equals(path)) {
+      if (Files.isRegularFile(path)) {
+        logger.warn("Ignoring the video file {}, {} has the same name", path, current.getPath());
+      }
+      return;
+    }
+    VideoFile updated = null;
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      if (attributes.isRegularFile()) {
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (current != null && current.getSize() == attributes.size() && current.getLastModified() == lastModified) {
+          return;
+        }
+        updated = new VideoFile(fileName, path, attributes.size(), lastModified, getMimeType(fileName),
+            FileChannel.open(path, StandardOpenOption.READ));
+      }
+    } catch (IOException e) {
+      // deleted or not readable, the entry is removed
+    }
+    VideoFile previous = updated != null ? files.put(fileName, updated) : files.remove(fileName);
+    if (previous != null) {
+      segmentCache.invalidate(previous.getPath());
+      hlsPackager.invalidate(previous);
+      keyframeIndexer.invalidate(previous);
+      previous.release();
+    }
+    if (updated == null && previous != null) {
+      refreshDuplicate(path);
+    }
+  }
+
+  /**
+   * Serve the file of another directory with the name of a removed file, if any.
+   *
+   * @param removed Path of the removed file.
+   */
+  private void refreshDuplicate(Path removed) {
+    for (Path directory : directories) {
+      Path path = directory.resolve(removed.getFileName());
+      if (!path.equals(removed) && Files.isRegularFile(path)) {
+        refresh(path);
+        return;
+      }
+    }
+  }
+
+  private String getMimeType(String fileName) {
+    return MediaTypeFactory.getMediaType(fileName)
+        .map(Object::toString)
+        .orElse(ModulabGlobals.VIDEO_CONTENT + StringUtils.getFilenameExtension(fileName));
+  }
+}
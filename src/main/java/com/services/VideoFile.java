@@ -0,0 +1,98 @@
+package com.services;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Video file of the catalog with its metadata and an open channel shared by all the requests. The channel is closed
+ * once the file has been removed from the catalog and the last reader has released it.
+ */
+public final class VideoFile {
+
+  private final String name;
+  private final Path path;
+  private final long size;
+  private final long lastModified;
+  private final String mimeType;
+  private final String eTag;
+  private final FileChannel channel;
+
+  /**
+   * One reference held by the catalog plus one per reader
+   */
+  private final AtomicInteger references = new AtomicInteger(1);
+
+  /**
+   * @param channel FileChannel, owned by the file from now on and closed with its last reference.
+   */
+  public VideoFile(String name, Path path, long size, long lastModified, String mimeType, FileChannel channel) {
+    this.name = name;
+    this.path = path;
+    this.size = size;
+    this.lastModified = lastModified;
+    this.mimeType = mimeType;
+    this.eTag = "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"";
+    this.channel = channel;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  public long getSize() {
+    return size;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  public String getMimeType() {
+    return mimeType;
+  }
+
+  public String getETag() {
+    return eTag;
+  }
+
+  public FileChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * Keep the channel open until {@link #release()} is called.
+   *
+   * @return this.
+   * @throws ClosedChannelException when the file has already been removed from the catalog.
+   */
+  public VideoFile retain() throws ClosedChannelException {
+    int count;
+    do {
+      count = references.get();
+      if (count == 0) {
+        throw new ClosedChannelException();
+      }
+    } while (!references.compareAndSet(count, count + 1));
+    return this;
+  }
+
+  /**
+   * Release a reference, closing the channel when it was the last one.
+   */
+  public void release() {
+    if (references.decrementAndGet() == 0) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // nothing to do, the file is no longer served
+      }
+    }
+  }
+}
@@ -1,206 +1,462 @@
 package com.services;
 
+import com.cameras.capture.CameraCapture;
+import com.cameras.capture.CameraPipeline;
+import com.cameras.capture.CameraRegistry;
+import com.cameras.capture.CameraStatus;
+import com.cameras.capture.CapturedFrame;
+import com.cameras.capture.FrameLatencyTracer;
+import com.cameras.capture.LatencyReport;
+import com.cameras.streaming.LiveMp4Broadcaster;
+import com.cameras.streaming.MjpegBroadcaster;
+import com.cameras.streaming.Rendition;
 import com.constants.ModulabGlobals;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.bytedeco.ffmpeg.global.avcodec;
 import org.bytedeco.javacv.FFmpegFrameRecorder;
-import org.bytedeco.javacv.Frame;
 import org.bytedeco.javacv.FrameGrabber;
-import org.bytedeco.javacv.Java2DFrameConverter;
-import org.bytedeco.javacv.OpenCVFrameGrabber;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Optional;
-
-import javax.imageio.ImageIO;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class VideoStreamService {
 
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+  private final VideoCatalog videoCatalog;
+  private final FileRangeReader fileRangeReader;
+  private final KeyframeIndexer keyframeIndexer;
+  private final CameraRegistry cameraRegistry;
+  private final MeterRegistry meterRegistry;
+  private final Map<String, FrameLatencyTracer.Stage> snapshotSendStages = new HashMap<>();
+  private final boolean frameHeaders;
+
+  public VideoStreamService(VideoCatalog videoCatalog, FileRangeReader fileRangeReader,
+      KeyframeIndexer keyframeIndexer, CameraRegistry cameraRegistry, MeterRegistry meterRegistry,
+      @Value("${video-stream.latency.headers:true}") boolean frameHeaders) {
+    this.videoCatalog = videoCatalog;
+    this.fileRangeReader = fileRangeReader;
+    this.keyframeIndexer = keyframeIndexer;
+    this.cameraRegistry = cameraRegistry;
+    this.meterRegistry = meterRegistry;
+    for (CameraPipeline camera : cameraRegistry.getPipelines()) {
+      snapshotSendStages.put(camera.getId(), camera.getCapture().getLatencyTracer().stage("snapshot.send"));
+    }
+    this.frameHeaders = frameHeaders;
+  }
+
   /**
-   * Prepare the content.
+   * The cameras of the station, the default camera first.
+   *
+   * @return List of CameraStatus.
+   */
+  public List<CameraStatus> cameras() {
+    return cameraRegistry.getStatuses();
+  }
+
+  /**
+   * Prepare the content following RFC 7232 and RFC 7233: conditional requests are answered with 304/412, single
+   * ranges with 206, multiple ranges with a multipart/byteranges body and unsatisfiable ranges with 416. Only the
+   * requested ranges are read from the file and streamed to the response. Each request is timed until its last byte
+   * is written, by type of response, in video.file.requests, and the bytes sent are recorded in video.file.bytes.
    *
    * @param fileName String.
    * @param fileType String.
-   * @param range    String.
-   * @return ResponseEntity.
+   * @param exchange ServerWebExchange.
+   * @return Mono completed when the content has been written.
    */
-  public ResponseEntity<byte[]> prepareContentFromVideo(String fileName, String fileType, String range) {
-    long rangeStart = 0;
-    long rangeEnd;
-    byte[] data;
-    Long fileSize;
-    String fullFileName = fileName + "." + fileType;
-    try {
-      fileSize = getFileSize(fullFileName);
-      if (range == null) {
-        return ResponseEntity.status(HttpStatus.OK)
-            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + fileType)
-            .header(ModulabGlobals.CONTENT_LENGTH, String.valueOf(fileSize))
-            .body(readByteRange(fullFileName, rangeStart, fileSize - 1)); // Read the object and convert it as bytes
-      }
-      String[] ranges = range.split("-");
-      rangeStart = Long.parseLong(ranges[0].substring(6));
-      if (ranges.length > 1) {
-        rangeEnd = Long.parseLong(ranges[1]);
-      } else {
-        rangeEnd = fileSize - 1;
-      }
-      if (fileSize < rangeEnd) {
-        rangeEnd = fileSize - 1;
-      }
-      data = readByteRange(fullFileName, rangeStart, rangeEnd);
-    } catch (IOException e) {
-      logger.error("Exception while reading the file {}", e.getMessage());
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-    }
-    String contentLength = String.valueOf((rangeEnd - rangeStart) + 1);
-    return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
-        .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + fileType)
-        .header(ModulabGlobals.ACCEPT_RANGES, ModulabGlobals.BYTES)
-        .header(ModulabGlobals.CONTENT_LENGTH, contentLength)
-        .header(ModulabGlobals.CONTENT_RANGE, ModulabGlobals.BYTES + " " + rangeStart + "-" + rangeEnd + "/" + fileSize)
-        .body(data);
+  public Mono<Void> prepareContentFromVideo(String fileName, String fileType, ServerWebExchange exchange) {
+    ServerHttpRequest request = exchange.getRequest();
+    ServerHttpResponse response = exchange.getResponse();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    VideoFile file = videoCatalog.get(fileName + "." + fileType);
+    if (file == null) {
+      response.setStatusCode(HttpStatus.NOT_FOUND);
+      return recordFileRequest(sample, "not-found", 0, response.setComplete());
+    }
+    long fileSize = file.getSize();
+    long lastModified = file.getLastModified();
+    String eTag = file.getETag();
+    HttpHeaders headers = response.getHeaders();
+    headers.set(ModulabGlobals.ACCEPT_RANGES, ModulabGlobals.BYTES);
+    if (exchange.checkNotModified(eTag, Instant.ofEpochMilli(lastModified))) {
+      return recordFileRequest(sample, "not-modified", 0, response.setComplete());
+    }
+    String contentType = file.getMimeType();
+    List<ByteRange> ranges = resolveRanges(request.getHeaders(), eTag, lastModified, fileSize);
+    if (ranges == null) {
+      response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+      headers.set(ModulabGlobals.CONTENT_RANGE, ModulabGlobals.BYTES + " */" + fileSize);
+      return recordFileRequest(sample, "not-satisfiable", 0, response.setComplete());
+    }
+    if (ranges.isEmpty()) {
+      response.setStatusCode(HttpStatus.OK);
+      headers.set(ModulabGlobals.CONTENT_TYPE, contentType);
+      headers.set(ModulabGlobals.CONTENT_LENGTH, String.valueOf(fileSize));
+      return recordFileRequest(sample, "full", fileSize,
+          writeBody(request, response, () -> fileRangeReader.write(file, 0, fileSize, response)));
+    }
+    response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+    if (ranges.size() == 1) {
+      ByteRange range = ranges.get(0);
+      headers.set(ModulabGlobals.CONTENT_TYPE, contentType);
+      headers.set(ModulabGlobals.CONTENT_LENGTH, String.valueOf(range.getLength()));
+      headers.set(ModulabGlobals.CONTENT_RANGE, range.toContentRange(fileSize));
+      return recordFileRequest(sample, "single-range", range.getLength(), writeBody(request, response,
+          () -> fileRangeReader.write(file, range.getStart(), range.getLength(), response)));
+    }
+    String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+    List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+    long contentLength = 0;
+    for (ByteRange range : ranges) {
+      byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+          + ModulabGlobals.CONTENT_TYPE + ": " + contentType + "\r\n"
+          + ModulabGlobals.CONTENT_RANGE + ": " + range.toContentRange(fileSize) + "\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII);
+      partHeaders.add(partHeader);
+      contentLength += partHeader.length + range.getLength();
+    }
+    byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    contentLength += end.length;
+    headers.set(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.MULTIPART_BYTERANGES + "; boundary=" + boundary);
+    headers.set(ModulabGlobals.CONTENT_LENGTH, String.valueOf(contentLength));
+    DataBufferFactory bufferFactory = response.bufferFactory();
+    return recordFileRequest(sample, "multi-range", contentLength, writeBody(request, response,
+        () -> response.writeWith(Flux.range(0, ranges.size())
+            .concatMap(i -> Flux.concat(
+                Mono.fromCallable(() -> bufferFactory.wrap(partHeaders.get(i))),
+                fileRangeReader.read(file, ranges.get(i).getStart(), ranges.get(i).getLength(), bufferFactory)))
+            .concatWith(Mono.fromCallable(() -> bufferFactory.wrap(end))))));
   }
 
-public ResponseEntity<byte[]> takePictureFromCamera()
-{
-  FrameGrabber grabber = new OpenCVFrameGrabber(ModulabGlobals.DEFAULT_CAMERA);
-  Frame frame;
-  ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
-  try
-  {
-    grabber.start();
-    frame = grabber.grab();
+  /**
+   * Time a file request until the response is written, completed, failed or cancelled by the client.
+   *
+   * @param type String, kind of response.
+   * @param contentLength long, bytes of the body, recorded when the whole body has been written.
+   * @return Mono of the response.
+   */
+  private Mono<Void> recordFileRequest(Timer.Sample sample, String type, long contentLength, Mono<Void> response) {
+    return response.doFinally(signal -> {
+      String outcome = signal == SignalType.ON_COMPLETE ? "completed"
+          : signal == SignalType.ON_ERROR ? "error" : "cancelled";
+      sample.stop(Timer.builder("video.file.requests")
+          .description("Time serving a video file, until the last byte is written")
+          .tag("type", type)
+          .tag("outcome", outcome)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+      if (signal == SignalType.ON_COMPLETE && contentLength > 0) {
+        DistributionSummary.builder("video.file.bytes")
+            .description("Bytes of the video file responses")
+            .baseUnit("bytes")
+            .tag("type", type)
+            .register(meterRegistry)
+            .record(contentLength);
+      }
+    });
+  }
 
-    BufferedImage image = new Java2DFrameConverter().convert(frame);
-    baos = new ByteArrayOutputStream();
-    ImageIO.write(image, "jpg", baos);
+  /**
+   * Find where to read a video file from to play it from a time: the last keyframe at or before the time, from the
+   * keyframe index of the file. A player seeks with one range request from the returned offset.
+   *
+   * @param fileName String.
+   * @param fileType String.
+   * @param seconds double, time from the start of the file.
+   * @return ResponseEntity, 404 if the file or its video stream does not exist.
+   */
+  public Mono<ResponseEntity<KeyframePosition>> seekVideo(String fileName, String fileType, double seconds) {
+    VideoFile file = videoCatalog.get(fileName + "." + fileType);
+    if (file == null) {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
+    if (!(seconds >= 0)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+    }
+    return keyframeIndexer.getIndex(file)
+        .flatMap(index -> Mono.justOrEmpty(index.floor((long) (seconds * 1e6))))
+        .map(position -> ResponseEntity.status(HttpStatus.OK)
+            .eTag(file.getETag())
+            .body(position))
+        .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build())
+        .onErrorResume(IOException.class, e -> {
+          logger.error("Cannot index {}", file.getName(), e);
+          return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        });
   }
-  catch (FrameGrabber.Exception | FileNotFoundException e)
-  {
-    logger.error("Exception while reading the camera", e.getMessage());
-    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+
+  /**
+   * Resolve the Range header against the file.
+   *
+   * @return the ranges to send, an empty list to send the whole file, or null when no range can be satisfied.
+   */
+  static List<ByteRange> resolveRanges(HttpHeaders requestHeaders, String eTag, long lastModified, long fileSize) {
+    List<HttpRange> httpRanges;
+    try {
+      httpRanges = requestHeaders.getRange();
+    } catch (IllegalArgumentException e) {
+      // An invalid Range header is ignored
+      return Collections.emptyList();
+    }
+    if (httpRanges.isEmpty() || !isIfRangeSatisfied(requestHeaders, eTag, lastModified)) {
+      return Collections.emptyList();
+    }
+    List<ByteRange> ranges = new ArrayList<>(httpRanges.size());
+    long total = 0;
+    for (HttpRange httpRange : httpRanges) {
+      long start = httpRange.getRangeStart(fileSize);
+      long end = httpRange.getRangeEnd(fileSize);
+      if (start < fileSize && start <= end) {
+        ByteRange range = new ByteRange(start, end);
+        ranges.add(range);
+        total += range.getLength();
+      }
+    }
+    if (ranges.isEmpty()) {
+      return null;
+    }
+    // Overlapping ranges adding up to more than the file are not worth a multipart body
+    return total > fileSize ? Collections.emptyList() : ranges;
   }
-  catch (IOException e)
-  {
-    e.printStackTrace();
+
+  /**
+   * If-Range: the ranges only apply when the validator still matches the file, otherwise the whole file is sent.
+   */
+  private static boolean isIfRangeSatisfied(HttpHeaders requestHeaders, String eTag, long lastModified) {
+    String ifRange = requestHeaders.getFirst(ModulabGlobals.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(eTag);
+    }
+    try {
+      return requestHeaders.getFirstDate(ModulabGlobals.IF_RANGE) / 1000 == lastModified / 1000;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
   }
 
- return ResponseEntity.status(HttpStatus.OK)
-      .header(ModulabGlobals.CONTENT_TYPE, MediaType.IMAGE_JPEG_VALUE)
-      .header(ModulabGlobals.CONTENT_LENGTH, String.valueOf(baos.toByteArray().length))
-      .body(baos.toByteArray());
-}
+  /**
+   * HEAD requests get the headers only, the file is not read.
+   */
+  private Mono<Void> writeBody(ServerHttpRequest request, ServerHttpResponse response, Supplier<Mono<Void>> body) {
+    if (HttpMethod.HEAD.equals(request.getMethod())) {
+      return response.setComplete();
+    }
+    return body.get();
+  }
 
-  public ResponseEntity<byte[]> caprureVideoFromCamera()
+  /**
+   * Take a picture from a camera. The most recent frame of the shared camera capture is scaled and encoded once per
+   * rendition, the JPEG image is shared by all the requests of the frame and rendition. With the frame headers, the
+   * response carries the sequence number of the frame, its capture time and the microseconds since its capture.
+   *
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param rendition Region, size and quality of the picture.
+   * @param maxAgeMillis Age of an already encoded picture that is still accepted, 0 for the most recent frame.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera.
+   */
+  public Mono<ResponseEntity<Flux<DataBuffer>>> takePictureFromCamera(String cameraId, Rendition rendition,
+      long maxAgeMillis, DataBufferFactory bufferFactory)
   {
-    FrameGrabber grabber = new OpenCVFrameGrabber(ModulabGlobals.DEFAULT_CAMERA);
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(baos,256,256);
-
-    try
-    {
-      grabber.start();
-      recorder.setFormat("matroska");
-      recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
-      recorder.start();
-
-      while (baos.size() < ModulabGlobals.CHUNK_VIDEO_SIZE)
-      {
-        recorder.record(grabber.grab());
-      }
-      recorder.stop();
-    }
-    catch (FrameGrabber.Exception | FFmpegFrameRecorder.Exception e)
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null)
     {
-      logger.error("Exception while reading the camera", e.getMessage());
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
-    return ResponseEntity.status(HttpStatus.OK)
-        .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + "mp4")
-        .header(ModulabGlobals.CONTENT_LENGTH, String.valueOf(baos.toByteArray().length))
-        .body(baos.toByteArray());
+    FrameLatencyTracer.Stage snapshotSendStage = snapshotSendStages.get(camera.getId());
+    return camera.getSnapshotCache().snapshot(rendition, maxAgeMillis)
+        .subscribeOn(camera.getScheduler())
+        .map(snapshot ->
+        {
+          long latencyMicros = snapshotSendStage.record(snapshot.getCaptureNanos());
+          ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.OK)
+              .header(ModulabGlobals.CONTENT_TYPE, MediaType.IMAGE_JPEG_VALUE)
+              .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.NO_CACHE)
+              .contentLength(snapshot.getJpeg().length)
+              .lastModified(snapshot.getCaptureTimeMillis());
+          if (frameHeaders)
+          {
+            response.header(ModulabGlobals.FRAME_SEQUENCE, String.valueOf(snapshot.getSequence()))
+                .header(ModulabGlobals.FRAME_CAPTURE_TIME, String.valueOf(snapshot.getCaptureTimeMillis()))
+                .header(ModulabGlobals.FRAME_LATENCY, String.valueOf(latencyMicros));
+          }
+          return response.body(Flux.just(bufferFactory.wrap(snapshot.getJpeg())));
+        })
+        .onErrorResume(IllegalArgumentException.class,
+            e -> Mono.just(ResponseEntity.status(HttpStatus.BAD_REQUEST).build()))
+        .onErrorResume(e -> e instanceof FrameGrabber.Exception || e instanceof IOException, e ->
+        {
+          logger.error("Exception while reading the camera {}", e.getMessage());
+          return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        });
   }
 
   /**
-   * ready file byte by byte.
+   * Capture a video from a camera. The frames of the shared camera capture are recorded on the scheduler of the camera
+   * and the video is streamed while it is being recorded, the recorder waits for the client when it reads slower than
+   * the camera produces.
    *
-   * @param filename String.
-   * @param start    long.
-   * @param end      long.
-   * @return byte array.
-   * @throws IOException exception.
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera.
    */
-  public byte[] readByteRange(String filename, long start, long end) throws IOException {
-    Path path = Paths.get(getFilePath(), filename);
-    try (InputStream inputStream = (Files.newInputStream(path));
-        ByteArrayOutputStream bufferedOutputStream = new ByteArrayOutputStream()) {
-      byte[] data = new byte[ModulabGlobals.BYTE_RANGE];
-      int nRead;
-      while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-        bufferedOutputStream.write(data, 0, nRead);
-      }
-      bufferedOutputStream.flush();
-      byte[] result = new byte[(int) (end - start) + 1];
-      System.arraycopy(bufferedOutputStream.toByteArray(), (int) start, result, 0, result.length);
-      return result;
+  public Mono<ResponseEntity<Flux<DataBuffer>>> caprureVideoFromCamera(String cameraId,
+      DataBufferFactory bufferFactory)
+  {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null)
+    {
+      return Mono.just(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
+    return Mono.fromCallable(() ->
+    {
+      camera.getCapture().start();
+      return camera.getCapture();
+    })
+        .subscribeOn(camera.getScheduler())
+        .map(capture -> ResponseEntity.status(HttpStatus.OK)
+            .header(ModulabGlobals.CONTENT_TYPE, ModulabGlobals.VIDEO_CONTENT + "mp4")
+            .body(OutputStreamPublisher.publish(outputStream -> recordVideo(capture, outputStream), bufferFactory,
+                camera.getScheduler(), ModulabGlobals.STREAM_CHUNK_SIZE)))
+        .onErrorResume(FrameGrabber.Exception.class, e ->
+        {
+          logger.error("Exception while reading the camera {}", e.getMessage());
+          return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        });
   }
 
   /**
-   * Get the filePath.
+   * Live MJPEG stream from a camera. All the viewers of a rendition share the same encoded frames, a viewer reading
+   * slower than the camera skips frames.
    *
-   * @return String.
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param rendition Region, size and quality of the stream.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera, 503 if the camera already streams the maximum number of
+   *         renditions.
    */
-  private String getFilePath() {
-    URL url = this.getClass().getResource(ModulabGlobals.VIDEO);
-    return new File(url.getFile()).getAbsolutePath();
+  public ResponseEntity<Flux<DataBuffer>> streamMjpegFromCamera(String cameraId, Rendition rendition,
+      DataBufferFactory bufferFactory)
+  {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null)
+    {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    if (!camera.getMjpegBroadcaster().canStream(rendition))
+    {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+    return ResponseEntity.status(HttpStatus.OK)
+        .header(ModulabGlobals.CONTENT_TYPE, MjpegBroadcaster.CONTENT_TYPE)
+        .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.NO_CACHE)
+        .body(camera.getMjpegBroadcaster().parts(rendition).map(bufferFactory::wrap));
   }
 
   /**
-   * Content length.
+   * Live fragmented MP4 stream from a camera. All the viewers share the same encoder, each fragment is sent as soon
+   * as it is produced.
    *
-   * @param fileName String.
-   * @return Long.
+   * @param cameraId Id of the camera, null for the default camera.
+   * @param bufferFactory DataBufferFactory.
+   * @return ResponseEntity, 404 if there is no such camera.
    */
-  public Long getFileSize(String fileName) {
-    return Optional.ofNullable(fileName)
-        .map(file -> Paths.get(getFilePath(), file))
-        .map(this::sizeFromFile)
-        .orElse(0L);
+  public ResponseEntity<Flux<DataBuffer>> streamLiveFromCamera(String cameraId, DataBufferFactory bufferFactory)
+  {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null)
+    {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    return ResponseEntity.status(HttpStatus.OK)
+        .header(ModulabGlobals.CONTENT_TYPE, LiveMp4Broadcaster.CONTENT_TYPE)
+        .header(ModulabGlobals.CACHE_CONTROL, ModulabGlobals.NO_CACHE)
+        .body(camera.getLiveMp4Broadcaster().stream().map(bufferFactory::wrap));
   }
 
   /**
-   * Getting the size from the path.
+   * Latency of the frames of a camera through each stage of its pipeline.
    *
-   * @param path Path.
-   * @return Long.
+   * @param cameraId Id of the camera, null for the default camera.
+   * @return ResponseEntity, 404 if there is no such camera.
    */
-  private Long sizeFromFile(Path path) {
-    try {
-      return Files.size(path);
-    } catch (IOException ioException) {
-      logger.error("Error while getting the file size", ioException);
+  public ResponseEntity<LatencyReport> latencyReport(String cameraId)
+  {
+    CameraPipeline camera = cameraRegistry.get(cameraId);
+    if (camera == null)
+    {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+    }
+    return ResponseEntity.ok(camera.getCapture().getLatencyTracer().report());
+  }
+
+  private void recordVideo(CameraCapture capture, OutputStreamPublisher.ChunkedOutputStream outputStream)
+      throws FFmpegFrameRecorder.Exception
+  {
+    FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(outputStream, 256, 256);
+    try (Stream<CapturedFrame> frames = capture.frames().toStream(ModulabGlobals.RECORDER_FRAME_PREFETCH))
+    {
+      recorder.setFormat("matroska");
+      recorder.setVideoCodec(avcodec.AV_CODEC_ID_H264);
+      recorder.start();
+
+      Iterator<CapturedFrame> iterator = frames.iterator();
+      while (outputStream.getCount() < ModulabGlobals.CHUNK_VIDEO_SIZE && iterator.hasNext())
+      {
+        CapturedFrame frame = iterator.next();
+        if (frame.retain())
+        {
+          try
+          {
+            recorder.record(frame.getFrame());
+          }
+          finally
+          {
+            frame.release();
+          }
+        }
+      }
+      recorder.stop();
+    }
+    finally
+    {
+      recorder.release();
     }
-    return 0L;
   }
 }
@@ -0,0 +1,118 @@
+package com.cameras.basler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push acquisition from the simulated camera: the frames go through the bounded queue to the model, the oldest ones
+ * are dropped when the model falls behind, and finish stops the grabbing and joins the thread.
+ */
+class BaslerAcquisitionThreadTest
+{
+
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  private final SimulatedBaslerGrabber grabber = new SimulatedBaslerGrabber(8, 8, 1000);
+  private final RecordingModel model = new RecordingModel(grabber);
+  private final BaslerAcquisitionThread thread = new BaslerAcquisitionThread(model, grabber, 2);
+
+  @AfterEach
+  void finish()
+  {
+    model.release.countDown();
+    thread.finish(TIMEOUT_MILLIS);
+  }
+
+  @Test
+  void publishesTheGrabbedFrames() throws InterruptedException
+  {
+    model.release.countDown();
+    thread.start();
+
+    assertTrue(model.processed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    assertTrue(grabber.isGrabbing());
+    assertNotNull(model.getFrameBus().latest());
+  }
+
+  @Test
+  void dropsTheOldestFramesWhenTheQueueIsFull() throws InterruptedException
+  {
+    thread.start();
+    assertTrue(model.processed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+    while (thread.getDroppedFrames() < 5 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(1);
+    }
+    assertTrue(thread.getDroppedFrames() >= 5);
+
+    model.release.countDown();
+    while (model.frameNumbers.size() < 3 && System.currentTimeMillis() < deadline)
+    {
+      Thread.sleep(1);
+    }
+    assertTrue(model.frameNumbers.size() >= 3);
+    int blocked = model.frameNumbers.get(0);
+    int first = model.frameNumbers.get(1);
+    int second = model.frameNumbers.get(2);
+    // The frames queued while the model was blocked are the latest ones, in order
+    assertTrue(((first - blocked) & 0xFF) > 1);
+    assertEquals(1, (second - first) & 0xFF);
+  }
+
+  @Test
+  void finishStopsTheGrabbingAndJoins() throws InterruptedException
+  {
+    thread.start();
+    assertTrue(model.processed.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+    // The model is still blocked on the first frame, finish interrupts it
+    thread.finish(TIMEOUT_MILLIS);
+    assertTrue(thread.isFinished());
+    assertFalse(thread.isAlive());
+    assertFalse(grabber.isGrabbing());
+  }
+
+  /**
+   * Model recording the number of the frames it processes, from the first pixel of the simulated pattern. The first
+   * frame is held until {@link #release} is counted down.
+   */
+  private static class RecordingModel extends BaslerModel
+  {
+
+    private final CountDownLatch processed = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Integer> frameNumbers = new CopyOnWriteArrayList<>();
+
+    RecordingModel(SimulatedBaslerGrabber grabber)
+    {
+      super(grabber);
+    }
+
+    @Override
+    void processFrame(byte[] frame)
+    {
+      super.processFrame(frame);
+      frameNumbers.add(frame[0] & 0xFF);
+      processed.countDown();
+      try
+      {
+        release.await();
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.cameras.basler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Property writes made while the simulated camera is grabbing: queued, coalesced per property and applied in one
+ * batch between two frames by the grabbing thread.
+ */
+class BaslerPropertyControlTest
+{
+
+  private final BaslerPropertyControl control = new BaslerPropertyControl(60_000);
+  private final SimulatedBaslerGrabber grabber = new SimulatedBaslerGrabber(8, 8, 100);
+  private final List<String> cameraWrites = new CopyOnWriteArrayList<>();
+  private final List<String> writeThreads = new CopyOnWriteArrayList<>();
+
+  @AfterEach
+  void stopGrabbing()
+  {
+    grabber.stopGrabbing();
+  }
+
+  @Test
+  void coalescesTheWritesWhileGrabbing() throws InterruptedException
+  {
+    CountDownLatch writesQueued = new CountDownLatch(1);
+    CountDownLatch applied = new CountDownLatch(1);
+    control.setBatching(true);
+    grabber.startGrabbing(frame ->
+    {
+      if (writesQueued.getCount() == 0)
+      {
+        control.applyPending();
+        if (!cameraWrites.isEmpty())
+        {
+          applied.countDown();
+        }
+      }
+    });
+
+    write("ExposureTime", 1000);
+    write("Gain", 2.0);
+    write("ExposureTime", 2000);
+    write("ExposureTime", 3000);
+    assertEquals(Integer.valueOf(3000), control.read("ExposureTime", () -> 0));
+    assertTrue(cameraWrites.isEmpty());
+    writesQueued.countDown();
+
+    assertTrue(applied.await(10, TimeUnit.SECONDS));
+    assertEquals(2, cameraWrites.size());
+    assertEquals("ExposureTime=3000", cameraWrites.get(0));
+    assertEquals("Gain=2.0", cameraWrites.get(1));
+    assertNotEquals(Thread.currentThread().getName(), writeThreads.get(0));
+  }
+
+  @Test
+  void appliesThePendingWritesWhenBatchingStops()
+  {
+    control.setBatching(true);
+    write("Gamma", 1.2);
+    assertTrue(cameraWrites.isEmpty());
+    control.setBatching(false);
+    assertEquals(1, cameraWrites.size());
+    write("Gamma", 1.5);
+    assertEquals(2, cameraWrites.size());
+    assertEquals("Gamma=1.5", cameraWrites.get(1));
+  }
+
+  @Test
+  void cachesTheValuesReadFromTheCamera()
+  {
+    AtomicInteger cameraReads = new AtomicInteger();
+    assertEquals(Integer.valueOf(1), control.read("Gain", cameraReads::incrementAndGet));
+    assertEquals(Integer.valueOf(1), control.read("Gain", cameraReads::incrementAndGet));
+    write("Gain", 5);
+    assertEquals(Integer.valueOf(2), control.read("Gain", cameraReads::incrementAndGet));
+    control.invalidateAll();
+    assertEquals(Integer.valueOf(3), control.read("Gain", cameraReads::incrementAndGet));
+  }
+
+  private void write(String property, Object value)
+  {
+    control.write(property, value, () ->
+    {
+      cameraWrites.add(property + "=" + value);
+      writeThreads.add(Thread.currentThread().getName());
+    });
+  }
+}
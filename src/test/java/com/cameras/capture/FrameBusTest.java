@@ -0,0 +1,117 @@
+package com.cameras.capture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading the frame bus at the pace of each consumer, and what a consumer falling behind loses.
+ */
+class FrameBusTest
+{
+
+  private final List<String> evicted = new ArrayList<>();
+  private final FrameBus<String> bus = new FrameBus<>(4, evicted::add);
+
+  @Test
+  void readsFromTheNextPublishedFrame()
+  {
+    bus.publish("0");
+    try (FrameBus<String>.Cursor cursor = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_LATEST))
+    {
+      assertNull(cursor.poll());
+      assertEquals(-1, cursor.getSequence());
+      bus.publish("1");
+      bus.publish("2");
+      assertEquals("1", cursor.poll());
+      assertEquals("2", cursor.poll());
+      assertEquals(2, cursor.getSequence());
+      assertNull(cursor.poll());
+      assertEquals(0, cursor.getDropped());
+    }
+  }
+
+  @Test
+  void skipsToTheLatestFrame()
+  {
+    try (FrameBus<String>.Cursor cursor = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_LATEST))
+    {
+      publish(10);
+      assertEquals("9", cursor.poll());
+      assertEquals(9, cursor.getDropped());
+      assertNull(cursor.poll());
+    }
+  }
+
+  @Test
+  void skipsToTheOldestFrame()
+  {
+    try (FrameBus<String>.Cursor cursor = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_OLDEST))
+    {
+      publish(10);
+      assertEquals("6", cursor.poll());
+      assertEquals(6, cursor.getDropped());
+      assertEquals("7", cursor.poll());
+      assertEquals("8", cursor.poll());
+      assertEquals("9", cursor.poll());
+      assertNull(cursor.poll());
+    }
+  }
+
+  @Test
+  void keepsTheConsumersIndependent()
+  {
+    try (FrameBus<String>.Cursor live = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_LATEST);
+        FrameBus<String>.Cursor recorder = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_OLDEST))
+    {
+      publish(3);
+      assertEquals("0", live.poll());
+      assertEquals("0", recorder.poll());
+      publish(6);
+      assertEquals("8", live.poll());
+      assertEquals("5", recorder.poll());
+      assertEquals(7, live.getDropped());
+      assertEquals(4, recorder.getDropped());
+      assertEquals("6", recorder.poll());
+    }
+  }
+
+  @Test
+  void evictsTheOverwrittenFrames()
+  {
+    publish(6);
+    assertEquals(2, evicted.size());
+    assertEquals("0", evicted.get(0));
+    assertEquals("1", evicted.get(1));
+    assertNull(bus.get(1));
+    assertEquals("2", bus.get(2));
+    assertEquals("5", bus.latest());
+    assertEquals(6, bus.getNextSequence());
+  }
+
+  @Test
+  void waitsForTheNextFrame() throws InterruptedException
+  {
+    try (FrameBus<String>.Cursor cursor = bus.subscribe(FrameBus.DropPolicy.SKIP_TO_LATEST))
+    {
+      assertNull(cursor.take(10, TimeUnit.MILLISECONDS));
+      Thread producer = new Thread(() -> bus.publish("0"));
+      producer.start();
+      assertEquals("0", cursor.take(10, TimeUnit.SECONDS));
+      producer.join();
+    }
+  }
+
+  private void publish(int count)
+  {
+    for (int i = 0; i < count; i++)
+    {
+      bus.publish(String.valueOf(bus.getNextSequence()));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package com.cameras.capture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bytedeco.javacv.Frame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reference counting of the captured frames and recycling of the frames and their pixels through the frame pool.
+ */
+class FramePoolTest
+{
+
+  private final FramePool pool = new FramePool("test", 2);
+  private final Frame grabbed = grabbedFrame(4, 2);
+
+  @AfterEach
+  void closeFrame()
+  {
+    grabbed.close();
+  }
+
+  @Test
+  void copiesThePixels()
+  {
+    CapturedFrame frame = pool.copyOf(grabbed, 7, 10, 20);
+    assertNotNull(frame);
+    assertEquals(7, frame.getSequence());
+    assertEquals(10, frame.getCaptureNanos());
+    assertEquals(20, frame.getCaptureTimeMillis());
+    Frame copy = frame.getFrame();
+    assertEquals(4, copy.imageWidth);
+    assertEquals(2, copy.imageHeight);
+    assertEquals(3, copy.imageChannels);
+    assertEquals(((ByteBuffer) grabbed.image[0]).get(5), ((ByteBuffer) copy.image[0]).get(5));
+    assertEquals(1, pool.getInUse());
+  }
+
+  @Test
+  void recyclesTheFrameOnTheLastRelease()
+  {
+    CapturedFrame frame = pool.copyOf(grabbed, 0, 0, 0);
+    Frame copy = frame.getFrame();
+    assertTrue(frame.retain());
+    frame.release();
+    assertEquals(1, pool.getInUse());
+    frame.release();
+    assertEquals(0, pool.getInUse());
+    assertFalse(frame.retain());
+
+    CapturedFrame reused = pool.copyOf(grabbed, 1, 10, 20);
+    assertSame(frame, reused);
+    assertSame(copy, reused.getFrame());
+    assertEquals(1, reused.getSequence());
+    assertEquals(10, reused.getCaptureNanos());
+    assertTrue(reused.retain());
+    assertEquals(1, pool.getAllocated());
+  }
+
+  @Test
+  void dropsTheFramesBeyondTheCapacity()
+  {
+    assertNotNull(pool.copyOf(grabbed, 0, 0, 0));
+    assertNotNull(pool.copyOf(grabbed, 1, 0, 0));
+    assertNull(pool.copyOf(grabbed, 2, 0, 0));
+    assertEquals(1, pool.getAllocationFailures());
+    assertEquals(2, pool.getAllocated());
+  }
+
+  @Test
+  void discardsTheFramesOfAnotherGeometry()
+  {
+    CapturedFrame copy = pool.copyOf(grabbed, 0, 0, 0);
+    Frame larger = grabbedFrame(8, 4);
+    try
+    {
+      CapturedFrame largerCopy = pool.copyOf(larger, 1, 0, 0);
+      assertEquals(8, largerCopy.getFrame().imageWidth);
+      copy.release();
+      assertEquals(1, pool.getAllocated());
+      largerCopy.release();
+      assertSame(largerCopy, pool.copyOf(larger, 2, 0, 0));
+    }
+    finally
+    {
+      larger.close();
+    }
+  }
+
+  @Test
+  void doesNotRecycleFramesNotPooled()
+  {
+    CapturedFrame frame = new CapturedFrame(0, 0, 0, grabbed);
+    frame.release();
+    assertFalse(frame.retain());
+    assertEquals(0, pool.getAllocated());
+  }
+
+  private static Frame grabbedFrame(int width, int height)
+  {
+    Frame frame = new Frame(width, height, Frame.DEPTH_UBYTE, 3);
+    ByteBuffer pixels = (ByteBuffer) frame.image[0];
+    for (int i = 0; i < pixels.capacity(); i++)
+    {
+      pixels.put(i, (byte) i);
+    }
+    return frame;
+  }
+}
@@ -0,0 +1,149 @@
+package com.cameras.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splitting of the muxer output into the init segment and the fragments, whatever the size of the writes.
+ */
+class Mp4FragmentParserTest
+{
+
+  private static final int SYNC_SAMPLE = 0x02000000;
+  private static final int NON_SYNC_SAMPLE = 0x01010000;
+
+  private final List<byte[]> initSegments = new ArrayList<>();
+  private final List<byte[]> fragments = new ArrayList<>();
+  private final List<Boolean> keyframes = new ArrayList<>();
+
+  private final Mp4FragmentParser parser = new Mp4FragmentParser(new Mp4FragmentParser.Listener()
+  {
+
+    @Override
+    public void onInitSegment(byte[] initSegment)
+    {
+      initSegments.add(initSegment);
+    }
+
+    @Override
+    public void onFragment(byte[] fragment, boolean keyframe)
+    {
+      fragments.add(fragment);
+      keyframes.add(keyframe);
+    }
+  });
+
+  @Test
+  void splitsTheInitSegmentAndTheFragments()
+  {
+    byte[] ftyp = box("ftyp", new byte[8]);
+    byte[] moov = box("moov", new byte[20]);
+    byte[] moof1 = moof(SYNC_SAMPLE);
+    byte[] mdat1 = box("mdat", new byte[100]);
+    byte[] moof2 = moof(NON_SYNC_SAMPLE);
+    byte[] mdat2 = box("mdat", new byte[50]);
+    parser.write(concat(ftyp, moov, moof1, mdat1, moof2, mdat2), 0,
+        ftyp.length + moov.length + moof1.length + mdat1.length + moof2.length + mdat2.length);
+
+    assertEquals(1, initSegments.size());
+    assertArrayEquals(concat(ftyp, moov), initSegments.get(0));
+    assertEquals(2, fragments.size());
+    assertArrayEquals(concat(moof1, mdat1), fragments.get(0));
+    assertArrayEquals(concat(moof2, mdat2), fragments.get(1));
+    assertTrue(keyframes.get(0));
+    assertFalse(keyframes.get(1));
+  }
+
+  @Test
+  void waitsForTheCompleteBoxes()
+  {
+    byte[] stream = concat(box("ftyp", new byte[8]), box("moov", new byte[20]), moof(SYNC_SAMPLE),
+        box("mdat", new byte[1000]));
+    for (byte b : stream)
+    {
+      assertEquals(0, fragments.size());
+      parser.write(b);
+    }
+    assertEquals(1, initSegments.size());
+    assertEquals(1, fragments.size());
+    assertEquals(stream.length - initSegments.get(0).length, fragments.get(0).length);
+  }
+
+  @Test
+  void readsTheDefaultSampleFlags()
+  {
+    byte[] tfhd = fullBox("tfhd", 0x20, ints(1, SYNC_SAMPLE));
+    byte[] trun = fullBox("trun", 0, ints(1));
+    assertTrue(Mp4FragmentParser.isKeyframe(box("moof", box("traf", concat(tfhd, trun)))));
+    assertFalse(Mp4FragmentParser.isKeyframe(box("moof", box("traf", trun))));
+  }
+
+  @Test
+  void readsTheFlagsOfTheFirstSample()
+  {
+    byte[] trun = fullBox("trun", 0x01 | 0x100 | 0x400, ints(1, 0, 40, NON_SYNC_SAMPLE));
+    assertFalse(Mp4FragmentParser.isKeyframe(box("moof", box("traf", trun))));
+    trun = fullBox("trun", 0x01 | 0x100 | 0x400, ints(1, 0, 40, SYNC_SAMPLE));
+    assertTrue(Mp4FragmentParser.isKeyframe(box("moof", box("traf", trun))));
+  }
+
+  @Test
+  void rejectsAnInvalidBox()
+  {
+    assertThrows(IllegalStateException.class, () -> parser.write(ints(4, 0), 0, 8));
+  }
+
+  /**
+   * moof with one track fragment whose first sample has the given flags
+   */
+  private static byte[] moof(int firstSampleFlags)
+  {
+    return box("moof", concat(fullBox("mfhd", 0, ints(1)),
+        box("traf", concat(fullBox("tfhd", 0, ints(1)), fullBox("trun", 0x04, ints(1, firstSampleFlags))))));
+  }
+
+  private static byte[] fullBox(String type, int flags, byte[] content)
+  {
+    return box(type, concat(ints(flags), content));
+  }
+
+  private static byte[] box(String type, byte[] content)
+  {
+    return ByteBuffer.allocate(8 + content.length)
+        .putInt(8 + content.length)
+        .put(type.getBytes(StandardCharsets.US_ASCII))
+        .put(content)
+        .array();
+  }
+
+  private static byte[] ints(int... values)
+  {
+    ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+    for (int value : values)
+    {
+      buffer.putInt(value);
+    }
+    return buffer.array();
+  }
+
+  private static byte[] concat(byte[]... arrays)
+  {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    for (byte[] array : arrays)
+    {
+      bytes.write(array, 0, array.length);
+    }
+    return bytes.toByteArray();
+  }
+}
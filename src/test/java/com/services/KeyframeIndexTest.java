@@ -0,0 +1,68 @@
+package com.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Keyframe lookup of a seek and persistence of the index.
+ */
+class KeyframeIndexTest {
+
+  private final KeyframeIndex index = new KeyframeIndex(
+      new long[] {0, 2_000_000, 4_000_000, 4_000_000, 6_000_000},
+      new long[] {48, 1000, 2000, 2500, 3000});
+
+  @Test
+  void findsTheKeyframeAtTheTime() {
+    assertEquals(1000, index.floor(2_000_000).getOffset());
+  }
+
+  @Test
+  void findsTheLastKeyframeBeforeTheTime() {
+    KeyframePosition position = index.floor(3_999_999);
+    assertEquals(1000, position.getOffset());
+    assertEquals(2.0, position.getTime(), 0);
+    assertEquals("bytes=1000-", position.getRange());
+    assertEquals(3000, index.floor(60_000_000).getOffset());
+  }
+
+  @Test
+  void resolvesKeyframesSharingATimeToTheFirstOne() {
+    assertEquals(2000, index.floor(4_000_000).getOffset());
+    assertEquals(2000, index.floor(5_000_000).getOffset());
+  }
+
+  @Test
+  void findsTheFirstKeyframeBeforeTheStart() {
+    assertEquals(48, index.floor(-1).getOffset());
+  }
+
+  @Test
+  void findsNothingInAnEmptyIndex() {
+    assertNull(new KeyframeIndex(new long[0], new long[0]).floor(0));
+  }
+
+  @Test
+  void readsWhatItWrites() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    index.write(new DataOutputStream(bytes));
+    KeyframeIndex read = KeyframeIndex.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    assertEquals(index.size(), read.size());
+    assertEquals(2000, read.floor(4_500_000).getOffset());
+  }
+
+  @Test
+  void rejectsAnotherFile() {
+    byte[] bytes = new byte[16];
+    assertThrows(IOException.class, () -> KeyframeIndex.read(new DataInputStream(new ByteArrayInputStream(bytes))));
+  }
+}
@@ -0,0 +1,114 @@
+package com.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * LRU eviction of the segment cache. A segment served from the cache keeps the content it was read with, the file
+ * is overwritten in place to tell the cached segments from the reloaded ones.
+ */
+class SegmentCacheTest {
+
+  private static final int SEGMENT_SIZE = 4;
+
+  @TempDir
+  Path directory;
+
+  private Path path;
+  private FileChannel channel;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    path = directory.resolve("video.mp4");
+    Files.write(path, "aaaabbbbccccdd".getBytes("US-ASCII"));
+    channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  @AfterEach
+  void closeFile() throws IOException {
+    channel.close();
+  }
+
+  @Test
+  void readsTheSegments() throws IOException {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 16, 16);
+    assertEquals("aaaa", read(cache, 0));
+    assertEquals("cccc", read(cache, 2));
+    assertEquals("dd", read(cache, 3));
+  }
+
+  @Test
+  void servesTheCachedSegments() throws IOException {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 16, 16);
+    read(cache, 0);
+    overwrite();
+    assertEquals("aaaa", read(cache, 0));
+    assertEquals("BBBB", read(cache, 1));
+  }
+
+  @Test
+  void evictsTheLeastRecentlyUsedSegment() throws IOException {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 2 * SEGMENT_SIZE, 2 * SEGMENT_SIZE);
+    read(cache, 0);
+    read(cache, 1);
+    read(cache, 0);
+    read(cache, 2);
+    overwrite();
+    assertEquals("aaaa", read(cache, 0));
+    assertEquals("cccc", read(cache, 2));
+    assertEquals("BBBB", read(cache, 1));
+  }
+
+  @Test
+  void reloadsAModifiedFile() throws IOException {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 16, 16);
+    read(cache, 0);
+    overwrite();
+    assertEquals("AAAA", new String(toBytes(cache.get(path, 2, 0, channel)), "US-ASCII"));
+  }
+
+  @Test
+  void reloadsAnInvalidatedFile() throws IOException {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 16, 16);
+    read(cache, 0);
+    overwrite();
+    cache.invalidate(path);
+    assertEquals("AAAA", read(cache, 0));
+  }
+
+  @Test
+  void onlyCachesTheSmallRanges() {
+    SegmentCache cache = new SegmentCache(true, SEGMENT_SIZE, 16, 8);
+    assertTrue(cache.isCached(8));
+    assertFalse(cache.isCached(9));
+    assertFalse(new SegmentCache(false, SEGMENT_SIZE, 16, 8).isCached(1));
+    assertFalse(new SegmentCache(true, SEGMENT_SIZE, SEGMENT_SIZE - 1, 8).isCached(1));
+  }
+
+  private String read(SegmentCache cache, long segmentIndex) throws IOException {
+    return new String(toBytes(cache.get(path, 1, segmentIndex, channel)), "US-ASCII");
+  }
+
+  private void overwrite() throws IOException {
+    channel.write(ByteBuffer.wrap("AAAABBBBCCCCDD".getBytes("US-ASCII")), 0);
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+}
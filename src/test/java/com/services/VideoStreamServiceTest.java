@@ -0,0 +1,109 @@
+package com.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.constants.ModulabGlobals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.List;
+
+/**
+ * Resolution of the Range and If-Range headers against a file.
+ */
+class VideoStreamServiceTest {
+
+  private static final long FILE_SIZE = 1000;
+  private static final String ETAG = "\"abc\"";
+  private static final long LAST_MODIFIED = 1_600_000_000_000L;
+
+  @Test
+  void withoutRangeSendsTheWholeFile() {
+    assertTrue(resolve(new HttpHeaders()).isEmpty());
+  }
+
+  @Test
+  void resolvesASingleRange() {
+    List<ByteRange> ranges = resolve(range("bytes=100-199"));
+    assertEquals(1, ranges.size());
+    assertEquals(100, ranges.get(0).getStart());
+    assertEquals(199, ranges.get(0).getEnd());
+    assertEquals(100, ranges.get(0).getLength());
+    assertEquals("bytes 100-199/1000", ranges.get(0).toContentRange(FILE_SIZE));
+  }
+
+  @Test
+  void resolvesOpenAndSuffixRanges() {
+    List<ByteRange> ranges = resolve(range("bytes=900-,-50"));
+    assertEquals(2, ranges.size());
+    assertEquals(900, ranges.get(0).getStart());
+    assertEquals(999, ranges.get(0).getEnd());
+    assertEquals(950, ranges.get(1).getStart());
+    assertEquals(999, ranges.get(1).getEnd());
+  }
+
+  @Test
+  void clampsTheEndToTheFile() {
+    List<ByteRange> ranges = resolve(range("bytes=500-5000"));
+    assertEquals(1, ranges.size());
+    assertEquals(999, ranges.get(0).getEnd());
+    assertEquals(500, ranges.get(0).getLength());
+  }
+
+  @Test
+  void skipsTheUnsatisfiableRanges() {
+    List<ByteRange> ranges = resolve(range("bytes=2000-2100,0-9"));
+    assertEquals(1, ranges.size());
+    assertEquals(0, ranges.get(0).getStart());
+  }
+
+  @Test
+  void returnsNullWhenNoRangeIsSatisfiable() {
+    assertNull(resolve(range("bytes=1000-1100")));
+  }
+
+  @Test
+  void ignoresAnInvalidRange() {
+    assertTrue(resolve(range("bytes=abc")).isEmpty());
+  }
+
+  @Test
+  void sendsTheWholeFileForRangesLargerThanTheFile() {
+    assertTrue(resolve(range("bytes=0-799,200-999")).isEmpty());
+  }
+
+  @Test
+  void appliesTheRangesWhenIfRangeMatches() {
+    HttpHeaders headers = range("bytes=0-9");
+    headers.set(ModulabGlobals.IF_RANGE, ETAG);
+    assertEquals(1, resolve(headers).size());
+
+    headers = range("bytes=0-9");
+    headers.setDate(ModulabGlobals.IF_RANGE, LAST_MODIFIED);
+    assertEquals(1, resolve(headers).size());
+  }
+
+  @Test
+  void sendsTheWholeFileWhenIfRangeDoesNotMatch() {
+    HttpHeaders headers = range("bytes=0-9");
+    headers.set(ModulabGlobals.IF_RANGE, "\"other\"");
+    assertTrue(resolve(headers).isEmpty());
+
+    headers = range("bytes=0-9");
+    headers.setDate(ModulabGlobals.IF_RANGE, LAST_MODIFIED - 60_000);
+    assertTrue(resolve(headers).isEmpty());
+  }
+
+  private static HttpHeaders range(String range) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RANGE, range);
+    return headers;
+  }
+
+  private static List<ByteRange> resolve(HttpHeaders headers) {
+    return VideoStreamService.resolveRanges(headers, ETAG, LAST_MODIFIED, FILE_SIZE);
+  }
+}